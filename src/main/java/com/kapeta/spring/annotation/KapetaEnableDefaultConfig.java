@@ -6,6 +6,7 @@
 package com.kapeta.spring.annotation;
 
 import com.kapeta.spring.config.KapetaDefaultConfig;
+import com.kapeta.spring.config.KapetaRestClientsConfig;
 import com.kapeta.spring.config.KapetaRestControllerConfig;
 import org.springframework.context.annotation.Import;
 
@@ -15,6 +16,6 @@ import java.lang.annotation.*;
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 @Inherited
-@Import({KapetaDefaultConfig.class, KapetaRestControllerConfig.class})
+@Import({KapetaDefaultConfig.class, KapetaRestClientsConfig.class, KapetaRestControllerConfig.class})
 public @interface KapetaEnableDefaultConfig {
 }
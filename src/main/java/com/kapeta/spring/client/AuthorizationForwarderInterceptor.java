@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import com.kapeta.spring.security.AuthorizationForwarderSupplier;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Adds the authorization of the request currently being handled - as provided by the
+ * {@link AuthorizationForwarderSupplier} - to outgoing requests. Headers set explicitly are kept.
+ */
+public class AuthorizationForwarderInterceptor implements ClientHttpRequestInterceptor {
+
+    private final AuthorizationForwarderSupplier authorizationForwarderSupplier;
+
+    public AuthorizationForwarderInterceptor(AuthorizationForwarderSupplier authorizationForwarderSupplier) {
+        this.authorizationForwarderSupplier = authorizationForwarderSupplier;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        var forwarder = authorizationForwarderSupplier.get();
+        if (forwarder != null) {
+            var value = forwarder.getAuthorizationValue();
+            var header = forwarder.getAuthorizationHeader();
+            if (value != null && !request.getHeaders().containsKey(header)) {
+                request.getHeaders().set(header, value);
+            }
+        }
+        return execution.execute(request, body);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * Creates requests which can be aborted while they are sent or waiting for a response - used by
+ * {@link HedgingClientHttpRequestFactory} to abort the request that lost.
+ * <p>
+ * Cancelling a request closes its connection, so it isn't returned to the pool.
+ */
+class CancellableClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    // postProcessHttpRequest is called by createRequest on the same thread
+    private final ThreadLocal<ClassicHttpRequest> created = new ThreadLocal<>();
+
+    CancellableClientHttpRequestFactory(HttpClient httpClient) {
+        super(httpClient);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        try {
+            var request = super.createRequest(uri, httpMethod);
+            if (created.get() instanceof Cancellable cancellable) {
+                return new CancellableRequest(request, cancellable);
+            }
+            return request;
+        } finally {
+            created.remove();
+        }
+    }
+
+    @Override
+    protected void postProcessHttpRequest(ClassicHttpRequest request) {
+        created.set(request);
+    }
+
+    private record CancellableRequest(ClientHttpRequest request, Cancellable cancellable) implements ClientHttpRequest, Cancellable {
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            return request.execute();
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return request.getBody();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return request.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+
+        @Override
+        public boolean cancel() {
+            return cancellable.cancel();
+        }
+    }
+}
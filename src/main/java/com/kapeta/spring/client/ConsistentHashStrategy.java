@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Consistent hashing with bounded loads - routes requests with the same routing key to the same instance so
+ * providers with in-memory caches only need to cache their share of the keyspace.
+ * <p>
+ * Each instance is placed on a hash ring a number of times (virtual nodes) - when instances are added or removed
+ * only the keys of that instance move. To avoid overloading an instance with hot keys an instance is skipped if it
+ * has more than (1 + balanceFactor) times the average number of requests in flight - the request then goes to the
+ * next instance on the ring.
+ * <p>
+ * Requests without a routing key are routed using {@link LeastOutstandingStrategy}.
+ */
+public class ConsistentHashStrategy implements LoadBalancerStrategy {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 100;
+
+    public static final double DEFAULT_BALANCE_FACTOR = 0.25;
+
+    private final LoadBalancerStrategy fallback = new LeastOutstandingStrategy();
+
+    private final int virtualNodes;
+
+    private final double balanceFactor;
+
+    private volatile Ring ring = new Ring(new long[0], new LoadBalancedInstance[0], 0);
+
+    public ConsistentHashStrategy() {
+        this(DEFAULT_VIRTUAL_NODES, DEFAULT_BALANCE_FACTOR);
+    }
+
+    public ConsistentHashStrategy(int virtualNodes, double balanceFactor) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.balanceFactor = Math.max(0, balanceFactor);
+    }
+
+    @Override
+    public void onInstancesChanged(List<LoadBalancedInstance> instances) {
+        var points = new ArrayList<Point>(instances.size() * virtualNodes);
+        for (LoadBalancedInstance instance : instances) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.add(new Point(hash(instance.getInstance().id() + "#" + i), instance));
+            }
+        }
+        points.sort(Comparator.comparingLong(Point::hash));
+
+        var hashes = new long[points.size()];
+        var nodes = new LoadBalancedInstance[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            hashes[i] = points.get(i).hash();
+            nodes[i] = points.get(i).instance();
+        }
+        ring = new Ring(hashes, nodes, instances.size());
+    }
+
+    @Override
+    public LoadBalancedInstance choose(List<LoadBalancedInstance> candidates, String routingKey) {
+        var current = ring;
+        if (routingKey == null || current.hashes().length == 0) {
+            return fallback.choose(candidates, routingKey);
+        }
+
+        // Ejected instances keep their place on the ring so their keys return once they're back
+        Set<LoadBalancedInstance> allowed = null;
+        if (candidates.size() != current.instanceCount()) {
+            allowed = Collections.newSetFromMap(new IdentityHashMap<>());
+            allowed.addAll(candidates);
+        }
+
+        long outstanding = 0;
+        for (LoadBalancedInstance candidate : candidates) {
+            outstanding += candidate.getOutstanding();
+        }
+        var capacity = (long) Math.ceil((outstanding + 1) * (1 + balanceFactor) / candidates.size());
+
+        var hashes = current.hashes();
+        var start = Arrays.binarySearch(hashes, hash(routingKey));
+        if (start < 0) {
+            start = -start - 1;
+        }
+
+        for (int i = 0; i < hashes.length; i++) {
+            var node = current.nodes()[(start + i) % hashes.length];
+            if (allowed != null && !allowed.contains(node)) {
+                continue;
+            }
+            if (node.getOutstanding() < capacity) {
+                return node;
+            }
+        }
+
+        return fallback.choose(candidates, routingKey);
+    }
+
+    /**
+     * 64 bit FNV-1a followed by the murmur3 finalizer to spread similar keys across the ring
+     */
+    static long hash(String value) {
+        var h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private record Point(long hash, LoadBalancedInstance instance) {
+    }
+
+    private record Ring(long[] hashes, LoadBalancedInstance[] nodes, int instanceCount) {
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import com.kapeta.spring.util.KapetaThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends a second - hedged - GET or HEAD request if the first one hasn't responded within the delay of the
+ * {@link HedgingPolicy}. The first response wins - the other request is aborted, or its response closed if it
+ * already arrived. Requests can only be aborted if the delegate is a {@link CancellableClientHttpRequestFactory}.
+ * <p>
+ * If a {@link LoadBalancerRegistry} is given the hedged request is sent to a different instance of the same
+ * provider. Otherwise it is sent to the same address - which for a kubernetes service usually means another pod.
+ * <p>
+ * Hedged requests are limited to budgetPercent of all requests so a slow provider doesn't get twice the load.
+ * Requests are sent from a bounded pool of threads - when all of them are busy requests are sent from the calling
+ * thread without hedging.
+ */
+public class HedgingClientHttpRequestFactory implements ClientHttpRequestFactory, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgingClientHttpRequestFactory.class);
+
+    private static final int LATENCY_SAMPLES = 1000;
+
+    private static final int MIN_LATENCY_SAMPLES = 100;
+
+    private static final double MAX_BUDGET_TOKENS = 10;
+
+    private static final int DEFAULT_MAX_THREADS = 100;
+
+    private final ClientHttpRequestFactory delegate;
+
+    private final HedgingPolicy policy;
+
+    private final LoadBalancerRegistry loadBalancers;
+
+    private final ExecutorService executor;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private int latencyIndex;
+
+    private int latencySamples;
+
+    private int samplesSinceP95;
+
+    private volatile long p95Nanos = -1;
+
+    private double budgetTokens = MAX_BUDGET_TOKENS;
+
+    private final Counter hedged;
+
+    private final Counter hedgeWon;
+
+    /**
+     * @param loadBalancers used to send the hedged request to another instance - may be null
+     * @param meterRegistry records kapeta.client.hedged.requests - may be null
+     */
+    public HedgingClientHttpRequestFactory(ClientHttpRequestFactory delegate, HedgingPolicy policy,
+                                           LoadBalancerRegistry loadBalancers, MeterRegistry meterRegistry, String clientName) {
+        this(delegate, policy, loadBalancers, meterRegistry, clientName, DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * @param loadBalancers used to send the hedged request to another instance - may be null
+     * @param meterRegistry records kapeta.client.hedged.requests - may be null
+     * @param maxThreads    max requests - original and hedged - sent at the same time from the pool
+     */
+    public HedgingClientHttpRequestFactory(ClientHttpRequestFactory delegate, HedgingPolicy policy,
+                                           LoadBalancerRegistry loadBalancers, MeterRegistry meterRegistry, String clientName,
+                                           int maxThreads) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.loadBalancers = loadBalancers;
+
+        this.executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                KapetaThreads.daemonFactory("kapeta-hedge"));
+
+        if (meterRegistry != null) {
+            hedged = Counter.builder("kapeta.client.hedged.requests")
+                    .description("Hedged requests sent")
+                    .tag("client", clientName)
+                    .tag("result", "sent")
+                    .register(meterRegistry);
+            hedgeWon = Counter.builder("kapeta.client.hedged.requests")
+                    .description("Hedged requests that responded before the original request")
+                    .tag("client", clientName)
+                    .tag("result", "won")
+                    .register(meterRegistry);
+        } else {
+            hedged = null;
+            hedgeWon = null;
+        }
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        if (!HttpMethod.GET.equals(httpMethod) && !HttpMethod.HEAD.equals(httpMethod)) {
+            return delegate.createRequest(uri, httpMethod);
+        }
+        return new HedgedRequest(uri, httpMethod);
+    }
+
+    /**
+     * The current hedging delay
+     */
+    public long getDelayNanos() {
+        var p95 = p95Nanos;
+        return policy.useP95() && p95 > 0 ? p95 : policy.delay().toNanos();
+    }
+
+    private synchronized void onRequest(long latencyNanos) {
+        budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + policy.budgetPercent() / 100);
+        if (latencyNanos < 0) {
+            return;
+        }
+
+        // The most recent latencies - overwriting the oldest once full
+        latencies[latencyIndex] = latencyNanos;
+        latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+        latencySamples = Math.min(latencySamples + 1, LATENCY_SAMPLES);
+        if (++samplesSinceP95 >= MIN_LATENCY_SAMPLES) {
+            samplesSinceP95 = 0;
+            var sorted = Arrays.copyOf(latencies, latencySamples);
+            Arrays.sort(sorted);
+            p95Nanos = sorted[(int) (sorted.length * 0.95)];
+        }
+    }
+
+    private synchronized boolean tryAcquireBudget() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens--;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private class HedgedRequest implements ClientHttpRequest {
+
+        private final URI uri;
+
+        private final HttpMethod method;
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private HedgedRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            var start = System.nanoTime();
+            Attempt primary;
+            try {
+                primary = send(uri);
+            } catch (RejectedExecutionException e) {
+                // All threads are busy - don't add to the load by hedging
+                onRequest(-1);
+                return createRequest(uri).execute();
+            }
+
+            try {
+                var response = primary.response.get(getDelayNanos(), TimeUnit.NANOSECONDS);
+                onRequest(System.nanoTime() - start);
+                return response;
+            } catch (TimeoutException e) {
+                // Hedge below
+            } catch (ExecutionException e) {
+                onRequest(-1);
+                throw unwrap(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for response", e);
+            }
+
+            if (!tryAcquireBudget()) {
+                onRequest(-1);
+                return await(primary.response);
+            }
+
+            Attempt hedge;
+            try {
+                hedge = sendHedge();
+            } catch (RejectedExecutionException e) {
+                onRequest(-1);
+                return await(primary.response);
+            }
+            if (hedged != null) {
+                hedged.increment();
+            }
+
+            var winner = new CompletableFuture<ClientHttpResponse>();
+            primary.response.whenComplete((response, error) -> complete(winner, response, error, hedge));
+            hedge.response.whenComplete((response, error) -> {
+                if (complete(winner, response, error, primary) && hedgeWon != null) {
+                    hedgeWon.increment();
+                }
+            });
+
+            var response = await(winner);
+            onRequest(System.nanoTime() - start);
+            return response;
+        }
+
+        /**
+         * Completes the winner with the first response - or the last error if both fail.
+         * Aborts the other request when this one won - and closes the response if the other one already won.
+         */
+        private boolean complete(CompletableFuture<ClientHttpResponse> winner, ClientHttpResponse response, Throwable error, Attempt other) {
+            if (error != null) {
+                if (other.response.isDone() && other.response.isCompletedExceptionally()) {
+                    winner.completeExceptionally(error);
+                }
+                return false;
+            }
+
+            if (winner.complete(response)) {
+                other.cancel();
+                return true;
+            }
+            response.close();
+            return false;
+        }
+
+        private Attempt sendHedge() {
+            var loadBalancer = loadBalancers != null ? loadBalancers.findByInstance(uri) : null;
+            var instance = loadBalancer != null ? loadBalancer.acquireOther(ServiceInstance.of(uri), null) : null;
+            if (instance == null) {
+                return send(uri);
+            }
+
+            var hedgeUri = LoadBalancerInterceptor.rewrite(uri, instance.getInstance().baseUri());
+            log.trace("Hedging {} {} to {}", method, uri, hedgeUri);
+            var attempt = send(hedgeUri);
+            attempt.response.whenComplete((response, error) -> {
+                // Aborting the request that lost says nothing about the instance
+                var success = attempt.cancelled;
+                try {
+                    success = success || error == null && !response.getStatusCode().is5xxServerError();
+                } catch (IOException ignored) {
+                    // Treated as a failure
+                }
+                loadBalancer.release(instance, success);
+            });
+            return attempt;
+        }
+
+        private Attempt send(URI target) {
+            var attempt = new Attempt();
+            attempt.response = CompletableFuture.supplyAsync(() -> {
+                try {
+                    var request = createRequest(target);
+                    if (request instanceof Cancellable cancellable) {
+                        attempt.setRequest(cancellable);
+                    }
+                    return request.execute();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+            return attempt;
+        }
+
+        private ClientHttpRequest createRequest(URI target) throws IOException {
+            var request = delegate.createRequest(target, method);
+            request.getHeaders().putAll(headers);
+            if (body.size() > 0) {
+                body.writeTo(request.getBody());
+            }
+            return request;
+        }
+
+        private ClientHttpResponse await(CompletableFuture<ClientHttpResponse> future) throws IOException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for response", e);
+            }
+        }
+
+        private IOException unwrap(ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof UncheckedIOException unchecked) {
+                return unchecked.getCause();
+            }
+            if (cause instanceof IOException io) {
+                return io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            return new IOException(cause);
+        }
+    }
+
+    /**
+     * A request sent from the pool - which can be aborted once another request won
+     */
+    private static class Attempt {
+
+        private CompletableFuture<ClientHttpResponse> response;
+
+        private volatile Cancellable request;
+
+        private volatile boolean cancelled;
+
+        private void setRequest(Cancellable request) {
+            this.request = request;
+            if (cancelled) {
+                request.cancel();
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            var current = request;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
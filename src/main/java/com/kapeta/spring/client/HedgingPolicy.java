@@ -0,0 +1,20 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import java.time.Duration;
+
+/**
+ * When to send a second - hedged - request
+ *
+ * @param delay         how long to wait for the first response before hedging. If useP95 is set this is only used
+ *                      until enough latencies have been observed
+ * @param useP95        use the observed p95 latency as delay
+ * @param budgetPercent max number of hedged requests as percentage of all requests
+ */
+public record HedgingPolicy(Duration delay, boolean useP95, double budgetPercent) {
+
+    public static final HedgingPolicy DEFAULT = new HedgingPolicy(Duration.ofMillis(100), true, 5);
+}
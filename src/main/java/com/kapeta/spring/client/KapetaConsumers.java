@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import com.kapeta.spring.config.KapetaApplicationInitializer;
+import org.springframework.core.env.Environment;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.kapeta.spring.config.ConfigUtils.getValueFromPath;
+
+/**
+ * Reads the consumers - e.g. REST clients - declared in the kapeta.yml file of this block
+ */
+public class KapetaConsumers {
+
+    /**
+     * A consumer from spec.consumers
+     *
+     * @param kind     the resource kind - e.g. "kapeta/resource-type-rest-client:0.0.4"
+     * @param name     the resource name used when resolving the address of the provider
+     * @param portType the port type - e.g. "rest"
+     */
+    public record Consumer(String kind, String name, String portType) {
+    }
+
+    public static List<Consumer> read(Environment environment) {
+        return read(Path.of(KapetaApplicationInitializer.getBlockYMLPath(environment)));
+    }
+
+    /**
+     * Returns the consumers using the given port type
+     */
+    public static List<Consumer> read(Environment environment, String portType) {
+        return read(environment).stream()
+                .filter(consumer -> portType.equals(consumer.portType()))
+                .toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Consumer> read(Path kapetaYml) {
+        try (InputStream stream = Files.newInputStream(kapetaYml)) {
+            Map<String, Object> block = new Yaml().load(stream);
+            var consumers = getValueFromPath(block, "spec.consumers", List.<Map<String, Object>>of());
+
+            var out = new ArrayList<Consumer>();
+            for (Map<String, Object> consumer : consumers) {
+                var name = getValueFromPath(consumer, "metadata.name", (String) null);
+                if (name == null) {
+                    continue;
+                }
+                out.add(new Consumer(
+                        getValueFromPath(consumer, "kind", ""),
+                        name,
+                        getValueFromPath(consumer, "spec.port.type", "")
+                ));
+            }
+            return out;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read consumers from: " + kapetaYml, e);
+        }
+    }
+}
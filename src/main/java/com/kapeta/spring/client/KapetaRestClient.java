@@ -0,0 +1,33 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * The pooled client of a REST consumer - see {@link KapetaRestClients}.
+ * <p>
+ * A bean of this type is registered for each consumer, qualified by the consumer name. It's a type of its own
+ * rather than a RestTemplate so the clients never make the RestTemplate beans of the application ambiguous.
+ */
+public final class KapetaRestClient {
+
+    private final String consumerName;
+
+    private final RestTemplate restTemplate;
+
+    public KapetaRestClient(String consumerName, RestTemplate restTemplate) {
+        this.consumerName = consumerName;
+        this.restTemplate = restTemplate;
+    }
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    public RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+}
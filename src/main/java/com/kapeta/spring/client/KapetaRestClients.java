@@ -0,0 +1,216 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import com.kapeta.spring.client.dns.HostResolver;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import com.kapeta.spring.security.AuthorizationForwarderSupplier;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One pooled, keep-alive {@link RestTemplate} per REST consumer of this block.
+ * <p>
+ * Each client has its own connection pool - so a slow provider can't use up the connections of the others - with
+ * its pool metrics registered as httpcomponents.httpclient.pool.* tagged with httpclient=[consumer name].
+ * The clients use the consumer address as root uri, forward the authorization of the current request and
+ * are built using the {@link RestTemplateBuilder} so all RestTemplate customizers apply.
+ * <p>
+ * Clients are created on first use. Requires org.apache.httpcomponents.client5:httpclient5 - which the SDK
+ * doesn't bring along, as Spring Boot would otherwise use it for every RestTemplate.
+ */
+public class KapetaRestClients implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaRestClients.class);
+
+    /**
+     * @param maxConnections max connections per consumer
+     * @param connectTimeout timeout for establishing a connection
+     * @param readTimeout    max time to wait for data on the socket
+     * @param idleTimeout    idle connections are closed after this time
+     */
+    public record Settings(int maxConnections, Duration connectTimeout, Duration readTimeout, Duration idleTimeout) {
+        public static final Settings DEFAULT = new Settings(50, Duration.ofSeconds(2), Duration.ofSeconds(30), Duration.ofSeconds(60));
+    }
+
+    private final KapetaConfigurationProvider configurationProvider;
+
+    private final Map<String, KapetaConsumers.Consumer> consumers;
+
+    private final RestTemplateBuilder restTemplateBuilder;
+
+    private final AuthorizationForwarderSupplier authorizationForwarderSupplier;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Settings settings;
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    private HedgingPolicy hedgingPolicy;
+
+    private LoadBalancerRegistry loadBalancers;
+
+    private HostResolver hostResolver;
+
+    public KapetaRestClients(KapetaConfigurationProvider configurationProvider,
+                             List<KapetaConsumers.Consumer> consumers,
+                             RestTemplateBuilder restTemplateBuilder,
+                             AuthorizationForwarderSupplier authorizationForwarderSupplier,
+                             MeterRegistry meterRegistry,
+                             Settings settings) {
+        this.configurationProvider = configurationProvider;
+        this.consumers = new ConcurrentHashMap<>();
+        consumers.forEach(consumer -> this.consumers.put(consumer.name(), consumer));
+        this.restTemplateBuilder = restTemplateBuilder;
+        this.authorizationForwarderSupplier = authorizationForwarderSupplier;
+        this.meterRegistry = meterRegistry;
+        this.settings = settings;
+    }
+
+    /**
+     * Sends hedged requests for GET and HEAD requests - see {@link HedgingClientHttpRequestFactory}.
+     * Must be called before any clients are created.
+     *
+     * @param loadBalancers used to send hedged requests to another instance - may be null
+     */
+    public KapetaRestClients withHedging(HedgingPolicy hedgingPolicy, LoadBalancerRegistry loadBalancers) {
+        this.hedgingPolicy = hedgingPolicy;
+        this.loadBalancers = loadBalancers;
+        return this;
+    }
+
+    /**
+     * Resolves host names using the given resolver - e.g. a {@link com.kapeta.spring.client.dns.DnsCache}.
+     * Must be called before any clients are created.
+     */
+    public KapetaRestClients withDnsResolver(HostResolver hostResolver) {
+        this.hostResolver = hostResolver;
+        return this;
+    }
+
+    /**
+     * Gets the client for the consumer with the given name - as defined in kapeta.yml
+     */
+    public RestTemplate get(String consumerName) {
+        return clients.computeIfAbsent(consumerName, this::create).restTemplate();
+    }
+
+    /**
+     * Gets the client for the consumer with the given name - as injected using the consumer name as qualifier
+     */
+    public KapetaRestClient getClient(String consumerName) {
+        return new KapetaRestClient(consumerName, get(consumerName));
+    }
+
+    public Collection<String> getConsumerNames() {
+        return consumers.keySet();
+    }
+
+    private Client create(String consumerName) {
+        var consumer = consumers.get(consumerName);
+        if (consumer == null) {
+            throw new IllegalArgumentException("Unknown consumer: " + consumerName + " - known consumers: " + consumers.keySet());
+        }
+
+        var address = configurationProvider.getServiceAddress(consumer.name(), consumer.portType()).trim();
+        if (address.endsWith("/")) {
+            address = address.substring(0, address.length() - 1);
+        }
+
+        var connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(settings.maxConnections())
+                .setMaxConnPerRoute(settings.maxConnections())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(settings.connectTimeout()))
+                        .setSocketTimeout(Timeout.of(settings.readTimeout()))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .setDnsResolver(hostResolver != null ? toDnsResolver(hostResolver) : null)
+                .build();
+
+        var httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(TimeValue.of(settings.idleTimeout()))
+                .evictExpiredConnections()
+                .build();
+
+        if (meterRegistry != null) {
+            new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, consumer.name(), Tags.empty())
+                    .bindTo(meterRegistry);
+        }
+
+        ClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        HedgingClientHttpRequestFactory hedging = null;
+        if (hedgingPolicy != null) {
+            // A hedged request uses a second thread - and a second connection
+            hedging = new HedgingClientHttpRequestFactory(new CancellableClientHttpRequestFactory(httpClient),
+                    hedgingPolicy, loadBalancers, meterRegistry, consumer.name(), settings.maxConnections() * 2);
+            requestFactory = hedging;
+        }
+
+        var factory = requestFactory;
+        var restTemplate = restTemplateBuilder
+                .rootUri(address)
+                .requestFactory(() -> factory)
+                .additionalInterceptors(new AuthorizationForwarderInterceptor(authorizationForwarderSupplier))
+                .build();
+
+        log.info("Created pooled client for consumer {} using address {}", consumer.name(), address);
+        return new Client(restTemplate, httpClient, hedging);
+    }
+
+    private static DnsResolver toDnsResolver(HostResolver hostResolver) {
+        return new DnsResolver() {
+            @Override
+            public InetAddress[] resolve(String host) throws UnknownHostException {
+                return hostResolver.resolve(host);
+            }
+
+            @Override
+            public String resolveCanonicalHostname(String host) {
+                return host;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        clients.values().forEach(client -> {
+            if (client.hedging() != null) {
+                client.hedging().close();
+            }
+            // Also closes the connection manager and stops the idle connection evictor thread
+            client.httpClient().close(CloseMode.GRACEFUL);
+        });
+        clients.clear();
+    }
+
+    private record Client(RestTemplate restTemplate, CloseableHttpClient httpClient, HedgingClientHttpRequestFactory hedging) {
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AutowireCandidateQualifier;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+
+/**
+ * Registers a {@link KapetaRestClient} bean - backed by {@link KapetaRestClients} - for each REST consumer in
+ * kapeta.yml.
+ * <p>
+ * The beans are named [consumer name]RestClient and qualified by the consumer name:
+ * <pre>
+ * public UsersService(@Qualifier("users") KapetaRestClient users) { ... }
+ * </pre>
+ */
+public class KapetaRestClientsRegistrar implements BeanDefinitionRegistryPostProcessor, EnvironmentAware {
+
+    public static final String BEAN_NAME_SUFFIX = "RestClient";
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+        var beanFactory = (BeanFactory) registry;
+        for (KapetaConsumers.Consumer consumer : KapetaConsumers.read(environment, KapetaConfigurationProvider.DEFAULT_SERVER_PORT_TYPE)) {
+            var name = consumer.name();
+            var beanName = name + BEAN_NAME_SUFFIX;
+            if (registry.containsBeanDefinition(beanName)) {
+                continue;
+            }
+
+            var definition = new RootBeanDefinition(KapetaRestClient.class, () -> beanFactory.getBean(KapetaRestClients.class).getClient(name));
+            definition.addQualifier(new AutowireCandidateQualifier(Qualifier.class, name));
+            definition.setLazyInit(true);
+            registry.registerBeanDefinition(beanName, definition);
+        }
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices: picks two random instances and uses the one with the fewest requests in flight.
+ * <p>
+ * An instance that is slow - e.g. because it is pausing for GC - accumulates outstanding requests and quickly stops
+ * receiving new ones, while the random sampling avoids all clients herding onto the same least loaded instance.
+ */
+public class LeastOutstandingStrategy implements LoadBalancerStrategy {
+
+    @Override
+    public LoadBalancedInstance choose(List<LoadBalancedInstance> candidates, String routingKey) {
+        var size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+
+        var random = ThreadLocalRandom.current();
+        var first = random.nextInt(size);
+        var second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        var a = candidates.get(first);
+        var b = candidates.get(second);
+        return b.getOutstanding() < a.getOutstanding() ? b : a;
+    }
+}
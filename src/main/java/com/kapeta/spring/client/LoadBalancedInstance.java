@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A service instance and the state the load balancer keeps for it
+ */
+public class LoadBalancedInstance {
+
+    private final ServiceInstance instance;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile long ejectedUntil;
+
+    private volatile int ejections;
+
+    LoadBalancedInstance(ServiceInstance instance) {
+        this.instance = instance;
+    }
+
+    public ServiceInstance getInstance() {
+        return instance;
+    }
+
+    /**
+     * Requests currently in flight to this instance
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public boolean isEjected(long now) {
+        return now < ejectedUntil;
+    }
+
+    void acquire() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of consecutive failures after recording the outcome
+     */
+    int release(boolean success) {
+        outstanding.decrementAndGet();
+        if (success) {
+            consecutiveFailures.set(0);
+            return 0;
+        }
+        return consecutiveFailures.incrementAndGet();
+    }
+
+    long eject(long now, long baseEjectionNanos, long maxEjectionNanos) {
+        ejections++;
+        consecutiveFailures.set(0);
+        var duration = Math.min(maxEjectionNanos, baseEjectionNanos * ejections);
+        ejectedUntil = now + duration;
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        return instance.id();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side load balancer for the instances of a single provider service.
+ * <p>
+ * The instances are refreshed from the {@link ServiceInstanceSupplier} in the background - the state of instances
+ * that are still present is kept. Outlier ejection removes an instance from rotation after a number of consecutive
+ * failures - for the base ejection duration multiplied by the number of times it has been ejected. At most
+ * maxEjectionPercent of the instances are ejected at the same time.
+ */
+public class LoadBalancer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancer.class);
+
+    private final String serviceName;
+
+    private final ServiceInstanceSupplier supplier;
+
+    private final LoadBalancerStrategy strategy;
+
+    private final OutlierEjection ejection;
+
+    private volatile List<LoadBalancedInstance> instances = List.of();
+
+    private ScheduledFuture<?> refreshTask;
+
+    /**
+     * Settings for outlier ejection
+     *
+     * @param consecutiveFailures failures in a row before an instance is ejected - 0 disables ejection
+     * @param baseDuration        how long an instance is ejected the first time
+     * @param maxDuration         the longest an instance is ejected
+     * @param maxEjectionPercent  max percentage of instances ejected at the same time
+     */
+    public record OutlierEjection(int consecutiveFailures, Duration baseDuration, Duration maxDuration, int maxEjectionPercent) {
+        public static final OutlierEjection DEFAULT = new OutlierEjection(5, Duration.ofSeconds(30), Duration.ofMinutes(5), 50);
+
+        public static final OutlierEjection DISABLED = new OutlierEjection(0, Duration.ZERO, Duration.ZERO, 0);
+    }
+
+    public LoadBalancer(String serviceName, ServiceInstanceSupplier supplier, LoadBalancerStrategy strategy, OutlierEjection ejection) {
+        this.serviceName = serviceName;
+        this.supplier = supplier;
+        this.strategy = strategy;
+        this.ejection = ejection;
+        refresh();
+    }
+
+    /**
+     * Refreshes the instances every interval using the given executor
+     */
+    public LoadBalancer withRefresh(ScheduledExecutorService executor, Duration interval) {
+        refreshTask = executor.scheduleWithFixedDelay(this::refresh, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public List<LoadBalancedInstance> getInstances() {
+        return instances;
+    }
+
+    /**
+     * Reloads the instances from the supplier. Keeps the current instances if that fails or returns no instances.
+     */
+    public synchronized void refresh() {
+        List<ServiceInstance> latest;
+        try {
+            latest = supplier.getInstances();
+        } catch (Exception e) {
+            log.warn("Failed to refresh instances of {} - keeping {} known instances", serviceName, instances.size(), e);
+            return;
+        }
+
+        if (latest == null || latest.isEmpty()) {
+            log.warn("No instances found for {} - keeping {} known instances", serviceName, instances.size());
+            return;
+        }
+
+        var current = new LinkedHashMap<String, LoadBalancedInstance>();
+        instances.forEach(instance -> current.put(instance.getInstance().id(), instance));
+
+        var updated = new ArrayList<LoadBalancedInstance>(latest.size());
+        var changed = latest.size() != current.size();
+        for (ServiceInstance instance : latest) {
+            var existing = current.get(instance.id());
+            if (existing == null) {
+                existing = new LoadBalancedInstance(instance);
+                changed = true;
+            }
+            updated.add(existing);
+        }
+
+        if (changed) {
+            log.info("Instances of {} changed: {}", serviceName, updated);
+            instances = List.copyOf(updated);
+            strategy.onInstancesChanged(instances);
+        }
+    }
+
+    /**
+     * Chooses an instance for a request and marks it as in flight. The caller must call {@link #release} once the
+     * request has completed.
+     */
+    public LoadBalancedInstance acquire(String routingKey) {
+        var all = instances;
+        if (all.isEmpty()) {
+            throw new IllegalStateException("No instances available for " + serviceName);
+        }
+
+        var now = System.nanoTime();
+        List<LoadBalancedInstance> candidates = all;
+        for (int i = 0; i < all.size(); i++) {
+            if (all.get(i).isEjected(now)) {
+                candidates = all.stream().filter(instance -> !instance.isEjected(now)).toList();
+                break;
+            }
+        }
+
+        // Better to try an ejected instance than failing without trying
+        var instance = strategy.choose(candidates.isEmpty() ? all : candidates, routingKey);
+        instance.acquire();
+        return instance;
+    }
+
+    /**
+     * Chooses an instance other than the given one - e.g. for a hedged request. Returns null if there is no other
+     * instance that is not ejected. The caller must call {@link #release} once the request has completed.
+     */
+    public LoadBalancedInstance acquireOther(ServiceInstance excluded, String routingKey) {
+        var now = System.nanoTime();
+        var candidates = instances.stream()
+                .filter(instance -> !instance.getInstance().id().equals(excluded.id()) && !instance.isEjected(now))
+                .toList();
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        var instance = strategy.choose(candidates, routingKey);
+        instance.acquire();
+        return instance;
+    }
+
+    public LoadBalancedInstance acquire() {
+        return acquire(null);
+    }
+
+    /**
+     * Records the outcome of a request sent to an instance returned by {@link #acquire}
+     */
+    public void release(LoadBalancedInstance instance, boolean success) {
+        var failures = instance.release(success);
+        if (ejection.consecutiveFailures() > 0 && failures >= ejection.consecutiveFailures()) {
+            maybeEject(instance);
+        }
+    }
+
+    private synchronized void maybeEject(LoadBalancedInstance instance) {
+        var now = System.nanoTime();
+        var all = instances;
+        if (instance.isEjected(now)) {
+            return;
+        }
+
+        var ejected = all.stream().filter(i -> i.isEjected(now)).count();
+        if ((ejected + 1) * 100 > (long) all.size() * ejection.maxEjectionPercent()) {
+            log.debug("Not ejecting {} from {} - already ejected {} of {} instances", instance, serviceName, ejected, all.size());
+            return;
+        }
+
+        var duration = instance.eject(now, ejection.baseDuration().toNanos(), ejection.maxDuration().toNanos());
+        log.warn("Ejected instance {} of {} for {}ms after {} consecutive failures",
+                instance, serviceName, TimeUnit.NANOSECONDS.toMillis(duration), ejection.consecutiveFailures());
+    }
+
+    @Override
+    public void close() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+    }
+}
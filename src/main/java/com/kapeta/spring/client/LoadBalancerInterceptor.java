@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Sends requests for the address of a known consumer to one of its instances - as chosen by its
+ * {@link LoadBalancer}. Other requests are passed through unchanged.
+ * <p>
+ * Connection errors and 5xx responses count as failures for outlier ejection. The request is considered complete
+ * once the response headers have been received.
+ * <p>
+ * The routing key passed to the strategy is taken from the {@value #HEADER_KAPETA_ROUTING_KEY} header - or
+ * {@link RoutingKey#current()} if the header is not set.
+ */
+public class LoadBalancerInterceptor implements ClientHttpRequestInterceptor {
+
+    public static final String HEADER_KAPETA_ROUTING_KEY = "X-Kapeta-Routing-Key";
+
+    private final LoadBalancerRegistry registry;
+
+    public LoadBalancerInterceptor(LoadBalancerRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        var loadBalancer = registry.find(request.getURI());
+        if (loadBalancer == null) {
+            return execution.execute(request, body);
+        }
+
+        var instance = loadBalancer.acquire(getRoutingKey(request));
+        var success = false;
+        try {
+            var uri = rewrite(request.getURI(), instance.getInstance().baseUri());
+            var response = execution.execute(new HttpRequestWrapper(request) {
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+            }, body);
+            success = !response.getStatusCode().is5xxServerError();
+            return response;
+        } finally {
+            loadBalancer.release(instance, success);
+        }
+    }
+
+    protected String getRoutingKey(HttpRequest request) {
+        var routingKey = request.getHeaders().getFirst(HEADER_KAPETA_ROUTING_KEY);
+        return routingKey != null ? routingKey : RoutingKey.current();
+    }
+
+    static URI rewrite(URI uri, URI baseUri) {
+        return UriComponentsBuilder.fromUri(uri)
+                .scheme(baseUri.getScheme())
+                .host(baseUri.getHost())
+                .port(baseUri.getPort())
+                .build(true)
+                .toUri();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import com.kapeta.spring.client.dns.HostResolver;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * The load balancers of the consumers of this block - looked up by consumer name or by the address the
+ * configuration provider resolves the consumer to.
+ */
+public class LoadBalancerRegistry implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancerRegistry.class);
+
+    public static final String STRATEGY_ROUND_ROBIN = "round-robin";
+
+    public static final String STRATEGY_LEAST_OUTSTANDING = "least-outstanding";
+
+    public static final String STRATEGY_CONSISTENT_HASH = "consistent-hash";
+
+    private final Map<String, LoadBalancer> byName = new ConcurrentHashMap<>();
+
+    private final Map<String, LoadBalancer> byAddress = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService refreshExecutor;
+
+    private final Duration refreshInterval;
+
+    public LoadBalancerRegistry(Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(KapetaThreads.singleDaemonFactory("kapeta-load-balancer"));
+    }
+
+    /**
+     * Creates a load balancer for each of the given consumers
+     */
+    public static LoadBalancerRegistry create(KapetaConfigurationProvider provider, List<KapetaConsumers.Consumer> consumers,
+                                              Supplier<LoadBalancerStrategy> strategy, LoadBalancer.OutlierEjection ejection,
+                                              Duration refreshInterval) {
+        return create(provider, consumers, strategy, ejection, refreshInterval, HostResolver.SYSTEM);
+    }
+
+    /**
+     * Creates a load balancer for each of the given consumers - resolving their host names using the given resolver
+     */
+    public static LoadBalancerRegistry create(KapetaConfigurationProvider provider, List<KapetaConsumers.Consumer> consumers,
+                                              Supplier<LoadBalancerStrategy> strategy, LoadBalancer.OutlierEjection ejection,
+                                              Duration refreshInterval, HostResolver resolver) {
+        var registry = new LoadBalancerRegistry(refreshInterval);
+        for (KapetaConsumers.Consumer consumer : consumers) {
+            try {
+                var address = provider.getServiceAddress(consumer.name(), consumer.portType());
+                var supplier = ServiceInstanceSupplier.ofConsumer(provider, consumer.name(), consumer.portType(), resolver);
+                registry.register(address, new LoadBalancer(consumer.name(), supplier, strategy.get(), ejection));
+            } catch (RuntimeException e) {
+                log.warn("Failed to create load balancer for consumer {} - requests will not be load balanced", consumer.name(), e);
+            }
+        }
+        return registry;
+    }
+
+    public static Supplier<LoadBalancerStrategy> getStrategy(String name) {
+        return getStrategy(name, ConsistentHashStrategy.DEFAULT_VIRTUAL_NODES, ConsistentHashStrategy.DEFAULT_BALANCE_FACTOR);
+    }
+
+    /**
+     * @param virtualNodes  virtual nodes per instance - only used by the consistent hash strategy
+     * @param balanceFactor how much more than the average load an instance may get - only used by the
+     *                      consistent hash strategy
+     */
+    public static Supplier<LoadBalancerStrategy> getStrategy(String name, int virtualNodes, double balanceFactor) {
+        return switch (name.toLowerCase()) {
+            case STRATEGY_ROUND_ROBIN -> RoundRobinStrategy::new;
+            case STRATEGY_LEAST_OUTSTANDING -> LeastOutstandingStrategy::new;
+            case STRATEGY_CONSISTENT_HASH -> () -> new ConsistentHashStrategy(virtualNodes, balanceFactor);
+            default -> throw new IllegalArgumentException("Unknown load balancer strategy: " + name);
+        };
+    }
+
+    /**
+     * Registers a load balancer for requests sent to the given address - e.g. "http://users:80/"
+     */
+    public void register(String address, LoadBalancer loadBalancer) {
+        if (refreshInterval != null && !refreshInterval.isZero()) {
+            loadBalancer.withRefresh(refreshExecutor, refreshInterval);
+        }
+        byName.put(loadBalancer.getServiceName(), loadBalancer);
+        byAddress.put(toKey(URI.create(address.trim())), loadBalancer);
+    }
+
+    public LoadBalancer get(String serviceName) {
+        return byName.get(serviceName);
+    }
+
+    /**
+     * Finds the load balancer for the address of the uri - or null if the uri is not for a known consumer
+     */
+    public LoadBalancer find(URI uri) {
+        if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+            return null;
+        }
+        return byAddress.get(toKey(uri));
+    }
+
+    /**
+     * Finds the load balancer that has an instance with the address of the uri - or null if there is none
+     */
+    public LoadBalancer findByInstance(URI uri) {
+        var id = ServiceInstance.of(uri).id();
+        for (LoadBalancer loadBalancer : byName.values()) {
+            for (LoadBalancedInstance instance : loadBalancer.getInstances()) {
+                if (instance.getInstance().id().equalsIgnoreCase(id)) {
+                    return loadBalancer;
+                }
+            }
+        }
+        return null;
+    }
+
+    public Collection<LoadBalancer> getAll() {
+        return byName.values();
+    }
+
+    private static String toKey(URI uri) {
+        return uri.getScheme().toLowerCase() + "://" + uri.getRawAuthority().toLowerCase();
+    }
+
+    @Override
+    public void close() {
+        refreshExecutor.shutdownNow();
+        byName.values().forEach(LoadBalancer::close);
+    }
+}
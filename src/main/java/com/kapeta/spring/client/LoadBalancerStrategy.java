@@ -0,0 +1,25 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import java.util.List;
+
+/**
+ * Chooses the instance to send a request to
+ */
+public interface LoadBalancerStrategy {
+
+    /**
+     * @param candidates the instances that are not ejected - never empty
+     * @param routingKey caller supplied routing key - or null. Only used by affinity strategies
+     */
+    LoadBalancedInstance choose(List<LoadBalancedInstance> candidates, String routingKey);
+
+    /**
+     * Called with all known instances when they change
+     */
+    default void onInstancesChanged(List<LoadBalancedInstance> instances) {
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoundRobinStrategy implements LoadBalancerStrategy {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public LoadBalancedInstance choose(List<LoadBalancedInstance> candidates, String routingKey) {
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+}
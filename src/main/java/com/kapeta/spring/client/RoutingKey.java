@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Sets the routing key used by affinity strategies - e.g. {@link ConsistentHashStrategy} - for requests sent by
+ * the current thread. Useful when the request headers can't be set directly - e.g. when using generated clients.
+ * <p>
+ * The {@value LoadBalancerInterceptor#HEADER_KAPETA_ROUTING_KEY} header takes precedence if set.
+ */
+public final class RoutingKey {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private RoutingKey() {
+    }
+
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    public static <T> T call(String routingKey, Callable<T> callable) throws Exception {
+        var previous = CURRENT.get();
+        CURRENT.set(routingKey);
+        try {
+            return callable.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static void run(String routingKey, Runnable runnable) {
+        var previous = CURRENT.get();
+        CURRENT.set(routingKey);
+        try {
+            runnable.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    private static void restore(String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import java.net.URI;
+
+/**
+ * A single instance of a provider service
+ *
+ * @param id      identifies the instance across refreshes - e.g. the address
+ * @param baseUri scheme, host and port of the instance
+ */
+public record ServiceInstance(String id, URI baseUri) {
+
+    public static ServiceInstance of(String address) {
+        return of(URI.create(address));
+    }
+
+    public static ServiceInstance of(URI uri) {
+        var base = uri.getScheme() + "://" + uri.getAuthority();
+        return new ServiceInstance(base, URI.create(base));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import com.kapeta.spring.client.dns.HostResolver;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Supplies the current instances of a provider service. Called again every time the load balancer refreshes.
+ */
+@FunctionalInterface
+public interface ServiceInstanceSupplier {
+
+    List<ServiceInstance> getInstances() throws Exception;
+
+    /**
+     * A fixed list of addresses - e.g. "http://10.0.0.1:8080"
+     */
+    static ServiceInstanceSupplier ofAddresses(List<String> addresses) {
+        var instances = addresses.stream().map(ServiceInstance::of).toList();
+        return () -> instances;
+    }
+
+    /**
+     * Resolves the address of the consumer using the configuration provider and expands it to one instance
+     * per IP address the host name resolves to.
+     * <p>
+     * For a headless kubernetes service this is one instance per pod. For a regular service - or locally -
+     * it is a single instance.
+     */
+    static ServiceInstanceSupplier ofConsumer(KapetaConfigurationProvider provider, String resourceName, String portType) {
+        return ofConsumer(provider, resourceName, portType, HostResolver.SYSTEM);
+    }
+
+    /**
+     * Same as {@link #ofConsumer(KapetaConfigurationProvider, String, String)} - but resolves the host name
+     * using the given resolver - e.g. a {@link com.kapeta.spring.client.dns.DnsCache}
+     */
+    static ServiceInstanceSupplier ofConsumer(KapetaConfigurationProvider provider, String resourceName, String portType, HostResolver resolver) {
+        return () -> resolveAll(provider.getServiceAddress(resourceName, portType), resolver);
+    }
+
+    /**
+     * Expands an address to one instance per IP address of its host. HTTPS addresses are not expanded since
+     * the host name is needed to verify the certificate.
+     */
+    static List<ServiceInstance> resolveAll(String address) throws UnknownHostException {
+        return resolveAll(address, HostResolver.SYSTEM);
+    }
+
+    static List<ServiceInstance> resolveAll(String address, HostResolver resolver) throws UnknownHostException {
+        var uri = URI.create(address.trim());
+        if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+            return List.of(ServiceInstance.of(address.trim()));
+        }
+
+        var port = uri.getPort() > 0 ? ":" + uri.getPort() : "";
+        return Arrays.stream(resolver.resolve(uri.getHost()))
+                .map(InetAddress::getHostAddress)
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(ip -> ServiceInstance.of("http://" + (ip.contains(":") ? "[" + ip + "]" : ip) + port))
+                .toList();
+    }
+}
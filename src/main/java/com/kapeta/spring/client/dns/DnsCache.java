@@ -0,0 +1,285 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client.dns;
+
+import com.kapeta.spring.util.KapetaThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the addresses of host names - e.g. those of the consumers of this block.
+ * <p>
+ * Resolved addresses are kept for the TTL and refreshed in the background once it has passed - so lookups never
+ * wait for DNS once a host has been resolved. Hosts that haven't been looked up for a while are not refreshed but
+ * dropped. If a refresh fails the previous addresses are kept (stale-on-error) for up to the max stale time.
+ * Hosts that can't be resolved are cached for the negative TTL so a missing host doesn't cause a lookup per
+ * connection attempt.
+ * <p>
+ * Lookups are counted as kapeta.client.dns.lookups tagged with result=hit|miss|negative and refreshes as
+ * kapeta.client.dns.refreshes tagged with outcome=success|error.
+ * <p>
+ * Used as the resolver of the pooled REST clients - see {@link com.kapeta.spring.client.KapetaRestClients}.
+ */
+public class DnsCache implements HostResolver, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DnsCache.class);
+
+    /**
+     * Hosts not looked up for this many TTLs are dropped instead of refreshed
+     */
+    private static final int IDLE_TTLS = 10;
+
+    /**
+     * @param ttl         how long resolved addresses are used before refreshing them
+     * @param negativeTtl how long a failed lookup is remembered
+     * @param maxStale    how long past the TTL addresses are used while refreshing them fails
+     */
+    public record Settings(Duration ttl, Duration negativeTtl, Duration maxStale) {
+        public static final Settings DEFAULT = new Settings(Duration.ofSeconds(30), Duration.ofSeconds(5), Duration.ofMinutes(5));
+    }
+
+    private final HostResolver resolver;
+
+    private final Settings settings;
+
+    private final Map<String, CachedHost> cache = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<CachedHost>> pending = new ConcurrentHashMap<>();
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService executor;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter negativeHits;
+
+    private final Counter refreshSuccesses;
+
+    private final Counter refreshErrors;
+
+    /**
+     * @param meterRegistry where to register the metrics - or null to not record any
+     */
+    public DnsCache(HostResolver resolver, Settings settings, int refreshThreads, MeterRegistry meterRegistry) {
+        this.resolver = resolver;
+        this.settings = settings;
+
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, refreshThreads), KapetaThreads.daemonFactory("kapeta-dns"));
+        var checkInterval = Math.max(100, Math.min(settings.ttl().toMillis(), settings.negativeTtl().toMillis()) / 2);
+        executor.scheduleWithFixedDelay(this::refreshExpired, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+
+        if (meterRegistry != null) {
+            Gauge.builder("kapeta.client.dns.cache.size", cache, Map::size)
+                    .description("Host names in the DNS cache")
+                    .register(meterRegistry);
+            hits = lookupCounter(meterRegistry, "hit");
+            misses = lookupCounter(meterRegistry, "miss");
+            negativeHits = lookupCounter(meterRegistry, "negative");
+            refreshSuccesses = refreshCounter(meterRegistry, "success");
+            refreshErrors = refreshCounter(meterRegistry, "error");
+        } else {
+            hits = null;
+            misses = null;
+            negativeHits = null;
+            refreshSuccesses = null;
+            refreshErrors = null;
+        }
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kapeta.client.dns.lookups")
+                .description("Host name lookups using the DNS cache")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("kapeta.client.dns.refreshes")
+                .description("Background refreshes of cached host names")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        var key = host.toLowerCase();
+        var cached = cache.get(key);
+        if (cached == null) {
+            increment(misses);
+            cached = lookup(key);
+        } else {
+            increment(cached.error() != null ? negativeHits : hits);
+        }
+
+        cached.lastAccess = System.nanoTime();
+        if (cached.error() != null) {
+            var exception = new UnknownHostException(cached.error().getMessage());
+            exception.initCause(cached.error());
+            throw exception;
+        }
+        return cached.addresses().clone();
+    }
+
+    /**
+     * Resolves the given hosts in the background - so later lookups are hits
+     */
+    public void prime(Collection<String> hosts) {
+        for (String host : hosts) {
+            executor.execute(() -> {
+                try {
+                    resolve(host);
+                } catch (UnknownHostException e) {
+                    log.debug("Failed to resolve {}", host, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops all cached addresses
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private CachedHost lookup(String host) throws UnknownHostException {
+        // Concurrent lookups of the same host share a single resolution
+        var future = new CompletableFuture<CachedHost>();
+        var existing = pending.putIfAbsent(host, future);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException(host + ": interrupted");
+            } catch (ExecutionException e) {
+                throw new UnknownHostException(host + ": " + e.getCause().getMessage());
+            }
+        }
+
+        try {
+            var resolved = resolveNow(host, null);
+            cache.put(host, resolved);
+            future.complete(resolved);
+            return resolved;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            pending.remove(host);
+        }
+    }
+
+    private CachedHost resolveNow(String host, CachedHost previous) {
+        var now = System.nanoTime();
+        try {
+            var addresses = resolver.resolve(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host + ": no addresses");
+            }
+            return new CachedHost(addresses, null, now + settings.ttl().toNanos(), now, previous != null ? previous.lastAccess : now);
+        } catch (UnknownHostException e) {
+            if (previous != null && previous.error() == null && now - previous.resolvedAt() < settings.ttl().toNanos() + settings.maxStale().toNanos()) {
+                // Stale-on-error: keep the previous addresses and try again later
+                log.warn("Failed to refresh addresses of {} - using addresses resolved {}s ago", host,
+                        TimeUnit.NANOSECONDS.toSeconds(now - previous.resolvedAt()));
+                return new CachedHost(previous.addresses(), null, now + settings.negativeTtl().toNanos(), previous.resolvedAt(), previous.lastAccess);
+            }
+            log.debug("Failed to resolve {}", host, e);
+            return new CachedHost(null, e, now + settings.negativeTtl().toNanos(), now, previous != null ? previous.lastAccess : now);
+        }
+    }
+
+    private void refreshExpired() {
+        var now = System.nanoTime();
+        var idleNanos = settings.ttl().toNanos() * IDLE_TTLS;
+        cache.forEach((host, cached) -> {
+            if (now - cached.expiresAt() < 0) {
+                return;
+            }
+            if (now - cached.lastAccess > idleNanos) {
+                cache.remove(host, cached);
+                return;
+            }
+            if (refreshing.add(host)) {
+                executor.execute(() -> refresh(host, cached));
+            }
+        });
+    }
+
+    private void refresh(String host, CachedHost cached) {
+        try {
+            var refreshed = resolveNow(host, cached);
+            // Stale addresses keep the time they were resolved at
+            var success = refreshed.error() == null && refreshed.resolvedAt() != cached.resolvedAt();
+            increment(success ? refreshSuccesses : refreshErrors);
+            cache.replace(host, cached, refreshed);
+        } finally {
+            refreshing.remove(host);
+        }
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static final class CachedHost {
+        private final InetAddress[] addresses;
+        private final UnknownHostException error;
+        private final long expiresAt;
+        private final long resolvedAt;
+        private volatile long lastAccess;
+
+        private CachedHost(InetAddress[] addresses, UnknownHostException error, long expiresAt, long resolvedAt, long lastAccess) {
+            this.addresses = addresses;
+            this.error = error;
+            this.expiresAt = expiresAt;
+            this.resolvedAt = resolvedAt;
+            this.lastAccess = lastAccess;
+        }
+
+        InetAddress[] addresses() {
+            return addresses;
+        }
+
+        UnknownHostException error() {
+            return error;
+        }
+
+        long expiresAt() {
+            return expiresAt;
+        }
+
+        long resolvedAt() {
+            return resolvedAt;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolves a host name to its IP addresses
+ */
+@FunctionalInterface
+public interface HostResolver {
+
+    /**
+     * Uses the resolver of the JVM
+     */
+    HostResolver SYSTEM = InetAddress::getAllByName;
+
+    InetAddress[] resolve(String host) throws UnknownHostException;
+
+    /**
+     * Uses this resolver - and the fallback for hosts this resolver doesn't know
+     */
+    default HostResolver orElse(HostResolver fallback) {
+        return host -> {
+            try {
+                return resolve(host);
+            } catch (UnknownHostException e) {
+                return fallback.resolve(host);
+            }
+        };
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client.dns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves host names using a file in the hosts file format - "[ip] [host] [aliases...]" per line with
+ * # starting a comment. Hosts may be listed on multiple lines to resolve to multiple addresses.
+ * <p>
+ * The file is read again when its modification time changes.
+ */
+public class HostsFileResolver implements HostResolver {
+
+    private final Path file;
+
+    private volatile Map<String, InetAddress[]> hosts = Collections.emptyMap();
+
+    private volatile long lastModified = -1;
+
+    public HostsFileResolver(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        var addresses = getHosts().get(host.toLowerCase());
+        if (addresses == null) {
+            throw new UnknownHostException(host + ": not found in " + file);
+        }
+        return addresses.clone();
+    }
+
+    private Map<String, InetAddress[]> getHosts() throws UnknownHostException {
+        try {
+            var modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified != lastModified) {
+                synchronized (this) {
+                    if (modified != lastModified) {
+                        hosts = parse(Files.readAllLines(file));
+                        lastModified = modified;
+                    }
+                }
+            }
+            return hosts;
+        } catch (IOException e) {
+            var exception = new UnknownHostException("Failed to read hosts file: " + file);
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    static Map<String, InetAddress[]> parse(List<String> lines) throws UnknownHostException {
+        var out = new HashMap<String, List<InetAddress>>();
+        for (String line : lines) {
+            var comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            var parts = line.trim().split("\\s+");
+            if (parts.length < 2) {
+                continue;
+            }
+
+            // Only accepts IP literals so parsing never triggers a lookup
+            var ip = parts[0];
+            var address = parseIpLiteral(ip);
+            if (address == null) {
+                throw new UnknownHostException("Invalid address in hosts file: " + ip);
+            }
+            for (int i = 1; i < parts.length; i++) {
+                var host = parts[i].toLowerCase();
+                out.computeIfAbsent(host, h -> new ArrayList<>()).add(InetAddress.getByAddress(host, address));
+            }
+        }
+
+        var hosts = new HashMap<String, InetAddress[]>();
+        out.forEach((host, addresses) -> hosts.put(host, addresses.toArray(InetAddress[]::new)));
+        return hosts;
+    }
+
+    /**
+     * Parses a dotted decimal IPv4 or a RFC 4291 IPv6 literal - without zone. Returns null if it's neither.
+     */
+    static byte[] parseIpLiteral(String ip) {
+        return ip.indexOf(':') >= 0 ? parseIpv6(ip) : parseIpv4(ip);
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        var parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+
+        var address = new byte[4];
+        for (int i = 0; i < parts.length; i++) {
+            var part = parts[i];
+            // Leading zeros are rejected as some resolvers read them as octal
+            if (part.isEmpty() || part.length() > 3 || part.length() > 1 && part.charAt(0) == '0') {
+                return null;
+            }
+            var value = 0;
+            for (int j = 0; j < part.length(); j++) {
+                var c = part.charAt(j);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (value > 255) {
+                return null;
+            }
+            address[i] = (byte) value;
+        }
+        return address;
+    }
+
+    private static byte[] parseIpv6(String ip) {
+        var compressed = ip.indexOf("::");
+        if (compressed >= 0 && ip.indexOf("::", compressed + 1) >= 0) {
+            return null;
+        }
+
+        List<Integer> head;
+        List<Integer> tail;
+        if (compressed >= 0) {
+            head = parseIpv6Groups(ip.substring(0, compressed), false);
+            tail = parseIpv6Groups(ip.substring(compressed + 2), true);
+        } else {
+            head = parseIpv6Groups(ip, true);
+            tail = List.of();
+        }
+        if (head == null || tail == null) {
+            return null;
+        }
+
+        var groups = head.size() + tail.size();
+        // "::" stands for at least one group of zeros
+        if (compressed >= 0 ? groups > 7 : groups != 8) {
+            return null;
+        }
+
+        var address = new byte[16];
+        for (int i = 0; i < head.size(); i++) {
+            address[i * 2] = (byte) (head.get(i) >> 8);
+            address[i * 2 + 1] = head.get(i).byteValue();
+        }
+        var offset = 8 - tail.size();
+        for (int i = 0; i < tail.size(); i++) {
+            address[(offset + i) * 2] = (byte) (tail.get(i) >> 8);
+            address[(offset + i) * 2 + 1] = tail.get(i).byteValue();
+        }
+        return address;
+    }
+
+    /**
+     * Parses colon separated groups of up to 4 hex digits - the last one may be an embedded IPv4 address if allowed
+     */
+    private static List<Integer> parseIpv6Groups(String groups, boolean allowIpv4) {
+        var out = new ArrayList<Integer>();
+        if (groups.isEmpty()) {
+            return out;
+        }
+
+        var parts = groups.split(":", -1);
+        for (int i = 0; i < parts.length; i++) {
+            var part = parts[i];
+            if (allowIpv4 && i == parts.length - 1 && part.indexOf('.') >= 0) {
+                var ipv4 = parseIpv4(part);
+                if (ipv4 == null) {
+                    return null;
+                }
+                out.add((ipv4[0] & 0xff) << 8 | ipv4[1] & 0xff);
+                out.add((ipv4[2] & 0xff) << 8 | ipv4[3] & 0xff);
+                continue;
+            }
+            if (part.isEmpty() || part.length() > 4) {
+                return null;
+            }
+            var value = 0;
+            for (int j = 0; j < part.length(); j++) {
+                var c = part.charAt(j);
+                // Character.digit would also accept non-ASCII digits
+                var digit = c >= '0' && c <= '9' ? c - '0'
+                        : c >= 'a' && c <= 'f' ? c - 'a' + 10
+                        : c >= 'A' && c <= 'F' ? c - 'A' + 10
+                        : -1;
+                if (digit < 0) {
+                    return null;
+                }
+                value = value << 4 | digit;
+            }
+            out.add(value);
+        }
+        return out;
+    }
+}
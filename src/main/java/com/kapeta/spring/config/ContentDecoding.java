@@ -0,0 +1,208 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses gzip and deflate encoded response bodies while they are read.
+ * <p>
+ * Inflaters hold native memory until they are ended - so instead of creating one per response they are taken
+ * from a bounded pool and returned to it when the body is closed.
+ */
+final class ContentDecoding {
+
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    static final String IDENTITY = "identity";
+
+    private static final int POOL_SIZE = 16;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    // gzip uses raw deflate data - deflate uses the zlib format
+    private static final BlockingQueue<Inflater> RAW_INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private static final BlockingQueue<Inflater> ZLIB_INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private ContentDecoding() {
+    }
+
+    /**
+     * Returns the normalised content encoding - gzip, deflate or identity
+     */
+    static String normalise(String contentEncoding) {
+        if (contentEncoding == null || contentEncoding.isBlank()) {
+            return IDENTITY;
+        }
+        var encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        return encoding.equals("x-gzip") ? "gzip" : encoding;
+    }
+
+    /**
+     * Wraps the body so it's decompressed while read. Closing the returned stream closes the body.
+     */
+    static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        return switch (normalise(contentEncoding)) {
+            case IDENTITY -> body;
+            case "gzip" -> {
+                readGzipHeader(body);
+                yield new PooledInflaterInputStream(body, RAW_INFLATERS, true);
+            }
+            case "deflate" -> new PooledInflaterInputStream(body, ZLIB_INFLATERS, false);
+            default -> throw new IOException("Unsupported content encoding: " + contentEncoding);
+        };
+    }
+
+    private static Inflater acquire(BlockingQueue<Inflater> pool, boolean nowrap) {
+        var inflater = pool.poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    private static void release(BlockingQueue<Inflater> pool, Inflater inflater) {
+        inflater.reset();
+        if (!pool.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    private static void readGzipHeader(InputStream in) throws IOException {
+        var crc = new CRC32();
+        if (readUShort(in, crc) != GZIP_MAGIC) {
+            throw new ZipException("Not in gzip format");
+        }
+        if (readUByte(in, crc) != 8) {
+            throw new ZipException("Unsupported gzip compression method");
+        }
+        var flags = readUByte(in, crc);
+        // Modification time, extra flags and operating system
+        for (int i = 0; i < 6; i++) {
+            readUByte(in, crc);
+        }
+        if ((flags & FEXTRA) != 0) {
+            var length = readUShort(in, crc);
+            for (int i = 0; i < length; i++) {
+                readUByte(in, crc);
+            }
+        }
+        if ((flags & FNAME) != 0) {
+            while (readUByte(in, crc) != 0) {
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readUByte(in, crc) != 0) {
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            var expected = (int) crc.getValue() & 0xffff;
+            if (readUShort(in, null) != expected) {
+                throw new ZipException("Corrupt gzip header");
+            }
+        }
+    }
+
+    private static int readUShort(InputStream in, CRC32 crc) throws IOException {
+        return readUByte(in, crc) | (readUByte(in, crc) << 8);
+    }
+
+    private static int readUByte(InputStream in, CRC32 crc) throws IOException {
+        var b = in.read();
+        if (b < 0) {
+            throw new EOFException("Unexpected end of gzip data");
+        }
+        if (crc != null) {
+            crc.update(b);
+        }
+        return b;
+    }
+
+    /**
+     * Inflates using a pooled inflater - and for gzip verifies the checksum and size in the trailer
+     */
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+
+        private final BlockingQueue<Inflater> pool;
+
+        private final CRC32 crc;
+
+        private boolean released;
+
+        private boolean trailerChecked;
+
+        PooledInflaterInputStream(InputStream in, BlockingQueue<Inflater> pool, boolean gzip) {
+            super(in, acquire(pool, gzip), BUFFER_SIZE);
+            this.pool = pool;
+            this.crc = gzip ? new CRC32() : null;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                throw new IOException("Stream closed");
+            }
+            var read = super.read(b, off, len);
+            if (read > 0 && crc != null) {
+                crc.update(b, off, read);
+            } else if (read < 0 && crc != null && !trailerChecked) {
+                trailerChecked = true;
+                checkGzipTrailer();
+            }
+            return read;
+        }
+
+        private void checkGzipTrailer() throws IOException {
+            // The trailer follows the deflate data - part of it may already be in the input buffer
+            var remaining = inf.getRemaining();
+            var trailer = new byte[8];
+            var count = Math.min(remaining, trailer.length);
+            System.arraycopy(buf, len - remaining, trailer, 0, count);
+            while (count < trailer.length) {
+                var read = in.read(trailer, count, trailer.length - count);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of gzip data");
+                }
+                count += read;
+            }
+
+            var expectedCrc = readUInt(trailer, 0);
+            var expectedSize = readUInt(trailer, 4);
+            if (expectedCrc != crc.getValue() || expectedSize != (inf.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt gzip trailer");
+            }
+        }
+
+        private static long readUInt(byte[] bytes, int offset) {
+            return (bytes[offset] & 0xffL)
+                    | (bytes[offset + 1] & 0xffL) << 8
+                    | (bytes[offset + 2] & 0xffL) << 16
+                    | (bytes[offset + 3] & 0xffL) << 24;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!released) {
+                released = true;
+                release(pool, inf);
+            }
+            in.close();
+        }
+    }
+}
@@ -6,12 +6,18 @@
 package com.kapeta.spring.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapeta.spring.config.providers.CachingConfigurationProvider;
+import com.kapeta.spring.config.providers.InstrumentedConfigurationProvider;
 import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
 import com.kapeta.spring.config.providers.KubernetesConfigProvider;
 import com.kapeta.spring.config.providers.LocalClusterServiceConfigProvider;
+import com.kapeta.spring.config.providers.SnapshotConfigurationProvider;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.env.ConfigurableEnvironment;
@@ -26,6 +32,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -52,10 +59,16 @@ public class KapetaApplicationInitializer implements ApplicationListener<Applica
 
     public static final String KAPETA_CONFIG_PATH = "KAPETA_CONFIG_PATH";
 
+    public static final String KAPETA_CONFIG_SNAPSHOT = "KAPETA_CONFIG_SNAPSHOT";
+
     public static final String CONFIG_KAPETA_SYSTEM_TYPE = "kapeta.system.type";
     public static final String CONFIG_KAPETA_SYSTEM_ID = "kapeta.system.id";
     public static final String CONFIG_KAPETA_BLOCK_REF = "kapeta.block.ref";
     public static final String CONFIG_KAPETA_INSTANCE_ID = "kapeta.instance.id";
+    public static final String CONFIG_KAPETA_PROVIDER_METRICS_ENABLED = "kapeta.config.metrics.enabled";
+    public static final String CONFIG_KAPETA_PROVIDER_CACHE_PREFIX = "kapeta.config.cache.";
+    public static final String CONFIG_KAPETA_SNAPSHOT_ENABLED = "kapeta.config.snapshot.enabled";
+    public static final String CONFIG_KAPETA_SNAPSHOT_FILE = "kapeta.config.snapshot.file";
 
 
     public static final String DEFAULT_SYSTEM_TYPE = "development";
@@ -64,6 +77,8 @@ public class KapetaApplicationInitializer implements ApplicationListener<Applica
 
     public static final String HEALTH_CHECK_ENDPOINT = "/.kapeta/health";
 
+    public static final String READINESS_CHECK_ENDPOINT = "/.kapeta/ready";
+
     @Override
     public void onApplicationEvent(ApplicationPreparedEvent event) {
         final ConfigurableApplicationContext applicationContext = event.getApplicationContext();
@@ -104,22 +119,55 @@ public class KapetaApplicationInitializer implements ApplicationListener<Applica
         log.info("Starting block instance for block: '{}'", blockRef);
 
 
+        final Path snapshotFile = getSnapshotFile(environment, blockRef);
+        final boolean snapshotEnabled = environment.getProperty(CONFIG_KAPETA_SNAPSHOT_ENABLED, Boolean.class, false);
+
         try {
 
             KapetaConfigurationProvider configProvider = switch (systemType) {
                 case "k8s", "kubernetes" ->
                         new KubernetesConfigProvider(systemId, environment);
                 case "development", "dev", "local" -> {
-                    var local = new LocalClusterServiceConfigProvider(blockRef, systemId, instanceId, environment);
+                    LocalClusterServiceConfigProvider local;
+                    try {
+                        local = new LocalClusterServiceConfigProvider(blockRef, systemId, instanceId, environment);
+                    } catch (IOException e) {
+                        if (snapshotEnabled && SnapshotConfigurationProvider.exists(snapshotFile)) {
+                            log.warn("Cluster service is unavailable - starting from configuration snapshot {}", snapshotFile, e);
+                            yield SnapshotConfigurationProvider.fromSnapshot(snapshotFile, blockRef, environment);
+                        }
+                        throw e;
+                    }
                     //Tell the cluster service about this instance
                     local.onInstanceStarted(HEALTH_CHECK_ENDPOINT);
                     Runtime.getRuntime().addShutdownHook(new Thread(local::onInstanceStopped));
                     yield local;
                 }
+                case "snapshot" ->
+                        SnapshotConfigurationProvider.fromSnapshot(snapshotFile, blockRef, environment);
 
                 default -> throw new RuntimeException("Unknown environment: " + systemType);
             };
 
+            SnapshotConfigurationProvider snapshotProvider = null;
+            if (snapshotEnabled && !(configProvider instanceof SnapshotConfigurationProvider)) {
+                var recording = new SnapshotConfigurationProvider(configProvider, snapshotFile, blockRef);
+                // Only record a snapshot once the block has started successfully
+                applicationContext.addApplicationListener((ApplicationListener<ApplicationReadyEvent>) ready -> recording.writeSnapshot());
+                snapshotProvider = recording;
+                configProvider = recording;
+            }
+
+            if (environment.getProperty(CONFIG_KAPETA_PROVIDER_METRICS_ENABLED, Boolean.class, true)) {
+                // The application context - and its meter registries - doesn't exist yet. Spring boot adds
+                // its registries to the global registry once they are created
+                configProvider = new InstrumentedConfigurationProvider(configProvider, Metrics.globalRegistry);
+            }
+
+            if (environment.getProperty(CONFIG_KAPETA_PROVIDER_CACHE_PREFIX + "enabled", Boolean.class, false)) {
+                configProvider = createCachingProvider(environment, configProvider);
+            }
+
             var configSource = new PropertiesConfigurationSource(configProvider);
             configSource.setProperty(PropertiesConfigurationSource.KAPETA_SYSTEM_TYPE, systemType);
             configSource.setProperty(PropertiesConfigurationSource.KAPETA_SYSTEM_ID, systemId);
@@ -129,6 +177,18 @@ public class KapetaApplicationInitializer implements ApplicationListener<Applica
             MutablePropertySources propertySources = environment.getPropertySources();
             propertySources.addFirst(configSource);
 
+            if (snapshotProvider != null) {
+                // The snapshot may hold an outdated instance configuration - apply the current one once known
+                snapshotProvider.setInstanceConfigListener(instanceConfig -> {
+                    var changedKeys = configSource.updateInstanceConfig(instanceConfig);
+                    // Beans created later see the changes anyway - and events can't be published before the refresh
+                    if (!changedKeys.isEmpty() && applicationContext.isActive()) {
+                        log.info("Configuration changed since the snapshot was recorded: {}", changedKeys);
+                        applicationContext.publishEvent(new KapetaConfigurationChangedEvent(configSource, changedKeys));
+                    }
+                });
+            }
+
             applicationContext.getBeanFactory().registerResolvableDependency(PropertiesConfigurationSource.class, configSource);
             applicationContext.getBeanFactory().registerResolvableDependency(KapetaConfigurationProvider.class, configProvider);
 
@@ -141,6 +201,44 @@ public class KapetaApplicationInitializer implements ApplicationListener<Applica
         }
     }
 
+    /**
+     * Gets the path of the configuration snapshot file - from KAPETA_CONFIG_SNAPSHOT, kapeta.config.snapshot.file
+     * or ~/.kapeta/snapshots/&lt;block ref&gt;/config-snapshot.smile
+     * <p>
+     * The snapshot holds credentials - so it's kept outside the block directory by default
+     */
+    private static Path getSnapshotFile(ConfigurableEnvironment environment, String blockRef) {
+        var directory = Paths.get(System.getProperty("user.home"), ".kapeta", "snapshots");
+        // E.g. kapeta/my-block:local becomes kapeta/my-block/local
+        for (var segment : blockRef.split("[/:]")) {
+            if (!segment.isEmpty()) {
+                var name = segment.replaceAll("[^A-Za-z0-9._-]", "_");
+                directory = directory.resolve(name.equals(".") || name.equals("..") ? "_" : name);
+            }
+        }
+        var defaultFile = directory.resolve("config-snapshot.smile").toString();
+        return Path.of(getSystemConfiguration(environment, KAPETA_CONFIG_SNAPSHOT, CONFIG_KAPETA_SNAPSHOT_FILE, defaultFile));
+    }
+
+    private static CachingConfigurationProvider createCachingProvider(ConfigurableEnvironment environment, KapetaConfigurationProvider configProvider) {
+        var ttls = new HashMap<String, Duration>();
+        ttls.put(CachingConfigurationProvider.METHOD_SERVICE_ADDRESS, getCacheDuration(environment, "ttl." + CachingConfigurationProvider.METHOD_SERVICE_ADDRESS, "30s"));
+        ttls.put(CachingConfigurationProvider.METHOD_INSTANCE_HOST, getCacheDuration(environment, "ttl." + CachingConfigurationProvider.METHOD_INSTANCE_HOST, "30s"));
+        ttls.put(CachingConfigurationProvider.METHOD_RESOURCE_INFO, getCacheDuration(environment, "ttl." + CachingConfigurationProvider.METHOD_RESOURCE_INFO, "1m"));
+        ttls.put(CachingConfigurationProvider.METHOD_INSTANCE_OPERATOR, getCacheDuration(environment, "ttl." + CachingConfigurationProvider.METHOD_INSTANCE_OPERATOR, "1m"));
+
+        return new CachingConfigurationProvider(
+                configProvider,
+                ttls,
+                getCacheDuration(environment, "max-stale", "5m"),
+                environment.getProperty(CONFIG_KAPETA_PROVIDER_CACHE_PREFIX + "max-size", Integer.class, CachingConfigurationProvider.DEFAULT_MAX_SIZE)
+        );
+    }
+
+    private static Duration getCacheDuration(ConfigurableEnvironment environment, String key, String defaultValue) {
+        return DurationStyle.detectAndParse(environment.getProperty(CONFIG_KAPETA_PROVIDER_CACHE_PREFIX + key, defaultValue));
+    }
+
     private void applyConfigFile(ConfigurableEnvironment environment, String configPath) {
         try {
             var om = new ObjectMapper();
@@ -165,13 +263,16 @@ public class KapetaApplicationInitializer implements ApplicationListener<Applica
         }
     }
 
-    private String getBlockDir(final ConfigurableEnvironment environment) {
+    private static String getBlockDir(final Environment environment) {
         return environment.getProperty(KAPETA_BASE_DIR,
                 Paths.get(".").toAbsolutePath().normalize().toString()
         );
     }
 
-    private String getBlockYMLPath(final ConfigurableEnvironment environment) {
+    /**
+     * Gets the path of the kapeta.yml file of this block - from KAPETA_BASE_DIR or the working directory
+     */
+    public static String getBlockYMLPath(final Environment environment) {
 
         String blockDir = getBlockDir(environment);
 
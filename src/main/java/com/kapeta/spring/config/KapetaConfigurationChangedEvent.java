@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Set;
+
+/**
+ * Published when properties of the kapeta configuration source changed while the application is running - see
+ * {@link KapetaConfigurationWatcher}.
+ * <p>
+ * Lists the names of the properties that were added, changed or removed - so beans can apply them selectively
+ * without refreshing the application context.
+ */
+public class KapetaConfigurationChangedEvent extends ApplicationEvent {
+
+    private final Set<String> changedKeys;
+
+    public KapetaConfigurationChangedEvent(Object source, Set<String> changedKeys) {
+        super(source);
+        this.changedKeys = Set.copyOf(changedKeys);
+    }
+
+    public Set<String> getChangedKeys() {
+        return changedKeys;
+    }
+
+    /**
+     * True if the given property - or any property below it - changed
+     */
+    public boolean isChanged(String prefix) {
+        return changedKeys.stream().anyMatch(key -> key.equals(prefix)
+                || key.startsWith(prefix + ".")
+                || key.startsWith(prefix + "["));
+    }
+
+    @Override
+    public String toString() {
+        return "KapetaConfigurationChangedEvent" + changedKeys;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConfigurationPropertiesBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.BindHandler;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.handler.IgnoreErrorsBindHandler;
+import org.springframework.boot.context.properties.bind.handler.NoUnboundElementsBindHandler;
+import org.springframework.boot.context.properties.bind.validation.ValidationBindHandler;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.validation.Validator;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Binds the {@link ConfigurationProperties} beans affected by a {@link KapetaConfigurationChangedEvent} again - so
+ * e.g. rate limits, feature flags and pool sizes can be changed without restarting or refreshing the context.
+ * <p>
+ * Only beans whose prefix intersects the changed properties are bound - onto the existing instance, so other
+ * beans keep their references to it. Properties removed from the configuration keep their current value.
+ * Immutable (constructor bound) beans can't be bound again and are skipped with a warning.
+ * <p>
+ * Beans are bound like Spring Boot binds them while starting: unknown properties fail the binding unless
+ * {@code ignoreUnknownFields} is set, and {@link Validated} beans are validated. These are checked on a new instance first - so a
+ * change that fails them is not applied at all.
+ * <p>
+ * Runs before other listeners of the event so they see the updated beans.
+ */
+public class KapetaConfigurationPropertiesRebinder implements ApplicationListener<KapetaConfigurationChangedEvent>, Ordered {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaConfigurationPropertiesRebinder.class);
+
+    private final ApplicationContext applicationContext;
+
+    public KapetaConfigurationPropertiesRebinder(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void onApplicationEvent(KapetaConfigurationChangedEvent event) {
+        rebind(event.getChangedKeys());
+    }
+
+    /**
+     * Binds the configuration properties beans whose prefix intersects the given properties again.
+     * <p>
+     * Returns the names of the beans that were bound
+     */
+    public Set<String> rebind(Set<String> changedKeys) {
+        var changed = changedKeys.stream()
+                .map(key -> ConfigurationPropertyName.adapt(key, '.'))
+                .filter(name -> !name.isEmpty())
+                .toList();
+        if (changed.isEmpty()) {
+            return Set.of();
+        }
+
+        var rebound = new TreeSet<String>();
+        var binder = Binder.get(applicationContext.getEnvironment());
+        ConfigurationPropertiesBean.getAll(applicationContext).forEach((name, bean) -> {
+            var prefix = ConfigurationPropertyName.of(bean.getAnnotation().prefix());
+            if (intersects(prefix, changed) && rebind(binder, bean)) {
+                rebound.add(name);
+            }
+        });
+        return rebound;
+    }
+
+    private boolean rebind(Binder binder, ConfigurationPropertiesBean bean) {
+        var target = bean.asBindTarget();
+        if (target.getValue() == null) {
+            log.warn("Can't apply configuration changes to immutable configuration properties bean {}", bean.getName());
+            return false;
+        }
+
+        var annotation = bean.getAnnotation();
+        var handler = annotation.ignoreInvalidFields() ? new IgnoreErrorsBindHandler() : BindHandler.DEFAULT;
+        if (!annotation.ignoreUnknownFields()) {
+            handler = new NoUnboundElementsBindHandler(handler);
+        }
+        var validators = getValidators(bean);
+        if (!validators.isEmpty()) {
+            handler = new ValidationBindHandler(handler, validators.toArray(Validator[]::new));
+        }
+        try {
+            if (!validators.isEmpty() || !annotation.ignoreUnknownFields()) {
+                // Binding onto the bean changes it before it's checked - so check on a new instance first
+                binder.bind(annotation.prefix(), Bindable.of(target.getType()).withAnnotations(target.getAnnotations()), handler);
+            }
+            binder.bind(annotation.prefix(), target, handler);
+            log.info("Applied configuration changes to {}", bean.getName());
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply configuration changes to {}", bean.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * The validators Spring Boot uses for the bean - none unless it's {@link Validated} or a validator itself
+     */
+    private List<Validator> getValidators(ConfigurationPropertiesBean bean) {
+        var validators = new ArrayList<Validator>();
+        if (bean.asBindTarget().getAnnotation(Validated.class) != null) {
+            if (applicationContext.containsBean(EnableConfigurationProperties.VALIDATOR_BEAN_NAME)) {
+                validators.add(applicationContext.getBean(EnableConfigurationProperties.VALIDATOR_BEAN_NAME, Validator.class));
+            }
+            var validator = applicationContext.getBeanProvider(Validator.class).getIfUnique();
+            if (validator != null && !validators.contains(validator)) {
+                validators.add(validator);
+            }
+        }
+        if (bean.getInstance() instanceof Validator validator) {
+            validators.add(validator);
+        }
+        return validators;
+    }
+
+    /**
+     * True if a changed property is - or is below or above - the prefix
+     */
+    private static boolean intersects(ConfigurationPropertyName prefix, List<ConfigurationPropertyName> changed) {
+        return changed.stream().anyMatch(name -> prefix.equals(name)
+                || prefix.isAncestorOf(name)
+                || name.isAncestorOf(prefix));
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import com.kapeta.spring.config.providers.CachingConfigurationProvider;
+import com.kapeta.spring.config.providers.DelegatingConfigurationProvider;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import com.kapeta.spring.config.providers.LocalClusterServiceConfigProvider;
+import com.kapeta.spring.util.Backoff;
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Applies configuration changes pushed by the cluster service while the application is running.
+ * <p>
+ * Subscribes to a stream of server-sent events. When the instance configuration changes it is read again and
+ * only the properties that changed are updated in the {@link PropertiesConfigurationSource} - after which a
+ * {@link KapetaConfigurationChangedEvent} listing them is published. When the connections of the instance change
+ * the cached lookups of the configuration provider are cleared so service addresses are resolved again.
+ * <p>
+ * The stream is reopened with an exponential backoff - with jitter - when it fails. Every time it has been opened
+ * - including the first time - the instance configuration is read again, so changes made before subscribing or
+ * while it was closed aren't missed.
+ */
+public class KapetaConfigurationWatcher implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaConfigurationWatcher.class);
+
+    public static final String EVENT_CONFIG = "config";
+
+    public static final String EVENT_CONNECTIONS = "connections";
+
+    /**
+     * Opens the stream of server-sent events - see {@link LocalClusterServiceConfigProvider#openEventStream(Duration)}
+     */
+    @FunctionalInterface
+    public interface EventSource {
+        InputStream open() throws IOException;
+    }
+
+    private final EventSource eventSource;
+
+    private final KapetaConfigurationProvider configurationProvider;
+
+    private final PropertiesConfigurationSource configurationSource;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Backoff backoff;
+
+    private volatile boolean running;
+
+    private volatile InputStream stream;
+
+    private Thread thread;
+
+    /**
+     * @param eventSource opens the stream of configuration events - or null if the provider doesn't push changes
+     */
+    public KapetaConfigurationWatcher(EventSource eventSource,
+                                      KapetaConfigurationProvider configurationProvider,
+                                      PropertiesConfigurationSource configurationSource,
+                                      ApplicationEventPublisher eventPublisher,
+                                      Duration initialBackoff,
+                                      Duration maxBackoff) {
+        this.eventSource = eventSource;
+        this.configurationProvider = configurationProvider;
+        this.configurationSource = configurationSource;
+        this.eventPublisher = eventPublisher;
+        this.backoff = new Backoff(initialBackoff, maxBackoff);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (eventSource == null) {
+            log.info("Configuration provider {} does not push configuration changes", configurationProvider.getProviderId());
+            return;
+        }
+        running = true;
+        thread = KapetaThreads.startDaemon("kapeta-config-watch", this::watch);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        // Closing blocks until a pending read returns - so don't make the caller wait for it
+        CompletableFuture.runAsync(this::closeStream);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void watch() {
+        var attempt = 0;
+        while (running) {
+            try (var events = eventSource.open()) {
+                stream = events;
+                log.info("Subscribed to configuration changes");
+                attempt = 0;
+                // We might have missed changes before subscribing or while reconnecting
+                applyInstanceConfig();
+                read(events);
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.debug("Configuration change subscription failed", e);
+            } finally {
+                stream = null;
+            }
+
+            if (!running) {
+                return;
+            }
+
+            var delay = backoff.delayMillis(attempt++);
+            if (attempt % 10 == 1) {
+                log.info("Configuration change subscription closed - reconnecting in {}ms", delay);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void read(InputStream events) throws IOException {
+        var reader = new BufferedReader(new InputStreamReader(events, StandardCharsets.UTF_8));
+        var eventName = "message";
+        var hasData = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                // A blank line dispatches the event
+                if (hasData) {
+                    onEvent(eventName);
+                }
+                eventName = "message";
+                hasData = false;
+            } else if (line.startsWith("event:")) {
+                eventName = line.substring(6).trim();
+            } else if (line.startsWith("data:")) {
+                hasData = true;
+            }
+            // Comments (":") - used as heartbeats - and other fields are ignored
+        }
+    }
+
+    private void onEvent(String eventName) {
+        try {
+            switch (eventName) {
+                case EVENT_CONFIG -> applyInstanceConfig();
+                case EVENT_CONNECTIONS -> {
+                    log.info("Connections changed - clearing cached configuration lookups");
+                    clearCaches();
+                }
+                default -> log.debug("Ignoring configuration event {}", eventName);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to apply configuration event {}", eventName, e);
+        }
+    }
+
+    private void applyInstanceConfig() throws Exception {
+        var changedKeys = configurationSource.updateInstanceConfig(configurationProvider.getInstanceConfig());
+        if (changedKeys.isEmpty()) {
+            return;
+        }
+        log.info("Configuration changed: {}", changedKeys);
+        eventPublisher.publishEvent(new KapetaConfigurationChangedEvent(this, changedKeys));
+    }
+
+    private void clearCaches() {
+        var provider = configurationProvider;
+        while (provider instanceof DelegatingConfigurationProvider delegating) {
+            if (provider instanceof CachingConfigurationProvider caching) {
+                caching.clear();
+            }
+            provider = delegating.getDelegate();
+        }
+    }
+
+    private void closeStream() {
+        var current = stream;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.debug("Failed to close configuration change subscription", e);
+            }
+        }
+    }
+}
@@ -10,21 +10,72 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.MapperBuilder;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import com.kapeta.spring.config.pageable.PageableDeserializer;
-import com.kapeta.spring.config.pageable.PageableSerializer;
+import com.kapeta.spring.client.ConsistentHashStrategy;
+import com.kapeta.spring.client.dns.DnsCache;
+import com.kapeta.spring.client.dns.HostResolver;
+import com.kapeta.spring.client.dns.HostsFileResolver;
+import com.kapeta.spring.client.KapetaConsumers;
+import com.kapeta.spring.client.LoadBalancer;
+import com.kapeta.spring.client.LoadBalancerInterceptor;
+import com.kapeta.spring.client.LoadBalancerRegistry;
+import com.kapeta.spring.config.pageable.*;
+import com.kapeta.spring.deadline.DeadlineFilter;
+import com.kapeta.spring.deadline.DeadlineInterceptor;
+import com.kapeta.spring.resilience.CircuitBreaker;
+import com.kapeta.spring.resilience.DownstreamGuard;
+import com.kapeta.spring.resilience.ResilienceInterceptor;
+import com.kapeta.spring.resilience.ResilienceRegistry;
+import com.kapeta.spring.config.streaming.StreamingJsonHttpMessageConverter;
+import com.kapeta.spring.security.AuthorizationContextTaskDecorator;
+import com.kapeta.spring.security.AuthorizationForwarderFilter;
 import com.kapeta.spring.security.AuthorizationForwarderSupplier;
+import com.kapeta.spring.security.RequestAuthorizationForwarderSupplier;
+import com.kapeta.spring.config.providers.DelegatingConfigurationProvider;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import com.kapeta.spring.config.providers.LocalClusterServiceConfigProvider;
+import com.kapeta.spring.security.jwt.JwksKeySource;
+import com.kapeta.spring.security.jwt.JwtVerifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.env.Environment;
 import org.springframework.data.convert.ReadingConverter;
 import org.springframework.data.convert.WritingConverter;
 import org.springframework.data.domain.Pageable;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.StringUtils;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * Default configuration for kapeta
@@ -33,7 +84,25 @@ import org.springframework.data.domain.Pageable;
 public class KapetaDefaultConfig {
 
     public static ObjectMapper createDefaultObjectMapper() {
-        var om = JsonMapper.builder()
+        return configureDefaultObjectMapper(JsonMapper.builder());
+    }
+
+    /**
+     * Same as {@link #createDefaultObjectMapper()} but using the binary Smile format
+     */
+    public static ObjectMapper createDefaultSmileMapper() {
+        return configureDefaultObjectMapper(SmileMapper.builder());
+    }
+
+    /**
+     * Same as {@link #createDefaultObjectMapper()} but using the binary CBOR format
+     */
+    public static ObjectMapper createDefaultCborMapper() {
+        return configureDefaultObjectMapper(CBORMapper.builder());
+    }
+
+    private static <M extends ObjectMapper, B extends MapperBuilder<M, B>> M configureDefaultObjectMapper(B builder) {
+        var om = builder
                 .addModule(new JavaTimeModule())
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
                 .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, true)
@@ -44,6 +113,10 @@ public class KapetaDefaultConfig {
         SimpleModule pageableModule = new SimpleModule();
         pageableModule.addSerializer(Pageable.class, new PageableSerializer());
         pageableModule.addDeserializer(Pageable.class, new PageableDeserializer(om));
+        pageableModule.addSerializer(Cursor.class, new CursorSerializer());
+        pageableModule.addDeserializer(Cursor.class, new CursorDeserializer());
+        pageableModule.addSerializer(CursorPageable.class, new CursorPageableSerializer());
+        pageableModule.addDeserializer(CursorPageable.class, new CursorPageableDeserializer());
         om.registerModule(pageableModule);
 
         return om;
@@ -79,11 +152,338 @@ public class KapetaDefaultConfig {
     /**
      * Provides a way to forward authorization headers to another service
      * This is used by the REST Client SDK to automatically forward JWT to other internal services
+     * <p>
+     * Forwards the Authorization header of the request currently being handled - as captured by
+     * {@link #authorizationForwarderFilter()}
      */
     @Bean
     @ConditionalOnMissingBean(AuthorizationForwarderSupplier.class)
     public AuthorizationForwarderSupplier authorizationForwarderSupplier() {
-        return () -> null;
+        return new RequestAuthorizationForwarderSupplier();
+    }
+
+    /**
+     * Captures the Authorization header of incoming requests so it can be forwarded
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.security.forward-authorization", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<AuthorizationForwarderFilter> authorizationForwarderFilter() {
+        return new FilterRegistrationBean<>(new AuthorizationForwarderFilter());
+    }
+
+    /**
+     * Propagates the forwarded authorization to @Async methods and other spring managed executors
+     */
+    @Bean
+    @ConditionalOnMissingBean(TaskDecorator.class)
+    public TaskDecorator authorizationContextTaskDecorator() {
+        return new AuthorizationContextTaskDecorator();
+    }
+
+    /**
+     * Applies configuration changes pushed by the local cluster service without restarting - see
+     * {@link KapetaConfigurationWatcher}. Other environments don't push changes.
+     */
+    @Bean
+    @ConditionalOnMissingBean(KapetaConfigurationWatcher.class)
+    @ConditionalOnProperty(prefix = "kapeta.config.watch", name = "enabled", havingValue = "true")
+    public KapetaConfigurationWatcher kapetaConfigurationWatcher(KapetaConfigurationProvider configurationProvider,
+                                                                 PropertiesConfigurationSource configurationSource,
+                                                                 ApplicationEventPublisher eventPublisher,
+                                                                 @Value("${kapeta.config.watch.initial-backoff:1s}") Duration initialBackoff,
+                                                                 @Value("${kapeta.config.watch.max-backoff:30s}") Duration maxBackoff,
+                                                                 @Value("${kapeta.config.watch.read-timeout:90s}") Duration readTimeout) {
+        var provider = configurationProvider;
+        while (provider instanceof DelegatingConfigurationProvider delegating) {
+            provider = delegating.getDelegate();
+        }
+        var eventSource = provider instanceof LocalClusterServiceConfigProvider local
+                ? (KapetaConfigurationWatcher.EventSource) () -> local.openEventStream(readTimeout)
+                : null;
+        return new KapetaConfigurationWatcher(eventSource, configurationProvider, configurationSource, eventPublisher, initialBackoff, maxBackoff);
+    }
+
+    /**
+     * Binds the configuration properties beans affected by changes applied by the
+     * {@link KapetaConfigurationWatcher} again.
+     */
+    @Bean
+    @ConditionalOnMissingBean(KapetaConfigurationPropertiesRebinder.class)
+    @ConditionalOnProperty(prefix = "kapeta.config.watch", name = "enabled", havingValue = "true")
+    public KapetaConfigurationPropertiesRebinder kapetaConfigurationPropertiesRebinder(ApplicationContext applicationContext) {
+        return new KapetaConfigurationPropertiesRebinder(applicationContext);
+    }
+
+    /**
+     * Verifies JWTs locally against a JWKS document instead of calling an introspection endpoint.
+     * <p>
+     * The JWKS document is read from kapeta.security.jwt.jwks-file if set - otherwise from the "jwks" property of
+     * the instance configuration - and reloaded every kapeta.security.jwt.refresh-interval.
+     */
+    @Bean
+    @ConditionalOnMissingBean(JwtVerifier.class)
+    @ConditionalOnProperty(prefix = "kapeta.security.jwt", name = "enabled", havingValue = "true")
+    public JwtVerifier kapetaJwtVerifier(JwksKeySource kapetaJwksKeySource,
+                                         @Value("${kapeta.security.jwt.issuer:}") String issuer,
+                                         @Value("${kapeta.security.jwt.audience:}") String audience,
+                                         @Value("${kapeta.security.jwt.cache-size:" + JwtVerifier.DEFAULT_CACHE_SIZE + "}") int cacheSize,
+                                         @Value("${kapeta.security.jwt.clock-skew:30s}") Duration clockSkew) {
+        return new JwtVerifier(
+                kapetaJwksKeySource,
+                issuer.isBlank() ? null : issuer,
+                audience.isBlank() ? null : audience,
+                cacheSize,
+                clockSkew,
+                Clock.systemUTC()
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(JwksKeySource.class)
+    @ConditionalOnProperty(prefix = "kapeta.security.jwt", name = "enabled", havingValue = "true")
+    public JwksKeySource kapetaJwksKeySource(KapetaConfigurationProvider configurationProvider,
+                                             ObjectMapper objectMapper,
+                                             @Value("${kapeta.security.jwt.jwks-file:}") String jwksFile,
+                                             @Value("${kapeta.security.jwt.refresh-interval:5m}") Duration refreshInterval) {
+        if (!jwksFile.isBlank()) {
+            return JwksKeySource.fromFile(Path.of(jwksFile), refreshInterval);
+        }
+
+        return new JwksKeySource(() -> {
+            var jwks = configurationProvider.getInstanceConfig().get("jwks");
+            if (jwks == null) {
+                throw new IllegalStateException("No jwks-file configured and no jwks found in instance configuration");
+            }
+            return jwks instanceof String json ? json : objectMapper.writeValueAsString(jwks);
+        }, refreshInterval);
+    }
+
+    /**
+     * Reads the deadline of incoming requests - see {@link com.kapeta.spring.deadline.Deadline}.
+     * <p>
+     * Set kapeta.deadline.default-timeout to also give requests without a deadline one.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.deadline", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<DeadlineFilter> kapetaDeadlineFilter(@Value("${kapeta.deadline.default-timeout:}") String defaultTimeout) {
+        var registration = new FilterRegistrationBean<>(new DeadlineFilter(
+                StringUtils.hasText(defaultTimeout) ? DurationStyle.detectAndParse(defaultTimeout) : null
+        ));
+        // Right after the concurrency limit so rejected requests fail before doing any work
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    /**
+     * Forwards the remaining time of the current request's deadline from RestTemplates built using
+     * the RestTemplateBuilder - and fails fast once it has passed.
+     * <p>
+     * Runs before the resilience interceptor so calls rejected for an expired deadline don't take a permit
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @ConditionalOnProperty(prefix = "kapeta.deadline", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public RestTemplateCustomizer kapetaDeadlineRestTemplateCustomizer() {
+        return restTemplate -> restTemplate.getInterceptors().add(new DeadlineInterceptor());
+    }
+
+    /**
+     * Allows controllers to take a {@link CursorPageable} argument resolved from the
+     * "cursor", "size" and "sort" query parameters
+     */
+    @Bean
+    public WebMvcConfigurer kapetaCursorPageableConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+                resolvers.add(new CursorPageableArgumentResolver());
+            }
+        };
+    }
+
+    /**
+     * Allows controllers to return Stream and Iterator values which are written item by item
+     * as either JSON or application/x-ndjson - depending on the Accept header. Slices are only streamed
+     * when requested as application/x-ndjson.
+     * <p>
+     * Opt-in using kapeta.streaming.enabled since it changes how these types are serialized.
+     * See {@link StreamingJsonHttpMessageConverter} for details
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.streaming", name = "enabled", havingValue = "true")
+    public WebMvcConfigurer kapetaStreamingResponseConfigurer(ObjectMapper objectMapper,
+                                                              @Value("${kapeta.streaming.flush-interval:" + StreamingJsonHttpMessageConverter.DEFAULT_FLUSH_INTERVAL + "}") int flushInterval) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                // Must come before the regular jackson converter which would otherwise handle these types
+                converters.add(0, new StreamingJsonHttpMessageConverter(objectMapper, flushInterval));
+            }
+        };
+    }
+
+    /**
+     * Controls Smile (application/x-jackson-smile) and CBOR (application/cbor) support of both controllers and
+     * RestTemplates built using the RestTemplateBuilder.
+     * <p>
+     * Spring adds its own Smile and CBOR converters whenever their jars are on the classpath - which they are, as
+     * the SDK depends on them. When kapeta.codecs.binary.enabled is set these are replaced in place by converters
+     * configured like {@link #createDefaultObjectMapper()} - otherwise they're removed so JSON is the only format.
+     * The binary formats come after the JSON converter so they're only used when explicitly requested using the
+     * Accept and Content-Type headers.
+     */
+    @Bean
+    public WebMvcConfigurer kapetaBinaryCodecsConfigurer(@Value("${kapeta.codecs.binary.enabled:false}") boolean enabled) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                configureBinaryMessageConverters(converters, enabled);
+            }
+        };
+    }
+
+    @Bean
+    public RestTemplateCustomizer kapetaBinaryCodecsRestTemplateCustomizer(@Value("${kapeta.codecs.binary.enabled:false}") boolean enabled) {
+        return restTemplate -> configureBinaryMessageConverters(restTemplate.getMessageConverters(), enabled);
+    }
+
+    /**
+     * Caches the addresses of the hosts of the REST consumers declared in kapeta.yml - and any other host resolved
+     * by the pooled REST clients and load balancers.
+     * <p>
+     * Set kapeta.client.dns.hosts-file to resolve hosts using a file in the hosts file format before asking DNS.
+     */
+    @Bean
+    @ConditionalOnMissingBean(DnsCache.class)
+    @ConditionalOnProperty(prefix = "kapeta.client.dns", name = "enabled", havingValue = "true")
+    public DnsCache kapetaDnsCache(KapetaConfigurationProvider configurationProvider,
+                                   Environment environment,
+                                   ObjectProvider<MeterRegistry> meterRegistry,
+                                   @Value("${kapeta.client.dns.hosts-file:}") String hostsFile,
+                                   @Value("${kapeta.client.dns.ttl:30s}") Duration ttl,
+                                   @Value("${kapeta.client.dns.negative-ttl:5s}") Duration negativeTtl,
+                                   @Value("${kapeta.client.dns.max-stale:5m}") Duration maxStale,
+                                   @Value("${kapeta.client.dns.refresh-threads:2}") int refreshThreads) {
+        var resolver = StringUtils.hasText(hostsFile)
+                ? new HostsFileResolver(Path.of(hostsFile)).orElse(HostResolver.SYSTEM)
+                : HostResolver.SYSTEM;
+        var dnsCache = new DnsCache(resolver, new DnsCache.Settings(ttl, negativeTtl, maxStale), refreshThreads, meterRegistry.getIfAvailable());
+
+        var hosts = KapetaConsumers.read(environment, KapetaConfigurationProvider.DEFAULT_SERVER_PORT_TYPE).stream()
+                .map(consumer -> {
+                    try {
+                        return URI.create(configurationProvider.getServiceAddress(consumer.name(), consumer.portType()).trim()).getHost();
+                    } catch (RuntimeException e) {
+                        return null;
+                    }
+                })
+                .filter(Objects::nonNull)
+                .toList();
+        dnsCache.prime(hosts);
+        return dnsCache;
+    }
+
+    /**
+     * Client side load balancing for the REST consumers declared in kapeta.yml.
+     * <p>
+     * The address of each consumer is expanded to the IP addresses its host name resolves to - e.g. the pods
+     * of a headless kubernetes service - and refreshed every kapeta.client.load-balancer.refresh-interval.
+     */
+    @Bean
+    @ConditionalOnMissingBean(LoadBalancerRegistry.class)
+    @ConditionalOnProperty(prefix = "kapeta.client.load-balancer", name = "enabled", havingValue = "true")
+    public LoadBalancerRegistry kapetaLoadBalancerRegistry(KapetaConfigurationProvider configurationProvider,
+                                                           Environment environment,
+                                                           ObjectProvider<DnsCache> dnsCache,
+                                                           @Value("${kapeta.client.load-balancer.strategy:" + LoadBalancerRegistry.STRATEGY_LEAST_OUTSTANDING + "}") String strategy,
+                                                           @Value("${kapeta.client.load-balancer.refresh-interval:30s}") Duration refreshInterval,
+                                                           @Value("${kapeta.client.load-balancer.ejection.consecutive-failures:5}") int consecutiveFailures,
+                                                           @Value("${kapeta.client.load-balancer.ejection.base-duration:30s}") Duration baseEjection,
+                                                           @Value("${kapeta.client.load-balancer.ejection.max-duration:5m}") Duration maxEjection,
+                                                           @Value("${kapeta.client.load-balancer.ejection.max-percent:50}") int maxEjectionPercent,
+                                                           @Value("${kapeta.client.load-balancer.consistent-hash.virtual-nodes:" + ConsistentHashStrategy.DEFAULT_VIRTUAL_NODES + "}") int virtualNodes,
+                                                           @Value("${kapeta.client.load-balancer.consistent-hash.balance-factor:" + ConsistentHashStrategy.DEFAULT_BALANCE_FACTOR + "}") double balanceFactor) {
+        HostResolver resolver = dnsCache.getIfAvailable();
+        return LoadBalancerRegistry.create(
+                configurationProvider,
+                KapetaConsumers.read(environment, KapetaConfigurationProvider.DEFAULT_SERVER_PORT_TYPE),
+                LoadBalancerRegistry.getStrategy(strategy, virtualNodes, balanceFactor),
+                new LoadBalancer.OutlierEjection(consecutiveFailures, baseEjection, maxEjection, maxEjectionPercent),
+                refreshInterval,
+                resolver != null ? resolver : HostResolver.SYSTEM
+        );
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.client.load-balancer", name = "enabled", havingValue = "true")
+    public RestTemplateCustomizer kapetaLoadBalancerRestTemplateCustomizer(LoadBalancerRegistry loadBalancerRegistry) {
+        return restTemplate -> restTemplate.getInterceptors().add(new LoadBalancerInterceptor(loadBalancerRegistry));
+    }
+
+    /**
+     * A bulkhead and circuit breaker per REST consumer declared in kapeta.yml - so one hung dependency can't
+     * tie up every request thread of this block.
+     */
+    @Bean
+    @ConditionalOnMissingBean(ResilienceRegistry.class)
+    @ConditionalOnProperty(prefix = "kapeta.client.resilience", name = "enabled", havingValue = "true")
+    public ResilienceRegistry kapetaResilienceRegistry(KapetaConfigurationProvider configurationProvider,
+                                                       Environment environment,
+                                                       ObjectProvider<MeterRegistry> meterRegistry,
+                                                       @Value("${kapeta.client.resilience.bulkhead.max-concurrent-calls:25}") int maxConcurrentCalls,
+                                                       @Value("${kapeta.client.resilience.bulkhead.max-wait:0ms}") Duration maxWait,
+                                                       @Value("${kapeta.client.resilience.circuit-breaker.window:10s}") Duration window,
+                                                       @Value("${kapeta.client.resilience.circuit-breaker.buckets:10}") int buckets,
+                                                       @Value("${kapeta.client.resilience.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                                                       @Value("${kapeta.client.resilience.circuit-breaker.minimum-calls:20}") int minimumCalls,
+                                                       @Value("${kapeta.client.resilience.circuit-breaker.open-duration:10s}") Duration openDuration,
+                                                       @Value("${kapeta.client.resilience.circuit-breaker.half-open-calls:3}") int halfOpenCalls) {
+        return ResilienceRegistry.create(
+                configurationProvider,
+                KapetaConsumers.read(environment, KapetaConfigurationProvider.DEFAULT_SERVER_PORT_TYPE),
+                new DownstreamGuard.Settings(
+                        maxConcurrentCalls,
+                        maxWait,
+                        new CircuitBreaker.Settings(window, buckets, failureRateThreshold, minimumCalls, openDuration, halfOpenCalls)
+                ),
+                meterRegistry.getIfAvailable()
+        );
+    }
+
+    /**
+     * Runs right after the deadline interceptor - before the load balancer, so the guard sees the consumer address
+     * rather than the instance it chose
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    @ConditionalOnProperty(prefix = "kapeta.client.resilience", name = "enabled", havingValue = "true")
+    public RestTemplateCustomizer kapetaResilienceRestTemplateCustomizer(ResilienceRegistry resilienceRegistry) {
+        return restTemplate -> restTemplate.getInterceptors().add(new ResilienceInterceptor(resilienceRegistry));
+    }
+
+    static void configureBinaryMessageConverters(List<HttpMessageConverter<?>> converters, boolean enabled) {
+        replaceMessageConverter(converters, MappingJackson2SmileHttpMessageConverter.class,
+                enabled ? new MappingJackson2SmileHttpMessageConverter(createDefaultSmileMapper()) : null);
+        replaceMessageConverter(converters, MappingJackson2CborHttpMessageConverter.class,
+                enabled ? new MappingJackson2CborHttpMessageConverter(createDefaultCborMapper()) : null);
+    }
+
+    /**
+     * Removes the converters of the given type - and adds the replacement where the first of them was, or last
+     */
+    private static void replaceMessageConverter(List<HttpMessageConverter<?>> converters,
+                                                Class<?> type,
+                                                HttpMessageConverter<?> replacement) {
+        var index = converters.size();
+        for (int i = converters.size() - 1; i >= 0; i--) {
+            if (type.isInstance(converters.get(i))) {
+                converters.remove(i);
+                index = i;
+            }
+        }
+        if (replacement != null) {
+            converters.add(Math.min(index, converters.size()), replacement);
+        }
     }
 
 }
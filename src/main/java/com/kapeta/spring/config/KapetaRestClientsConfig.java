@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import com.kapeta.spring.client.HedgingPolicy;
+import com.kapeta.spring.client.KapetaConsumers;
+import com.kapeta.spring.client.KapetaRestClient;
+import com.kapeta.spring.client.KapetaRestClients;
+import com.kapeta.spring.client.KapetaRestClientsRegistrar;
+import com.kapeta.spring.client.LoadBalancerRegistry;
+import com.kapeta.spring.client.dns.DnsCache;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import com.kapeta.spring.security.AuthorizationForwarderSupplier;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * The pooled REST clients - only available if Apache HttpClient 5 is on the classpath.
+ * <p>
+ * The SDK doesn't bring it along: once it's on the classpath Spring Boot uses it for every RestTemplate built
+ * using the RestTemplateBuilder - with its small default connection pool.
+ */
+@Configuration
+@ConditionalOnClass(name = "org.apache.hc.client5.http.impl.classic.HttpClients")
+public class KapetaRestClientsConfig {
+
+    /**
+     * One pooled, keep-alive RestTemplate per REST consumer declared in kapeta.yml - which forwards the
+     * authorization of the current request.
+     * <p>
+     * Get them from {@link KapetaRestClients} or inject them as {@link KapetaRestClient} using the consumer name as
+     * qualifier - see {@link KapetaRestClientsRegistrar}.
+     * <p>
+     * Set kapeta.client.hedging.enabled to send hedged GET and HEAD requests when the first response is slow.
+     */
+    @Bean
+    @ConditionalOnMissingBean(KapetaRestClients.class)
+    @ConditionalOnProperty(prefix = "kapeta.client.pool", name = "enabled", havingValue = "true")
+    public KapetaRestClients kapetaRestClients(KapetaConfigurationProvider configurationProvider,
+                                               Environment environment,
+                                               ObjectProvider<RestTemplateBuilder> restTemplateBuilder,
+                                               AuthorizationForwarderSupplier authorizationForwarderSupplier,
+                                               ObjectProvider<MeterRegistry> meterRegistry,
+                                               ObjectProvider<LoadBalancerRegistry> loadBalancerRegistry,
+                                               ObjectProvider<DnsCache> dnsCache,
+                                               @Value("${kapeta.client.pool.max-connections:50}") int maxConnections,
+                                               @Value("${kapeta.client.pool.connect-timeout:2s}") Duration connectTimeout,
+                                               @Value("${kapeta.client.pool.read-timeout:30s}") Duration readTimeout,
+                                               @Value("${kapeta.client.pool.idle-timeout:60s}") Duration idleTimeout,
+                                               @Value("${kapeta.client.hedging.enabled:false}") boolean hedgingEnabled,
+                                               @Value("${kapeta.client.hedging.delay:100ms}") Duration hedgingDelay,
+                                               @Value("${kapeta.client.hedging.use-p95:true}") boolean hedgingUseP95,
+                                               @Value("${kapeta.client.hedging.budget-percent:5}") double hedgingBudgetPercent) {
+        var clients = new KapetaRestClients(
+                configurationProvider,
+                KapetaConsumers.read(environment, KapetaConfigurationProvider.DEFAULT_SERVER_PORT_TYPE),
+                restTemplateBuilder.getIfAvailable(RestTemplateBuilder::new),
+                authorizationForwarderSupplier,
+                meterRegistry.getIfAvailable(),
+                new KapetaRestClients.Settings(maxConnections, connectTimeout, readTimeout, idleTimeout)
+        );
+
+        dnsCache.ifAvailable(clients::withDnsResolver);
+        if (hedgingEnabled) {
+            clients.withHedging(new HedgingPolicy(hedgingDelay, hedgingUseP95, hedgingBudgetPercent), loadBalancerRegistry.getIfAvailable());
+        }
+        return clients;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.client.pool", name = "enabled", havingValue = "true")
+    public static KapetaRestClientsRegistrar kapetaRestClientsRegistrar() {
+        return new KapetaRestClientsRegistrar();
+    }
+}
@@ -6,11 +6,40 @@ package com.kapeta.spring.config;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapeta.spring.client.KapetaConsumers;
+import com.kapeta.spring.client.KapetaRestClients;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import com.kapeta.spring.health.KapetaDependencies;
+import com.kapeta.spring.health.KapetaDependencyGate;
+import com.kapeta.spring.health.KapetaHealthStatus;
+import com.kapeta.spring.health.KapetaPrewarm;
+import com.kapeta.spring.health.KapetaWarmup;
 import com.kapeta.spring.rest.KapetaController;
+import com.kapeta.spring.rest.KapetaManagementServer;
 import com.kapeta.spring.rest.OpenAPIRedirectController;
+import com.kapeta.spring.rest.limiter.AdaptiveConcurrencyLimiter;
+import com.kapeta.spring.rest.limiter.ConcurrencyLimitFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.HealthContributor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * Default controllers for kapeta
@@ -24,8 +53,169 @@ public class KapetaRestControllerConfig {
      */
     @Bean
     @ConditionalOnProperty(prefix = "kapeta.routes", name = "enabled", havingValue = "true", matchIfMissing = true)
-    public KapetaController kapetaController(ObjectMapper objectMapper) {
-        return new KapetaController(objectMapper);
+    public KapetaController kapetaController(KapetaHealthStatus healthStatus) {
+        return new KapetaController(healthStatus);
+    }
+
+    /**
+     * The cached health status served by the kapeta health endpoint.
+     * <p>
+     * Composed from the actuator health indicators which are checked in the background
+     * every kapeta.health.refresh-interval. An indicator that is down fails the ready route - the health route
+     * only reports it in the body unless kapeta.health.indicators.liveness is set. Set
+     * kapeta.health.indicators.enabled to false to ignore the indicators entirely.
+     */
+    @Bean
+    @ConditionalOnMissingBean(KapetaHealthStatus.class)
+    public KapetaHealthStatus kapetaHealthStatus(ObjectMapper objectMapper,
+                                                 ObjectProvider<HealthContributor> healthContributors,
+                                                 @Value("${kapeta.health.indicators.enabled:true}") boolean indicatorsEnabled,
+                                                 @Value("${kapeta.health.indicators.liveness:false}") boolean indicatorsAffectLiveness,
+                                                 @Value("${kapeta.health.refresh-interval:10s}") Duration refreshInterval) {
+        Iterable<HealthContributor> contributors = indicatorsEnabled ? healthContributors : List.of();
+        return new KapetaHealthStatus(objectMapper, contributors, refreshInterval, indicatorsAffectLiveness);
+    }
+
+    /**
+     * Serves the kapeta routes from a separate, lightweight listener so probes don't compete with
+     * business traffic for the main web server's worker threads.
+     * <p>
+     * The port is kapeta.routes.management.port if set - otherwise it's resolved using the "management" port type
+     * of the configuration provider. It must differ from the port of the main web server - providers fall back to
+     * the same default port for unknown port types, so that's rejected instead of failing to bind.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.routes.management", name = "enabled", havingValue = "true")
+    public KapetaManagementServer kapetaManagementServer(KapetaHealthStatus healthStatus,
+                                                         KapetaConfigurationProvider configurationProvider,
+                                                         @Value("${kapeta.routes.management.port:0}") int port,
+                                                         @Value("${kapeta.routes.management.threads:2}") int threads) {
+        var managementPort = port > 0
+                ? port
+                : configurationProvider.getServerPort(KapetaManagementServer.MANAGEMENT_PORT_TYPE);
+        var serverPort = configurationProvider.getServerPort();
+        if (managementPort == serverPort) {
+            throw new IllegalStateException(("The management port %d is the same as the server port - define a " +
+                    "\"%s\" port for the block or set kapeta.routes.management.port").formatted(
+                    managementPort, KapetaManagementServer.MANAGEMENT_PORT_TYPE));
+        }
+        return new KapetaManagementServer(
+                healthStatus,
+                configurationProvider.getServerHost(),
+                managementPort,
+                threads
+        );
+    }
+
+    /**
+     * Keeps the block from reporting ready until the configured warm-up requests have been
+     * sent through its own endpoints. See {@link KapetaWarmup} for details.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.warmup", name = "enabled", havingValue = "true")
+    public KapetaWarmup kapetaWarmup(KapetaHealthStatus healthStatus,
+                                     Environment environment,
+                                     @Value("${kapeta.warmup.requests-file:}") String requestsFile,
+                                     @Value("${kapeta.warmup.max-rounds:1000}") int maxRounds,
+                                     @Value("${kapeta.warmup.max-duration:60s}") Duration maxDuration,
+                                     @Value("${kapeta.warmup.compilation-threshold:20ms}") Duration compilationThreshold) {
+        var allRequests = new ArrayList<>(Binder.get(environment)
+                .bind("kapeta.warmup.requests", Bindable.listOf(String.class))
+                .orElse(List.of()));
+        if (StringUtils.hasText(requestsFile)) {
+            allRequests.addAll(KapetaWarmup.readRequests(Path.of(requestsFile)));
+        }
+        return new KapetaWarmup(healthStatus, allRequests, maxRounds, maxDuration, compilationThreshold);
+    }
+
+    /**
+     * Keeps the block from reporting ready until connections have been established to the consumers, resources
+     * and instance operators of the block. See {@link KapetaPrewarm} for details.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.prewarm", name = "enabled", havingValue = "true")
+    public KapetaPrewarm kapetaPrewarm(KapetaHealthStatus healthStatus,
+                                       KapetaConfigurationProvider configurationProvider,
+                                       Environment environment,
+                                       ObjectProvider<KapetaRestClients> restClients,
+                                       ObjectProvider<DataSource> dataSources,
+                                       @Value("${kapeta.prewarm.data-sources:true}") boolean initialiseDataSources,
+                                       @Value("${kapeta.prewarm.threads:8}") int threads,
+                                       @Value("${kapeta.prewarm.connections-per-client:4}") int connectionsPerClient,
+                                       @Value("${kapeta.prewarm.connect-timeout:2s}") Duration connectTimeout,
+                                       @Value("${kapeta.prewarm.max-duration:30s}") Duration maxDuration) {
+        var instanceOperators = Binder.get(environment)
+                .bind("kapeta.prewarm.instance-operators", Bindable.listOf(String.class))
+                .orElse(List.of());
+        return new KapetaPrewarm(
+                healthStatus,
+                KapetaDependencies.find(configurationProvider, KapetaConsumers.read(environment), instanceOperators),
+                restClients,
+                initialiseDataSources ? dataSources : null,
+                threads,
+                connectionsPerClient,
+                connectTimeout,
+                maxDuration
+        );
+    }
+
+    /**
+     * Keeps the block from reporting ready until the consumers, resources and instance operators it depends on
+     * are up. See {@link KapetaDependencyGate} for details.
+     * <p>
+     * Dependencies are required unless listed in kapeta.dependencies.optional - or optional unless listed in
+     * kapeta.dependencies.required if kapeta.dependencies.default-policy is "optional".
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.dependencies", name = "enabled", havingValue = "true")
+    public KapetaDependencyGate kapetaDependencyGate(KapetaHealthStatus healthStatus,
+                                                     KapetaConfigurationProvider configurationProvider,
+                                                     Environment environment,
+                                                     @Value("${kapeta.dependencies.default-policy:required}") String defaultPolicy,
+                                                     @Value("${kapeta.dependencies.threads:4}") int threads,
+                                                     @Value("${kapeta.dependencies.probe-timeout:2s}") Duration probeTimeout,
+                                                     @Value("${kapeta.dependencies.initial-backoff:250ms}") Duration initialBackoff,
+                                                     @Value("${kapeta.dependencies.max-backoff:10s}") Duration maxBackoff,
+                                                     @Value("${kapeta.dependencies.max-wait:}") Duration maxWait) {
+        var binder = Binder.get(environment);
+        var policies = new HashMap<String, KapetaDependencyGate.Policy>();
+        binder.bind("kapeta.dependencies.required", Bindable.listOf(String.class)).orElse(List.of())
+                .forEach(name -> policies.put(name, KapetaDependencyGate.Policy.REQUIRED));
+        binder.bind("kapeta.dependencies.optional", Bindable.listOf(String.class)).orElse(List.of())
+                .forEach(name -> policies.put(name, KapetaDependencyGate.Policy.OPTIONAL));
+        var instanceOperators = binder.bind("kapeta.dependencies.instance-operators", Bindable.listOf(String.class))
+                .orElse(List.of());
+
+        return new KapetaDependencyGate(
+                healthStatus,
+                KapetaDependencies.find(configurationProvider, KapetaConsumers.read(environment), instanceOperators),
+                policies,
+                KapetaDependencyGate.Policy.valueOf(defaultPolicy.toUpperCase()),
+                threads,
+                new KapetaDependencyGate.Settings(probeTimeout, initialBackoff, maxBackoff, maxWait)
+        );
+    }
+
+    /**
+     * Adaptive concurrency limit for incoming requests. Requests above the limit fail fast with 503
+     * and the block reports not ready while saturated. See {@link ConcurrencyLimitFilter} for details.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "kapeta.limiter", name = "enabled", havingValue = "true")
+    public FilterRegistrationBean<ConcurrencyLimitFilter> kapetaConcurrencyLimitFilter(KapetaHealthStatus healthStatus,
+                                                                                       ObjectProvider<MeterRegistry> meterRegistry,
+                                                                                       @Value("${kapeta.limiter.initial-limit:20}") int initialLimit,
+                                                                                       @Value("${kapeta.limiter.min-limit:4}") int minLimit,
+                                                                                       @Value("${kapeta.limiter.max-limit:500}") int maxLimit,
+                                                                                       @Value("${kapeta.limiter.tolerance:2.0}") double tolerance,
+                                                                                       @Value("${kapeta.limiter.retry-after:1s}") Duration retryAfter,
+                                                                                       @Value("${kapeta.limiter.recovery-period:5s}") Duration recoveryPeriod) {
+        var limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance);
+        var filter = new ConcurrencyLimitFilter(limiter, healthStatus, meterRegistry.getIfAvailable(), retryAfter, recoveryPeriod);
+        var registration = new FilterRegistrationBean<>(filter);
+        // Reject as early as possible before any other work is done
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
     }
 
     /**
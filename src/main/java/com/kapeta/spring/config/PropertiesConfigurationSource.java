@@ -6,9 +6,15 @@
 package com.kapeta.spring.config;
 
 import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import org.springframework.core.env.Environment;
 import org.springframework.core.env.PropertySource;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static com.kapeta.spring.config.ConfigUtils.applyFlattenedObjectToProperties;
 
@@ -25,14 +31,20 @@ public class PropertiesConfigurationSource extends PropertySource<Object> {
 
     private final Properties properties;
 
+    private final Environment environment;
+
+    private Set<String> instanceConfigKeys;
+
     public PropertiesConfigurationSource(KapetaConfigurationProvider configurationProvider) throws Exception {
         super(configurationProvider.getProviderId());
 
         properties = new Properties();
+        environment = configurationProvider.getEnvironment();
 
-        var instanceConfig = configurationProvider.getInstanceConfig();
-
-        applyFlattenedObjectToProperties(configurationProvider.getEnvironment(), instanceConfig, properties);
+        var instanceConfig = new Properties();
+        applyFlattenedObjectToProperties(environment, configurationProvider.getInstanceConfig(), instanceConfig);
+        properties.putAll(instanceConfig);
+        instanceConfigKeys = instanceConfig.stringPropertyNames();
 
         setProperty(SERVER_PORT, configurationProvider.getServerPort());
         setProperty(SERVER_HOST, configurationProvider.getServerHost());
@@ -47,4 +59,33 @@ public class PropertiesConfigurationSource extends PropertySource<Object> {
         properties.put(name, value);
     }
 
+    /**
+     * Replaces the properties of the instance configuration - leaving unchanged properties alone.
+     * <p>
+     * Returns the names of the properties that were added, changed or removed
+     */
+    synchronized Set<String> updateInstanceConfig(Map<String, Object> instanceConfig) {
+        var updated = new Properties();
+        applyFlattenedObjectToProperties(environment, instanceConfig, updated);
+        var updatedKeys = updated.stringPropertyNames();
+
+        var changedKeys = new TreeSet<String>();
+        for (String key : instanceConfigKeys) {
+            if (!updatedKeys.contains(key)) {
+                properties.remove(key);
+                changedKeys.add(key);
+            }
+        }
+        for (String key : updatedKeys) {
+            var value = updated.getProperty(key);
+            if (!Objects.equals(properties.get(key), value)) {
+                properties.put(key, value);
+                changedKeys.add(key);
+            }
+        }
+
+        instanceConfigKeys = new HashSet<>(updatedKeys);
+        return changedKeys;
+    }
+
 }
@@ -5,17 +5,40 @@
 
 package com.kapeta.spring.config;
 
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapeta.spring.deadline.Deadline;
+import com.kapeta.spring.resilience.CallNotPermittedException;
+import com.kapeta.spring.resilience.CircuitBreaker;
+import com.kapeta.spring.resilience.DownstreamGuard;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class SimpleHttpClient {
+    private static final Logger log = LoggerFactory.getLogger(SimpleHttpClient.class);
+
     public static final String KAPETA_ENVIRONMENT_TYPE = "KAPETA_ENVIRONMENT_TYPE";
 
     public static final String HEADER_KAPETA_ENVIRONMENT = "X-Kapeta-Environment";
@@ -26,12 +49,51 @@ public class SimpleHttpClient {
 
     public static final String HEADER_KAPETA_INSTANCE = "X-Kapeta-Instance";
 
+    /**
+     * Remaining time in milliseconds until the caller stops waiting for the response
+     */
+    public static final String HEADER_KAPETA_DEADLINE = "X-Kapeta-Deadline";
+
+    public static final String METRIC_NAME = "kapeta.config.http.requests";
+
+    /**
+     * Bytes of response bodies received from the cluster service - tagged with the content encoding and whether
+     * they were counted before (type=wire) or after (type=decoded) decompressing them
+     */
+    public static final String RESPONSE_BYTES_METRIC_NAME = "kapeta.config.http.response.bytes";
+
+    /**
+     * The uri tag used when no uri template is given - raw urls would create a meter per url
+     */
+    public static final String UNKNOWN_URI = "UNKNOWN";
+
+    /**
+     * The name of the cluster service in the resilience metrics
+     */
+    public static final String DOWNSTREAM_NAME = "kapeta-cluster-service";
+
+    /**
+     * Guards the calls to the cluster service once enabled. Most calls are made while starting - or by the
+     * background refreshes of the configuration - so they wait a while for a permit rather than failing right away.
+     */
+    public static final DownstreamGuard.Settings GUARD_SETTINGS = new DownstreamGuard.Settings(
+            100, Duration.ofSeconds(2), CircuitBreaker.Settings.DEFAULT);
+
     private final String blockRef;
 
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
     private String systemId;
 
     private String instanceId;
 
+    private volatile boolean guardEnabled;
+
+    // Created on first use - so it registers its metrics with the meter registry set by then
+    private volatile DownstreamGuard guard;
+
+    private UnixSocketHttpTransport unixSocket;
+
     public SimpleHttpClient(String blockRef, String systemId, String instanceId) {
         this.blockRef = blockRef;
         this.systemId = systemId;
@@ -58,68 +120,340 @@ public class SimpleHttpClient {
         this.instanceId = instanceId;
     }
 
+    /**
+     * Sets where the request metrics are recorded. The resilience metrics of the default guard use the registry
+     * set when the first request is sent.
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Guards the calls to the cluster service with a bulkhead and circuit breaker using {@link #GUARD_SETTINGS}.
+     * Calls are not guarded by default.
+     */
+    public void setGuardEnabled(boolean guardEnabled) {
+        this.guardEnabled = guardEnabled;
+    }
+
+    /**
+     * Replaces the bulkhead and circuit breaker guarding the calls to the cluster service - or stops guarding
+     * them if null
+     */
+    public void setGuard(DownstreamGuard guard) {
+        this.guard = guard;
+        this.guardEnabled = guard != null;
+    }
+
+    /**
+     * Sends requests over the given Unix domain socket instead of TCP - or over TCP again if null.
+     * <p>
+     * The host and port of request URLs are ignored while the socket is used. If nothing is listening on the
+     * socket - e.g. if the file doesn't exist - the request is sent over TCP.
+     */
+    public void setUnixSocket(Path socketPath) {
+        this.unixSocket = socketPath != null ? new UnixSocketHttpTransport(socketPath) : null;
+    }
+
     /**
      * Helper method for sending a GET request to a URL which will include the proper headers etc.
      * <p>
      * Returns the response body as a string
      */
     public String sendGET(final String url) throws IOException {
+        return sendGET(url, UNKNOWN_URI);
+    }
 
-        try (InputStream stream = sendRequestStream(url, "GET")) {
-            return IOUtils.toString(stream, StandardCharsets.UTF_8);
-        }
+    /**
+     * Same as {@link #sendGET(String)} - but records the request timing using the uri template
+     * (e.g. "/config/consumes/{service}/{portType}") as the uri tag
+     */
+    public String sendGET(final String url, final String uriTemplate) throws IOException {
+        return sendRequest(url, uriTemplate, "GET", null);
     }
 
     public String sendDELETE(final String url) throws IOException {
+        return sendDELETE(url, UNKNOWN_URI);
+    }
 
-        try (InputStream stream = sendRequestStream(url, "DELETE")) {
-            return IOUtils.toString(stream, StandardCharsets.UTF_8);
-        }
+    public String sendDELETE(final String url, final String uriTemplate) throws IOException {
+        return sendRequest(url, uriTemplate, "DELETE", null);
     }
 
     public String sendPUT(final String url, byte[] body) throws IOException {
+        return sendPUT(url, UNKNOWN_URI, body);
+    }
 
-        try (InputStream stream = sendRequestStream(url, "PUT", new ByteArrayInputStream(body))) {
-            return IOUtils.toString(stream, StandardCharsets.UTF_8);
-        }
+    public String sendPUT(final String url, final String uriTemplate, byte[] body) throws IOException {
+        return sendRequest(url, uriTemplate, "PUT", body);
+    }
+
+    /**
+     * Sends a GET request and reads the JSON response body straight from the - possibly compressed - stream.
+     * <p>
+     * Returns null if the response body is empty
+     */
+    public <T> T sendGET(final String url, final String uriTemplate, ObjectMapper objectMapper, JavaType type) throws IOException {
+        return sendRequest(url, uriTemplate, "GET", null, stream -> {
+            try (var parser = objectMapper.createParser(stream)) {
+                if (parser.nextToken() == null) {
+                    return null;
+                }
+                T value = objectMapper.readValue(parser, type);
+                // Read to the end so compressed bodies are verified and the connection can be reused
+                stream.transferTo(OutputStream.nullOutputStream());
+                return value;
+            }
+        });
     }
 
     public InputStream sendRequestStream(final String url, String method) throws IOException {
-        return sendRequestStream(url, method, null);
+        return sendRequestStream(url, method, null, ContentDecoding.ACCEPT_ENCODING, 0);
+    }
+
+    /**
+     * Opens a stream of server-sent events - which stays open until closed.
+     * <p>
+     * The stream is requested uncompressed: a compressing server may hold back events until it has enough data
+     * to compress, and the events are small anyway.
+     *
+     * @param readTimeout how long to wait for the next event or heartbeat before failing the read - so a
+     *                    connection that is no longer answered isn't waited on forever. Zero to wait indefinitely
+     */
+    public InputStream openEventStream(final String url, Duration readTimeout) throws IOException {
+        var timeout = (int) Math.min(Integer.MAX_VALUE, readTimeout.toMillis());
+        return sendRequestStream(url, "GET", null, ContentDecoding.IDENTITY, timeout);
+    }
+
+    private String sendRequest(final String url, final String uriTemplate, final String method, byte[] body) throws IOException {
+        return sendRequest(url, uriTemplate, method, body, stream -> IOUtils.toString(stream, StandardCharsets.UTF_8));
+    }
+
+    private <T> T sendRequest(final String url, final String uriTemplate, final String method, byte[] body, ResponseReader<T> reader) throws IOException {
+        var start = System.nanoTime();
+        var outcome = "error";
+        try (InputStream stream = sendRequestStream(url, method, body != null ? new ByteArrayInputStream(body) : null, ContentDecoding.ACCEPT_ENCODING, 0)) {
+            var response = reader.read(stream);
+            outcome = "success";
+            return response;
+        } finally {
+            Timer.builder(METRIC_NAME)
+                    .description("Requests sent to the kapeta cluster service")
+                    .tag("method", method)
+                    .tag("uri", uriTemplate)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     /**
      * Helper method for sending a GET request to a URL which will include the proper headers etc.
      * <p>
      * Returns the response body as a stream
+     *
+     * @param timeout the connect and read timeout in milliseconds if the request has no deadline - 0 for the defaults
      */
-    private InputStream sendRequestStream(final String urlString, String method, InputStream body) throws IOException {
+    private InputStream sendRequestStream(final String urlString, String method, InputStream body, String acceptEncoding,
+                                          int timeout) throws IOException {
         final URL url = new URL(urlString);
+
+        var environment = "process";
+        if (System.getenv().containsKey(KAPETA_ENVIRONMENT_TYPE)) {
+            environment = System.getenv(KAPETA_ENVIRONMENT_TYPE);
+        }
+        var headers = new LinkedHashMap<String, String>();
+        headers.put(HEADER_KAPETA_ENVIRONMENT, environment);
+        headers.put(HEADER_KAPETA_BLOCK, blockRef);
+        headers.put(HEADER_KAPETA_SYSTEM, systemId);
+        headers.put(HEADER_KAPETA_INSTANCE, instanceId);
+        headers.put("Accept-Encoding", acceptEncoding);
+
+        var deadline = Deadline.current();
+        if (deadline != null) {
+            deadline.check();
+            var remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline.remainingMillis()));
+            timeout = timeout > 0 ? Math.min(timeout, remaining) : remaining;
+            headers.put(HEADER_KAPETA_DEADLINE, deadline.toHeaderValue());
+        }
+
+        var transport = unixSocket;
+        if (transport != null) {
+            SocketChannel channel = null;
+            try {
+                channel = transport.connect(timeout);
+            } catch (IOException e) {
+                log.debug("Failed to connect to {} - using TCP", transport.getSocketPath(), e);
+            }
+            if (channel != null) {
+                return sendOverUnixSocket(transport, channel, url, method, headers, body, timeout);
+            }
+        }
+
         final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         if (body != null) {
             connection.setDoOutput(true);
         }
 
         connection.setRequestMethod(method);
+        headers.forEach(connection::addRequestProperty);
+        if (timeout > 0) {
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+        }
 
-        var environment = "process";
-        if (System.getenv().containsKey(KAPETA_ENVIRONMENT_TYPE)) {
-            environment = System.getenv(KAPETA_ENVIRONMENT_TYPE);
+        var guard = acquireGuard();
+
+        int responseCode;
+        var success = false;
+        try {
+            if (body != null) {
+                IOUtils.copy(body, connection.getOutputStream());
+            }
+            responseCode = connection.getResponseCode();
+            success = responseCode < 500;
+        } finally {
+            if (guard != null) {
+                guard.release(success);
+            }
         }
-        connection.addRequestProperty(HEADER_KAPETA_ENVIRONMENT, environment);
-        connection.addRequestProperty(HEADER_KAPETA_BLOCK, blockRef);
-        connection.addRequestProperty(HEADER_KAPETA_SYSTEM, systemId);
-        connection.addRequestProperty(HEADER_KAPETA_INSTANCE, instanceId);
 
-        if (body != null) {
-            IOUtils.copy(body, connection.getOutputStream());
+        if (responseCode > 399) {
+            var errorStream = connection.getErrorStream();
+            var response = errorStream != null ? readError(errorStream, connection.getContentEncoding()) : "";
+            throw new IOException("Failed to send request: " + responseCode + " " + response);
         }
 
-        if (connection.getResponseCode() > 399) {
-            var response = IOUtils.toString(connection.getErrorStream(), StandardCharsets.UTF_8);
-            throw new IOException("Failed to send request: " + connection.getResponseCode() + " " + response);
+        return decode(connection.getInputStream(), connection.getContentEncoding());
+    }
+
+    private InputStream sendOverUnixSocket(UnixSocketHttpTransport transport, SocketChannel channel, URL url, String method,
+                                           Map<String, String> headers, InputStream body, int timeout) throws IOException {
+        DownstreamGuard guard;
+        try {
+            guard = acquireGuard();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
         }
 
-        return connection.getInputStream();
+        UnixSocketHttpTransport.Response response;
+        var success = false;
+        try {
+            response = transport.send(channel, method, url, headers, body != null ? IOUtils.toByteArray(body) : null, timeout);
+            success = response.status() < 500;
+        } finally {
+            if (guard != null) {
+                guard.release(success);
+            }
+        }
+
+        if (response.status() > 399) {
+            throw new IOException("Failed to send request: " + response.status() + " " + readError(response.body(), response.contentEncoding()));
+        }
+
+        return decode(response.body(), response.contentEncoding());
+    }
+
+    private String readError(InputStream errorStream, String contentEncoding) throws IOException {
+        try (var stream = decode(errorStream, contentEncoding)) {
+            return IOUtils.toString(stream, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Decompresses the body while it's read - and counts the bytes read once it's closed
+     */
+    private InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        var encoding = ContentDecoding.normalise(contentEncoding);
+        var wire = new CountingInputStream(body);
+        InputStream decoded;
+        try {
+            decoded = ContentDecoding.decode(wire, encoding);
+        } catch (IOException e) {
+            wire.close();
+            throw e;
+        }
+        if (decoded == wire) {
+            return new MeteredInputStream(wire, encoding, null);
+        }
+        return new MeteredInputStream(new CountingInputStream(decoded), encoding, wire);
+    }
+
+    /**
+     * Acquires a permit from the guard - which must be released on the returned guard, even if it was replaced since.
+     * Returns null if the calls aren't guarded.
+     */
+    private DownstreamGuard acquireGuard() throws IOException {
+        var current = getGuard();
+        if (current == null) {
+            return null;
+        }
+        try {
+            current.acquire();
+        } catch (CallNotPermittedException e) {
+            throw new IOException(e.getReason(), e);
+        }
+        return current;
+    }
+
+    private DownstreamGuard getGuard() {
+        if (!guardEnabled) {
+            return null;
+        }
+        var current = guard;
+        if (current == null) {
+            synchronized (this) {
+                if (guard == null) {
+                    guard = new DownstreamGuard(DOWNSTREAM_NAME, GUARD_SETTINGS, meterRegistry);
+                }
+                current = guard;
+            }
+        }
+        return current;
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(InputStream stream) throws IOException;
+    }
+
+    /**
+     * Records the bytes received on the wire and after decoding them when closed
+     */
+    private class MeteredInputStream extends FilterInputStream {
+        private final String encoding;
+        private final CountingInputStream wire;
+        private boolean closed;
+
+        /**
+         * @param wire the stream counting the bytes received - or null if the body wasn't encoded
+         */
+        MeteredInputStream(CountingInputStream decoded, String encoding, CountingInputStream wire) {
+            super(decoded);
+            this.encoding = encoding;
+            this.wire = wire;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                var decodedBytes = ((CountingInputStream) in).getByteCount();
+                record("decoded", decodedBytes);
+                record("wire", wire != null ? wire.getByteCount() : decodedBytes);
+            }
+            super.close();
+        }
+
+        private void record(String type, long bytes) {
+            Counter.builder(RESPONSE_BYTES_METRIC_NAME)
+                    .description("Bytes of response bodies received from the kapeta cluster service")
+                    .baseUnit("bytes")
+                    .tag("encoding", encoding)
+                    .tag("type", type)
+                    .register(meterRegistry)
+                    .increment(bytes);
+        }
     }
 }
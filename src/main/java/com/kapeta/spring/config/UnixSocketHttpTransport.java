@@ -0,0 +1,365 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import com.kapeta.spring.util.KapetaThreads;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.URL;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends HTTP/1.1 requests over a Unix domain socket - used to talk to the local cluster service without TCP.
+ * <p>
+ * Every request uses its own connection which is closed once the response body has been read. Supports
+ * responses with a Content-Length, chunked responses and responses ending when the connection is closed.
+ * <p>
+ * Socket channels have no timeouts - so the connection is closed when connecting, or waiting for the response,
+ * takes longer than the timeout of the request. Without one this is 5s for connecting and 30s for the response
+ * head. Reading the body only times out with a timeout - so event streams stay open.
+ */
+class UnixSocketHttpTransport {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5_000;
+
+    static final int DEFAULT_RESPONSE_TIMEOUT_MILLIS = 30_000;
+
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = createTimeoutExecutor();
+
+    private final Path socketPath;
+
+    UnixSocketHttpTransport(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    Path getSocketPath() {
+        return socketPath;
+    }
+
+    private static ScheduledThreadPoolExecutor createTimeoutExecutor() {
+        var executor = new ScheduledThreadPoolExecutor(1, KapetaThreads.singleDaemonFactory("kapeta-uds-timeout"));
+        // Almost every timeout is cancelled
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Opens a connection to the socket. Fails if nothing is listening on it - e.g. if the file doesn't exist.
+     *
+     * @param timeoutMillis the connect timeout - or 0 to use the default
+     */
+    SocketChannel connect(int timeoutMillis) throws IOException {
+        var channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        var timeout = new ChannelTimeout(channel);
+        try {
+            timeout.start(timeoutMillis > 0 ? timeoutMillis : DEFAULT_CONNECT_TIMEOUT_MILLIS);
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            timeout.cancel();
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw timeout.translate(e, "Connect timed out");
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the request on a connection returned by {@link #connect(int)} and reads the response head. The body
+     * of the response is read from the returned response - closing it closes the connection.
+     *
+     * @param timeoutMillis the time to wait for the response head and for every read of the body - or 0 to use
+     *                      the default for the response head and wait for the body for as long as it takes
+     */
+    Response send(SocketChannel channel, String method, URL url, Map<String, String> headers, byte[] body,
+                  int timeoutMillis) throws IOException {
+        var timeout = new ChannelTimeout(channel);
+        try {
+            timeout.start(timeoutMillis > 0 ? timeoutMillis : DEFAULT_RESPONSE_TIMEOUT_MILLIS);
+            var request = new StringBuilder()
+                    .append(method).append(' ').append(url.getFile().isEmpty() ? "/" : url.getFile()).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(url.getAuthority()).append("\r\n")
+                    .append("Connection: close\r\n");
+            headers.forEach((name, value) -> {
+                if (value != null) {
+                    request.append(name).append(": ").append(value).append("\r\n");
+                }
+            });
+            if (body != null) {
+                request.append("Content-Length: ").append(body.length).append("\r\n");
+            }
+            request.append("\r\n");
+
+            writeFully(channel, ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.ISO_8859_1)));
+            if (body != null) {
+                writeFully(channel, ByteBuffer.wrap(body));
+            }
+
+            var timedIn = new TimeoutInputStream(Channels.newInputStream(channel), timeout);
+            var in = new BufferedInputStream(timedIn);
+            var statusLine = readLine(in);
+            var parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("Invalid response from " + socketPath + ": " + statusLine);
+            }
+            var status = Integer.parseInt(parts[1]);
+
+            long contentLength = -1;
+            var chunked = false;
+            String contentEncoding = null;
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                var colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                var name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                var value = line.substring(colon + 1).trim();
+                if (name.equals("content-length")) {
+                    contentLength = Long.parseLong(value);
+                } else if (name.equals("transfer-encoding") && value.toLowerCase(Locale.ROOT).contains("chunked")) {
+                    chunked = true;
+                } else if (name.equals("content-encoding")) {
+                    contentEncoding = value;
+                }
+            }
+            timeout.cancel();
+            timedIn.setReadTimeout(timeoutMillis);
+
+            InputStream responseBody;
+            if (method.equals("HEAD") || status == 204 || status == 304) {
+                responseBody = InputStream.nullInputStream();
+            } else if (chunked) {
+                responseBody = new ChunkedInputStream(in);
+            } else if (contentLength >= 0) {
+                var bounded = new BoundedInputStream(in, contentLength);
+                bounded.setPropagateClose(false);
+                responseBody = bounded;
+            } else {
+                responseBody = in;
+            }
+            return new Response(status, contentEncoding, new ClosingInputStream(responseBody, channel));
+        } catch (IOException e) {
+            channel.close();
+            throw timeout.translate(e, "Read timed out");
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Connection closed while reading the response");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    record Response(int status, String contentEncoding, InputStream body) {
+    }
+
+    /**
+     * Closes the connection when it expires - which makes blocked reads and writes fail
+     */
+    private static class ChannelTimeout implements Runnable {
+        private final SocketChannel channel;
+        private volatile boolean expired;
+        private ScheduledFuture<?> pending;
+
+        ChannelTimeout(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void start(long timeoutMillis) {
+            pending = timeoutMillis > 0 ? TIMEOUTS.schedule(this, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+        }
+
+        /**
+         * Stops the timeout - fails if it expired in the meantime, as the connection is closed then
+         */
+        void cancel() throws IOException {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+            if (expired) {
+                throw new SocketTimeoutException();
+            }
+        }
+
+        @Override
+        public void run() {
+            expired = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing is all we can do
+            }
+        }
+
+        /**
+         * Reports failures caused by the timeout closing the connection as timeouts
+         */
+        IOException translate(IOException e, String message) {
+            if (!expired) {
+                return e;
+            }
+            var timeoutException = new SocketTimeoutException(message);
+            timeoutException.initCause(e);
+            return timeoutException;
+        }
+    }
+
+    /**
+     * Times out every read after the read timeout - if set
+     */
+    private static class TimeoutInputStream extends FilterInputStream {
+        private final ChannelTimeout timeout;
+        private volatile int readTimeoutMillis;
+
+        TimeoutInputStream(InputStream in, ChannelTimeout timeout) {
+            super(in);
+            this.timeout = timeout;
+        }
+
+        void setReadTimeout(int readTimeoutMillis) {
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            var readTimeout = readTimeoutMillis;
+            try {
+                if (readTimeout <= 0) {
+                    return in.read(b, off, len);
+                }
+                timeout.start(readTimeout);
+                var read = in.read(b, off, len);
+                timeout.cancel();
+                return read;
+            } catch (IOException e) {
+                throw timeout.translate(e, "Read timed out");
+            }
+        }
+    }
+
+    /**
+     * Closes the connection when the body is closed
+     */
+    private static class ClosingInputStream extends FilterInputStream {
+        private final SocketChannel channel;
+
+        ClosingInputStream(InputStream in, SocketChannel channel) {
+            super(in);
+            this.channel = channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Decodes a body sent using the chunked transfer encoding
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+        private boolean done;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            var read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read < 0) {
+                throw new IOException("Connection closed in the middle of a chunk");
+            }
+            remaining -= read;
+            if (remaining == 0) {
+                // The CRLF after the chunk data
+                readLine(in);
+            }
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (done) {
+                return false;
+            }
+            if (remaining > 0) {
+                return true;
+            }
+            var sizeLine = readLine(in);
+            var extension = sizeLine.indexOf(';');
+            remaining = Long.parseLong((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+            if (remaining == 0) {
+                // Skip trailers
+                while (!readLine(in).isEmpty()) {
+                }
+                done = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return done ? 0 : (int) Math.min(remaining, in.available());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Opaque position in a keyset ordered result set.
+ * <p>
+ * Holds the sort key values of the last row on the previous page. Clients should treat the encoded
+ * form as an opaque token and simply pass it back to get the next page.
+ * <p>
+ * E.g.: Cursor.of(lastRow.getCreatedAt(), lastRow.getId()).encode();
+ */
+public final class Cursor {
+
+    private static final ObjectMapper CURSOR_MAPPER = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            // Keep decimal keys (e.g. timestamps with nanos) exact when a decoded cursor is encoded again
+            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+            .build();
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final List<Object> values;
+
+    private Cursor(List<Object> values) {
+        this.values = values;
+    }
+
+    public static Cursor of(Object... values) {
+        if (values == null || values.length == 0) {
+            throw new IllegalArgumentException("A cursor needs at least one key value");
+        }
+        return new Cursor(Collections.unmodifiableList(Arrays.asList(values)));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}
+     *
+     * @throws IllegalArgumentException if the value is not a valid cursor
+     */
+    public static Cursor decode(String encoded) {
+        if (encoded == null || encoded.isBlank()) {
+            throw new IllegalArgumentException("Cursor is empty");
+        }
+
+        try {
+            byte[] json = DECODER.decode(encoded.trim());
+            Object[] values = CURSOR_MAPPER.readValue(json, Object[].class);
+            return of(values);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded, e);
+        }
+    }
+
+    /**
+     * Encodes the cursor as a compact, url-safe string
+     */
+    public String encode() {
+        try {
+            return ENCODER.encodeToString(CURSOR_MAPPER.writeValueAsBytes(values));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode cursor values: " + values, e);
+        }
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public Object get(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Gets a key value converted to the given type - e.g. cursor.get(0, Instant.class)
+     */
+    public <T> T get(int index, Class<T> type) {
+        return CURSOR_MAPPER.convertValue(values.get(index), type);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Cursor other)) return false;
+        return values.equals(other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
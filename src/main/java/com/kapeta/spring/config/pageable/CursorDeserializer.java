@@ -0,0 +1,33 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+public class CursorDeserializer extends StdDeserializer<Cursor> {
+
+    public CursorDeserializer() {
+        super(Cursor.class);
+    }
+
+    @Override
+    public Cursor deserialize(JsonParser jp, DeserializationContext deserializationContext) throws IOException, JacksonException {
+        var value = jp.getValueAsString();
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        try {
+            return Cursor.decode(value);
+        } catch (IllegalArgumentException e) {
+            return (Cursor) deserializationContext.handleWeirdStringValue(Cursor.class, value, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Response envelope for cursor based pagination.
+ * <p>
+ * Serializes as {"content": [...], "size": 30, "nextCursor": "...", "hasNext": true}.
+ * nextCursor is omitted on the last page.
+ */
+public class CursorPage<T> {
+
+    private final List<T> content;
+
+    private final int size;
+
+    private final Cursor nextCursor;
+
+    @JsonCreator
+    public CursorPage(@JsonProperty("content") List<T> content,
+                      @JsonProperty("size") int size,
+                      @JsonProperty("nextCursor") Cursor nextCursor) {
+        this.content = content != null ? content : Collections.emptyList();
+        this.size = size;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Builds a page from rows fetched with {@link CursorPageable#getFetchSize()}.
+     * <p>
+     * If more rows than the page size were returned there is a next page, and its cursor is
+     * read from the last row included in this page.
+     */
+    public static <T> CursorPage<T> of(List<T> rows, CursorPageable pageable, Function<T, Cursor> cursorExtractor) {
+        var size = pageable.getSize();
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, size, null);
+        }
+
+        var content = new ArrayList<>(rows.subList(0, size));
+        return new CursorPage<>(content, size, cursorExtractor.apply(content.get(content.size() - 1)));
+    }
+
+    public static <T> CursorPage<T> empty(int size) {
+        return new CursorPage<>(Collections.emptyList(), size, null);
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Cursor getNextCursor() {
+        return nextCursor;
+    }
+
+    @JsonProperty("hasNext")
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * The pageable to use for requesting the next page - or null if this is the last page
+     */
+    public CursorPageable nextPageable(CursorPageable current) {
+        return hasNext() ? current.next(nextCursor) : null;
+    }
+
+    public <U> CursorPage<U> map(Function<? super T, ? extends U> converter) {
+        List<U> mapped = new ArrayList<>(content.size());
+        for (T item : content) {
+            mapped.add(converter.apply(item));
+        }
+        return new CursorPage<>(mapped, size, nextCursor);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.Objects;
+
+/**
+ * Keyset (cursor) based alternative to {@link org.springframework.data.domain.Pageable}.
+ * <p>
+ * Instead of an offset it carries the sort key values of the last row seen, which lets
+ * queries use "WHERE (key) > (:cursor) ORDER BY key LIMIT :size" and stay constant time per page
+ * regardless of how deep the client has paged.
+ */
+public final class CursorPageable {
+
+    public static final int DEFAULT_SIZE = 30;
+
+    private final Cursor cursor;
+
+    private final int size;
+
+    private final Sort sort;
+
+    private CursorPageable(Cursor cursor, int size, Sort sort) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.cursor = cursor;
+        this.size = size;
+        this.sort = sort != null ? sort : Sort.unsorted();
+    }
+
+    public static CursorPageable first(int size) {
+        return new CursorPageable(null, size, Sort.unsorted());
+    }
+
+    public static CursorPageable first(int size, Sort sort) {
+        return new CursorPageable(null, size, sort);
+    }
+
+    public static CursorPageable of(Cursor cursor, int size, Sort sort) {
+        return new CursorPageable(cursor, size, sort);
+    }
+
+    /**
+     * Creates a pageable from an encoded cursor. A null or blank cursor means the first page.
+     */
+    public static CursorPageable of(String encodedCursor, int size, Sort sort) {
+        if (encodedCursor == null || encodedCursor.isBlank()) {
+            return first(size, sort);
+        }
+        return new CursorPageable(Cursor.decode(encodedCursor), size, sort);
+    }
+
+    /**
+     * Null if this is the first page
+     */
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    public boolean isFirst() {
+        return cursor == null;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * The number of rows to fetch from the underlying store - one more than the page size
+     * so {@link CursorPage#of} can tell if there is a next page without a count query.
+     */
+    public int getFetchSize() {
+        return size + 1;
+    }
+
+    public CursorPageable next(Cursor cursor) {
+        return new CursorPageable(cursor, size, sort);
+    }
+
+    public CursorPageable withSort(Sort sort) {
+        return new CursorPageable(cursor, size, sort);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CursorPageable other)) return false;
+        return size == other.size && Objects.equals(cursor, other.cursor) && sort.equals(other.sort);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cursor, size, sort);
+    }
+
+    @Override
+    public String toString() {
+        return "CursorPageable{cursor=" + cursor + ", size=" + size + ", sort=" + sort + '}';
+    }
+}
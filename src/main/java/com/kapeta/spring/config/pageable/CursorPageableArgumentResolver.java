@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves {@link CursorPageable} controller arguments from the query string.
+ * <p>
+ * E.g.: GET /users?cursor=WzEyM10&size=50&sort=createdAt,desc&sort=id,desc
+ */
+public class CursorPageableArgumentResolver implements HandlerMethodArgumentResolver {
+
+    public static final String PARAM_CURSOR = "cursor";
+    public static final String PARAM_SIZE = "size";
+    public static final String PARAM_SORT = "sort";
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final int maxSize;
+
+    public CursorPageableArgumentResolver() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public CursorPageableArgumentResolver(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return CursorPageable.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public CursorPageable resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer, NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        var size = parseSize(webRequest.getParameter(PARAM_SIZE));
+        var sort = parseSort(webRequest.getParameterValues(PARAM_SORT));
+
+        try {
+            return CursorPageable.of(webRequest.getParameter(PARAM_CURSOR), size, sort);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+    }
+
+    private int parseSize(String value) {
+        if (!StringUtils.hasText(value)) {
+            return CursorPageable.DEFAULT_SIZE;
+        }
+
+        int size;
+        try {
+            size = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page size: " + value, e);
+        }
+        if (size < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page size: " + value + " - must be at least 1");
+        }
+        return Math.min(size, maxSize);
+    }
+
+    /**
+     * Uses the same format as spring data: sort=property[,direction]
+     */
+    private Sort parseSort(String[] values) {
+        if (values == null || values.length == 0) {
+            return Sort.unsorted();
+        }
+
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String value : values) {
+            if (!StringUtils.hasText(value)) {
+                continue;
+            }
+            var parts = value.split(",");
+            var property = parts[0].trim();
+            if (property.isEmpty()) {
+                continue;
+            }
+            var direction = Sort.Direction.ASC;
+            if (parts.length > 1) {
+                var directionValue = parts[1].trim();
+                direction = Sort.Direction.fromOptionalString(directionValue)
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                "Invalid sort direction for property '%s': %s - expected ASC or DESC".formatted(property, directionValue)));
+            }
+            orders.add(new Sort.Order(direction, property));
+        }
+        return Sort.by(orders);
+    }
+}
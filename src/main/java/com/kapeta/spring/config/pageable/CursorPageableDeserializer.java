@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CursorPageableDeserializer extends StdDeserializer<CursorPageable> {
+
+    public CursorPageableDeserializer() {
+        super(CursorPageable.class);
+    }
+
+    @Override
+    public CursorPageable deserialize(JsonParser jp, DeserializationContext deserializationContext) throws IOException, JacksonException {
+        ObjectNode source = jp.readValueAs(ObjectNode.class);
+
+        var size = source.has("size") ? source.get("size").asInt(CursorPageable.DEFAULT_SIZE) : CursorPageable.DEFAULT_SIZE;
+        var cursor = source.has("cursor") ? source.get("cursor").asText(null) : null;
+
+        List<Sort.Order> orders = new ArrayList<>();
+        var sort = source.get("sort");
+        if (sort != null) {
+            var sortList = sort.elements();
+            while (sortList.hasNext()) {
+                var sortObject = sortList.next();
+                if (!sortObject.has("property")) {
+                    continue;
+                }
+                var property = sortObject.get("property").asText();
+                var direction = sortObject.has("direction") ? sortObject.get("direction").asText("ASC") : "ASC";
+                var sortDirection = Sort.Direction.fromOptionalString(direction).orElse(null);
+                if (sortDirection == null) {
+                    // Report it as an invalid sort - not as an invalid cursor
+                    sortDirection = (Sort.Direction) deserializationContext.handleWeirdStringValue(Sort.Direction.class, direction,
+                            "Invalid sort direction for property '%s' - expected ASC or DESC", property);
+                }
+                orders.add(new Sort.Order(sortDirection, property));
+            }
+        }
+
+        try {
+            return CursorPageable.of(cursor, size, Sort.by(orders));
+        } catch (IllegalArgumentException e) {
+            return (CursorPageable) deserializationContext.handleWeirdStringValue(CursorPageable.class, cursor, e.getMessage());
+        }
+    }
+}
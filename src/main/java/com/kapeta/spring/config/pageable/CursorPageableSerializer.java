@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+public class CursorPageableSerializer extends StdSerializer<CursorPageable> {
+
+    public CursorPageableSerializer() {
+        super(CursorPageable.class);
+    }
+
+    @Override
+    public void serialize(CursorPageable pageable, JsonGenerator jg, SerializerProvider serializerProvider) throws IOException {
+        jg.writeStartObject();
+        if (pageable.getCursor() != null) {
+            jg.writeStringField("cursor", pageable.getCursor().encode());
+        }
+        jg.writeNumberField("size", pageable.getSize());
+
+        if (!pageable.getSort().isEmpty()) {
+            jg.writeArrayFieldStart("sort");
+            for (var order : pageable.getSort()) {
+                jg.writeStartObject();
+                jg.writeStringField("direction", order.getDirection().toString());
+                jg.writeStringField("property", order.getProperty());
+                jg.writeEndObject();
+            }
+            jg.writeEndArray();
+        }
+        jg.writeEndObject();
+    }
+}
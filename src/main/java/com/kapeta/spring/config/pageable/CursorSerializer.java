@@ -0,0 +1,23 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+public class CursorSerializer extends StdSerializer<Cursor> {
+
+    public CursorSerializer() {
+        super(Cursor.class);
+    }
+
+    @Override
+    public void serialize(Cursor cursor, JsonGenerator jg, SerializerProvider serializerProvider) throws IOException {
+        jg.writeString(cursor.encode());
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+
+package com.kapeta.spring.config.providers;
+
+import com.kapeta.spring.config.providers.types.InstanceOperator;
+import com.kapeta.spring.config.providers.types.ResourceInfo;
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caches the lookups that are typically done while handling requests.
+ * <p>
+ * Each cached method has its own TTL - see the METHOD_ constants. Once a value is older than its TTL the stale value
+ * is still returned while it is refreshed in the background - for up to maxStale after the TTL expired. After that
+ * - or if the value was never loaded - the call blocks until the delegate has returned a value. If a background
+ * refresh fails the stale value is kept and the refresh is retried on the next call.
+ * <p>
+ * The cache holds at most maxSize values - the least recently used values are evicted first.
+ * <p>
+ * Only depends on the {@link KapetaConfigurationProvider} interface so it works the same for all providers.
+ */
+public class CachingConfigurationProvider extends DelegatingConfigurationProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingConfigurationProvider.class);
+
+    public static final String METHOD_SERVICE_ADDRESS = "service-address";
+
+    public static final String METHOD_INSTANCE_HOST = "instance-host";
+
+    public static final String METHOD_RESOURCE_INFO = "resource-info";
+
+    public static final String METHOD_INSTANCE_OPERATOR = "instance-operator";
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final int REFRESH_THREADS = 2;
+
+    private final Map<String, Duration> ttls;
+
+    private final long maxStaleNanos;
+
+    private final Map<CacheKey, CachedValue> entries;
+
+    private final ExecutorService refreshExecutor;
+
+    /**
+     * @param ttls     TTL per METHOD_ constant - methods without a TTL are not cached
+     * @param maxStale how long after the TTL expired a stale value may be returned while refreshing
+     * @param maxSize  max number of cached values
+     */
+    public CachingConfigurationProvider(KapetaConfigurationProvider delegate, Map<String, Duration> ttls, Duration maxStale, int maxSize) {
+        super(delegate);
+        this.ttls = Map.copyOf(ttls);
+        this.maxStaleNanos = maxStale.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedValue> eldest) {
+                return size() > maxSize;
+            }
+        };
+
+        this.refreshExecutor = Executors.newFixedThreadPool(REFRESH_THREADS, KapetaThreads.daemonFactory("kapeta-config-cache"));
+    }
+
+    @Override
+    public String getServiceAddress(String serviceName, String portType) {
+        return getUnchecked(METHOD_SERVICE_ADDRESS, () -> super.getServiceAddress(serviceName, portType), serviceName, portType);
+    }
+
+    @Override
+    public String getInstanceHost(String instanceId) {
+        return getUnchecked(METHOD_INSTANCE_HOST, () -> super.getInstanceHost(instanceId), instanceId);
+    }
+
+    @Override
+    public ResourceInfo getResourceInfo(String resourceType, String portType, String name) {
+        return getUnchecked(METHOD_RESOURCE_INFO, () -> super.getResourceInfo(resourceType, portType, name), resourceType, portType, name);
+    }
+
+    @Override
+    public <Options, Credentials> InstanceOperator<Options, Credentials> getInstanceOperator(String instanceId, Class<Options> optionsClass, Class<Credentials> credentialsClass) throws IOException {
+        try {
+            return get(METHOD_INSTANCE_OPERATOR, () -> super.getInstanceOperator(instanceId, optionsClass, credentialsClass), instanceId, optionsClass, credentialsClass);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Removes all cached values
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private <T> T getUnchecked(String method, Callable<T> loader, Object... args) {
+        try {
+            return get(method, loader, args);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // The loaders used here can't throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(String method, Callable<T> loader, Object... args) throws Exception {
+        var ttl = ttls.get(method);
+        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return loader.call();
+        }
+
+        var key = new CacheKey(method, Arrays.asList(args));
+        CachedValue entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+
+        if (entry != null) {
+            var age = System.nanoTime() - entry.loadedAt;
+            if (age < ttl.toNanos()) {
+                return (T) entry.value;
+            }
+
+            if (age < ttl.toNanos() + maxStaleNanos) {
+                refreshInBackground(key, entry, loader);
+                return (T) entry.value;
+            }
+        }
+
+        return (T) load(key, loader).value;
+    }
+
+    private void refreshInBackground(CacheKey key, CachedValue entry, Callable<?> loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(key, loader);
+                } catch (Exception e) {
+                    log.warn("Failed to refresh {} {} - keeping stale value", key.method(), key.args(), e);
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private CachedValue load(CacheKey key, Callable<?> loader) throws Exception {
+        var entry = new CachedValue(loader.call(), System.nanoTime());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private record CacheKey(String method, List<Object> args) {
+    }
+
+    private static final class CachedValue {
+        private final Object value;
+
+        private final long loadedAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CachedValue(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
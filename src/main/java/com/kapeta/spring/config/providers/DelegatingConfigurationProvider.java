@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+
+package com.kapeta.spring.config.providers;
+
+import com.kapeta.spring.config.providers.types.BlockInstanceDetails;
+import com.kapeta.spring.config.providers.types.InstanceOperator;
+import com.kapeta.spring.config.providers.types.ResourceInfo;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for configuration providers that decorate another provider.
+ * <p>
+ * Forwards every call to the delegate - subclasses override the methods they want to decorate.
+ * The default methods of {@link KapetaConfigurationProvider} end up calling the overridable methods
+ * so they are decorated as well.
+ */
+public abstract class DelegatingConfigurationProvider implements KapetaConfigurationProvider {
+
+    protected final KapetaConfigurationProvider delegate;
+
+    protected DelegatingConfigurationProvider(KapetaConfigurationProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    public KapetaConfigurationProvider getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public int getServerPort(String portType) {
+        return delegate.getServerPort(portType);
+    }
+
+    @Override
+    public String getServerHost() {
+        return delegate.getServerHost();
+    }
+
+    @Override
+    public String getSystemId() {
+        return delegate.getSystemId();
+    }
+
+    @Override
+    public Environment getEnvironment() {
+        return delegate.getEnvironment();
+    }
+
+    @Override
+    public String getServiceAddress(String serviceName, String portType) {
+        return delegate.getServiceAddress(serviceName, portType);
+    }
+
+    @Override
+    public ResourceInfo getResourceInfo(String resourceType, String portType, String name) {
+        return delegate.getResourceInfo(resourceType, portType, name);
+    }
+
+    @Override
+    public String getInstanceHost(String instanceId) {
+        return delegate.getInstanceHost(instanceId);
+    }
+
+    @Override
+    public Map<String, Object> getInstanceConfig() throws Exception {
+        return delegate.getInstanceConfig();
+    }
+
+    @Override
+    public String getProviderId() {
+        return delegate.getProviderId();
+    }
+
+    @Override
+    public <BlockType> BlockInstanceDetails<BlockType> getInstanceForConsumer(String resourceName, Class<BlockType> clz) throws IOException {
+        return delegate.getInstanceForConsumer(resourceName, clz);
+    }
+
+    @Override
+    public <Options, Credentials> InstanceOperator<Options, Credentials> getInstanceOperator(String instanceId, Class<Options> optionsClass, Class<Credentials> credentialsClass) throws IOException {
+        return delegate.getInstanceOperator(instanceId, optionsClass, credentialsClass);
+    }
+
+    @Override
+    public <BlockType> List<BlockInstanceDetails<BlockType>> getInstancesForProvider(String resourceName, Class<BlockType> clz) throws IOException {
+        return delegate.getInstancesForProvider(resourceName, clz);
+    }
+}
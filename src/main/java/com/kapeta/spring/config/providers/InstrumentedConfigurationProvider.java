@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+
+package com.kapeta.spring.config.providers;
+
+import com.kapeta.spring.config.providers.types.BlockInstanceDetails;
+import com.kapeta.spring.config.providers.types.InstanceOperator;
+import com.kapeta.spring.config.providers.types.ResourceInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the duration and outcome of configuration provider calls.
+ * <p>
+ * Each call is recorded by the {@value #METRIC_NAME} timer tagged with the method, provider id and outcome
+ * ("success" or "error") - the timer count doubles as the call counter.
+ * <p>
+ * Installed by the KapetaApplicationInitializer using the global registry - which spring boot adds its
+ * registries (e.g. prometheus) to - since the provider is created before the application context.
+ */
+public class InstrumentedConfigurationProvider extends DelegatingConfigurationProvider {
+
+    public static final String METRIC_NAME = "kapeta.config.provider.calls";
+
+    private final MeterRegistry registry;
+
+    private final String providerId;
+
+    public InstrumentedConfigurationProvider(KapetaConfigurationProvider delegate, MeterRegistry registry) {
+        super(delegate);
+        this.registry = registry;
+        this.providerId = delegate.getProviderId();
+    }
+
+    @Override
+    public String getServiceAddress(String serviceName, String portType) {
+        return record("getServiceAddress", () -> super.getServiceAddress(serviceName, portType));
+    }
+
+    @Override
+    public ResourceInfo getResourceInfo(String resourceType, String portType, String name) {
+        return record("getResourceInfo", () -> super.getResourceInfo(resourceType, portType, name));
+    }
+
+    @Override
+    public String getInstanceHost(String instanceId) {
+        return record("getInstanceHost", () -> super.getInstanceHost(instanceId));
+    }
+
+    @Override
+    public Map<String, Object> getInstanceConfig() throws Exception {
+        return recordChecked("getInstanceConfig", super::getInstanceConfig);
+    }
+
+    @Override
+    public <BlockType> BlockInstanceDetails<BlockType> getInstanceForConsumer(String resourceName, Class<BlockType> clz) throws IOException {
+        return recordIO("getInstanceForConsumer", () -> super.getInstanceForConsumer(resourceName, clz));
+    }
+
+    @Override
+    public <Options, Credentials> InstanceOperator<Options, Credentials> getInstanceOperator(String instanceId, Class<Options> optionsClass, Class<Credentials> credentialsClass) throws IOException {
+        return recordIO("getInstanceOperator", () -> super.getInstanceOperator(instanceId, optionsClass, credentialsClass));
+    }
+
+    @Override
+    public <BlockType> List<BlockInstanceDetails<BlockType>> getInstancesForProvider(String resourceName, Class<BlockType> clz) throws IOException {
+        return recordIO("getInstancesForProvider", () -> super.getInstancesForProvider(resourceName, clz));
+    }
+
+    private <T> T record(String method, Callable<T> call) {
+        try {
+            return recordChecked(method, call);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // The call itself can't throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> T recordIO(String method, Callable<T> call) throws IOException {
+        try {
+            return recordChecked(method, call);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> T recordChecked(String method, Callable<T> call) throws Exception {
+        var start = System.nanoTime();
+        var outcome = "error";
+        try {
+            var result = call.call();
+            outcome = "success";
+            return result;
+        } finally {
+            Timer.builder(METRIC_NAME)
+                    .description("Calls to the kapeta configuration provider")
+                    .tag("method", method)
+                    .tag("provider", providerId)
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
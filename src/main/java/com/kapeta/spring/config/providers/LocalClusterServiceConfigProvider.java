@@ -23,6 +23,8 @@ import org.springframework.util.StringUtils;
 import java.io.*;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -61,6 +63,8 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
 
     private static final String CONFIG_CLUSTER_HOST = "cluster.host";
 
+    private static final String CONFIG_CLUSTER_SOCKET = "cluster.socket";
+
     private final Environment environment;
 
     private final ObjectMapper objectMapper = createDefaultObjectMapper();
@@ -73,6 +77,13 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
         this.httpClient = new SimpleHttpClient(blockRef, systemId, instanceId);
         this.environment = environment;
 
+        var socketPath = getClusterServiceSocketPath();
+        if (socketPath != null) {
+            log.info("Using cluster service socket: {}", socketPath);
+            httpClient.setUnixSocket(socketPath);
+        }
+        httpClient.setGuardEnabled(environment.getProperty("kapeta.client.resilience.enabled", Boolean.class, false));
+
         //Locally we need to ask the local cluster service about our identity
         this.resolveIdentity();
     }
@@ -94,7 +105,7 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
         final String serverPortUrl = getProviderPortUrl(portType);
 
         try {
-            var serverPort = Integer.parseInt(httpClient.sendGET(serverPortUrl));
+            var serverPort = Integer.parseInt(httpClient.sendGET(serverPortUrl, "/config/provides/{portType}"));
             log.info("Got server port {} from config service: {}", serverPort, serverPortUrl);
             return serverPort;
         } catch (IOException e) {
@@ -127,7 +138,7 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
         final String serviceClientUrl = getServiceClientUrl(serviceName, portType);
 
         try {
-            return httpClient.sendGET(serviceClientUrl);
+            return httpClient.sendGET(serviceClientUrl, "/config/consumes/{service}/{portType}");
         } catch (IOException e) {
             throw new RuntimeException("Failed to request client address port for service: " + serviceName, e);
         }
@@ -139,9 +150,8 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
         final String resourceInfoUrl = getResourceInfoUrl(resourceType, portType, resourceName);
 
         try {
-            final String json = httpClient.sendGET(resourceInfoUrl);
-
-            return objectMapper.readValue(json, ResourceInfo.class);
+            return httpClient.sendGET(resourceInfoUrl, "/config/consumes/resource/{resourceType}/{portType}/{name}",
+                    objectMapper, objectMapper.constructType(ResourceInfo.class));
         } catch (IOException e) {
             throw new RuntimeException("Failed to request client address port for service: " + httpClient.getBlockRef(), e);
         }
@@ -151,7 +161,7 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
     public String getInstanceHost(String instanceId) {
         var url = this.getInstanceHostUrl(instanceId);
         try {
-            return httpClient.sendGET(url);
+            return httpClient.sendGET(url, "/instances/{systemId}/{instanceId}/address/public");
         } catch (IOException e) {
             throw new RuntimeException("Failed to get instance provider url", e);
         }
@@ -164,7 +174,7 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
         final InstanceInfo instanceInfo = new InstanceInfo(pid.toString(), instanceHealthPath);
 
         try {
-            httpClient.sendPUT(instancesUrl, objectMapper.writeValueAsBytes(instanceInfo));
+            httpClient.sendPUT(instancesUrl, "/instances", objectMapper.writeValueAsBytes(instanceInfo));
         } catch (IOException e) {
             throw new RuntimeException("Failed to register instance with cluster service", e);
         }
@@ -173,23 +183,37 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
     public void onInstanceStopped() {
         final String instancesUrl = getInstanceUrl();
         try {
-            httpClient.sendDELETE(instancesUrl);
+            httpClient.sendDELETE(instancesUrl, "/instances");
         } catch (IOException e) {
             log.warn("Failed to unregister instance", e);
         }
     }
 
+    /**
+     * Subscribes to the configuration changes of this instance.
+     * <p>
+     * Returns a stream of server-sent events - one per change of the instance configuration ("config") or of
+     * the connections of the instance in the plan ("connections"). The stream stays open until closed.
+     * <p>
+     * The cluster service sends heartbeats while there are no events - reading fails if neither arrives within
+     * the read timeout, so a connection that went away without being closed is noticed.
+     */
+    public InputStream openEventStream(Duration readTimeout) throws IOException {
+        return httpClient.openEventStream(getConfigBaseUrl() + "/events", readTimeout);
+    }
+
     @Override
     public Map<String,Object> getInstanceConfig() throws IOException {
         var url = this.getInstanceConfigUrl();
 
-        String response = httpClient.sendGET(url);
+        var mapType = objectMapper.getTypeFactory().constructMapType(Map.class, String.class, Object.class);
+        Map<String, Object> response = httpClient.sendGET(url, "/config/instance", objectMapper, mapType);
 
-        if (!StringUtils.hasText(response)) {
+        if (response == null) {
             return new HashMap<>();
         }
 
-        return objectMapper.readValue(response, Map.class);
+        return response;
     }
 
 
@@ -287,15 +311,14 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
 
     public <AssetType> AssetType getAsset(String ref, Class<AssetType> clz) throws IOException {
         String url = getAssetReadUrl(ref);
-        var response = httpClient.sendGET(url);
-        if (!StringUtils.hasText(response)) {
-            return null;
-        }
-
         var javaType = objectMapper.getTypeFactory()
                 .constructParametricType(AssetWrapper.class, clz);
 
-        var wrapper = objectMapper.<AssetWrapper<AssetType>>readValue(response, javaType);
+        // Plans and blocks can be large - so read them straight from the response stream
+        AssetWrapper<AssetType> wrapper = httpClient.sendGET(url, "/assets/read", objectMapper, javaType);
+        if (wrapper == null) {
+            return null;
+        }
         return wrapper.getData();
     }
 
@@ -303,16 +326,10 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
     @Override
     public <Options, Credentials> InstanceOperator<Options, Credentials> getInstanceOperator(String instanceId, Class<Options> optionsClass, Class<Credentials> credentialsClass) throws IOException {
         var url = getInstanceOperatorUrl(instanceId);
-        String response = httpClient.sendGET(url);
-
-        if (!StringUtils.hasText(response)) {
-            return null;
-        }
-
         var typeRef = objectMapper.getTypeFactory()
                 .constructParametricType(InstanceOperator.class, optionsClass, credentialsClass);
 
-        return objectMapper.<InstanceOperator<Options, Credentials>>readValue(response, typeRef);
+        return httpClient.sendGET(url, "/config/operator/{instanceId}", objectMapper, typeRef);
     }
 
     private String getInstanceOperatorUrl(String instanceId) {
@@ -361,7 +378,7 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
     private void resolveIdentity() throws IOException {
 
         String url = getIdentityUrl();
-        String identityJson = httpClient.sendGET(url);
+        String identityJson = httpClient.sendGET(url, "/config/identity");
 
         final Identity identity = objectMapper.readValue(identityJson, Identity.class);
 
@@ -390,6 +407,27 @@ public class LocalClusterServiceConfigProvider implements KapetaConfigurationPro
         return String.format("http://%s:%s", clusterHost, clusterPort);
     }
 
+    /**
+     * The Unix domain socket of the cluster service - if configured. Requests are sent over TCP if nothing is
+     * listening on it.
+     */
+    private Path getClusterServiceSocketPath() {
+        String clusterSocket = getLocalClusterConfig().getProperty(CONFIG_CLUSTER_SOCKET);
+
+        if (environment.containsProperty("KAPETA_LOCAL_CLUSTER_SOCKET")) {
+            clusterSocket = environment.getProperty("KAPETA_LOCAL_CLUSTER_SOCKET");
+        }
+
+        if (!StringUtils.hasText(clusterSocket)) {
+            return null;
+        }
+
+        if (clusterSocket.startsWith("~/")) {
+            clusterSocket = System.getProperty(PROPERTY_USER_HOME) + clusterSocket.substring(1);
+        }
+        return Path.of(clusterSocket);
+    }
+
     private String getInstanceUrl() {
         return getClusterServiceBaseUrl() + "/instances";
     }
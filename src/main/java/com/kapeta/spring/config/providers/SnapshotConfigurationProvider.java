@@ -0,0 +1,418 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.providers;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.kapeta.spring.config.providers.types.BlockInstanceDetails;
+import com.kapeta.spring.config.providers.types.InstanceOperator;
+import com.kapeta.spring.config.providers.types.ResourceInfo;
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.kapeta.spring.config.KapetaDefaultConfig.createDefaultSmileMapper;
+
+/**
+ * Records the results of a configuration provider in a snapshot file - and starts from that file on the next boot.
+ * <p>
+ * When wrapping a provider every result is recorded and {@link #writeSnapshot()} writes them to the file - e.g.
+ * once the application has started. On the next boot the wrapped provider is still asked first, and the recorded
+ * result is only used if it fails. Most results - e.g. service addresses, resource credentials and instance
+ * operators - are read once while starting, so serving a stale one would never be corrected.
+ * <p>
+ * The instance configuration is the exception: if the file has it, it's returned right away while the wrapped
+ * provider is asked again in the background. A changed instance configuration is passed to the listener set
+ * using {@link #setInstanceConfigListener} - which updates the changed properties.
+ * <p>
+ * Without a wrapped provider - see {@link #fromSnapshot} - only the recorded results are used. That's the
+ * "snapshot" system type and also used to boot without the cluster service.
+ * <p>
+ * The file is a Smile encoded map of results which is memory mapped when read. Snapshots recorded for another
+ * block are ignored. It holds the instance configuration and resource credentials - so on POSIX file systems it's
+ * only readable by its owner, and it must never be committed.
+ */
+public class SnapshotConfigurationProvider extends DelegatingConfigurationProvider implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotConfigurationProvider.class);
+
+    private static final int VERSION = 1;
+
+    private static final String KEY_INSTANCE_CONFIG = "instance-config";
+
+    private static final FileAttribute<Set<PosixFilePermission>> OWNER_ONLY_DIRECTORY =
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"));
+
+    private static final FileAttribute<Set<PosixFilePermission>> OWNER_ONLY_FILE =
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"));
+
+    private final ObjectMapper objectMapper = createDefaultSmileMapper();
+
+    private final Path file;
+
+    private final String blockRef;
+
+    private final Environment environment;
+
+    private final Map<String, JsonNode> snapshot;
+
+    private final Map<String, JsonNode> recorded = new ConcurrentHashMap<>();
+
+    private final Set<String> revalidated = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor;
+
+    private volatile boolean writeOnChange;
+
+    private volatile Consumer<Map<String, Object>> instanceConfigListener;
+
+    /**
+     * Records the results of the given provider - starting from the snapshot file if it exists
+     */
+    public SnapshotConfigurationProvider(KapetaConfigurationProvider delegate, Path file, String blockRef) {
+        this(delegate, file, blockRef, delegate.getEnvironment(), readIfExists(file, blockRef));
+    }
+
+    private SnapshotConfigurationProvider(KapetaConfigurationProvider delegate, Path file, String blockRef,
+                                          Environment environment, Map<String, JsonNode> snapshot) {
+        super(delegate);
+        this.file = file;
+        this.blockRef = blockRef;
+        this.environment = environment;
+        this.snapshot = snapshot;
+        // Keep results not asked for during this boot - so an offline boot has all of them
+        this.recorded.putAll(snapshot);
+        this.executor = delegate != null
+                ? Executors.newSingleThreadExecutor(KapetaThreads.singleDaemonFactory("kapeta-config-snapshot"))
+                : null;
+    }
+
+    /**
+     * Uses only the results recorded in the snapshot file
+     */
+    public static SnapshotConfigurationProvider fromSnapshot(Path file, String blockRef, Environment environment) throws IOException {
+        var snapshot = read(file, blockRef);
+        if (snapshot == null) {
+            throw new IOException("Configuration snapshot %s was recorded for another block than %s".formatted(file, blockRef));
+        }
+        log.info("Using {} configuration results from snapshot {}", snapshot.size(), file);
+        return new SnapshotConfigurationProvider(null, file, blockRef, environment, snapshot);
+    }
+
+    public static boolean exists(Path file) {
+        return Files.isRegularFile(file);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Sets the listener called with the instance configuration when it has changed since the snapshot was
+     * recorded. It's called right away if that has already been found out - and may be called more than once for
+     * the same change.
+     */
+    public void setInstanceConfigListener(Consumer<Map<String, Object>> listener) {
+        this.instanceConfigListener = listener;
+        if (listener != null && revalidated.contains(KEY_INSTANCE_CONFIG)
+                && !Objects.equals(snapshot.get(KEY_INSTANCE_CONFIG), recorded.get(KEY_INSTANCE_CONFIG))) {
+            listener.accept(convert(recorded.get(KEY_INSTANCE_CONFIG), instanceConfigType()));
+        }
+    }
+
+    /**
+     * Writes all results recorded so far to the snapshot file. Once written the file is written again whenever
+     * a result changes.
+     */
+    public synchronized void writeSnapshot() {
+        if (delegate == null) {
+            return;
+        }
+        writeOnChange = true;
+
+        var snapshotFile = new SnapshotFile(VERSION, blockRef, System.currentTimeMillis(), new TreeMap<>(recorded));
+        try {
+            var posix = file.getFileSystem().supportedFileAttributeViews().contains("posix");
+            if (file.getParent() != null && !Files.isDirectory(file.getParent())) {
+                if (posix) {
+                    Files.createDirectories(file.getParent(), OWNER_ONLY_DIRECTORY);
+                } else {
+                    Files.createDirectories(file.getParent());
+                }
+            }
+            // Create the file with its permissions - so the credentials are never readable by others
+            var temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.deleteIfExists(temp);
+            if (posix) {
+                Files.createFile(temp, OWNER_ONLY_FILE);
+            } else {
+                Files.createFile(temp);
+            }
+            Files.write(temp, objectMapper.writeValueAsBytes(snapshotFile), StandardOpenOption.TRUNCATE_EXISTING);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Wrote {} configuration results to snapshot {}", recorded.size(), file);
+        } catch (IOException e) {
+            log.warn("Failed to write configuration snapshot {}", file, e);
+        }
+    }
+
+    @Override
+    public int getServerPort(String portType) {
+        return load(key("server-port", portType), type(Integer.class), () -> delegate.getServerPort(portType));
+    }
+
+    @Override
+    public String getServerHost() {
+        return load(key("server-host"), type(String.class), () -> delegate.getServerHost());
+    }
+
+    @Override
+    public String getSystemId() {
+        return load(key("system-id"), type(String.class), () -> delegate.getSystemId());
+    }
+
+    @Override
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    @Override
+    public String getServiceAddress(String serviceName, String portType) {
+        return load(key("service-address", serviceName, portType), type(String.class), () -> delegate.getServiceAddress(serviceName, portType));
+    }
+
+    @Override
+    public ResourceInfo getResourceInfo(String resourceType, String portType, String name) {
+        return load(key("resource-info", resourceType, portType, name), type(ResourceInfo.class), () -> delegate.getResourceInfo(resourceType, portType, name));
+    }
+
+    @Override
+    public String getInstanceHost(String instanceId) {
+        return load(key("instance-host", instanceId), type(String.class), () -> delegate.getInstanceHost(instanceId));
+    }
+
+    @Override
+    public Map<String, Object> getInstanceConfig() throws Exception {
+        return get(KEY_INSTANCE_CONFIG, instanceConfigType(), () -> delegate.getInstanceConfig());
+    }
+
+    @Override
+    public String getProviderId() {
+        return delegate != null ? delegate.getProviderId() : "snapshot:" + file;
+    }
+
+    @Override
+    public <BlockType> BlockInstanceDetails<BlockType> getInstanceForConsumer(String resourceName, Class<BlockType> clz) throws IOException {
+        var type = objectMapper.getTypeFactory().constructParametricType(BlockInstanceDetails.class, clz);
+        return load(key("instance-for-consumer", resourceName, clz.getName()), type, () -> delegate.getInstanceForConsumer(resourceName, clz));
+    }
+
+    @Override
+    public <Options, Credentials> InstanceOperator<Options, Credentials> getInstanceOperator(String instanceId, Class<Options> optionsClass, Class<Credentials> credentialsClass) throws IOException {
+        var type = objectMapper.getTypeFactory().constructParametricType(InstanceOperator.class, optionsClass, credentialsClass);
+        return load(key("instance-operator", instanceId, optionsClass.getName(), credentialsClass.getName()), type,
+                () -> delegate.getInstanceOperator(instanceId, optionsClass, credentialsClass));
+    }
+
+    @Override
+    public <BlockType> List<BlockInstanceDetails<BlockType>> getInstancesForProvider(String resourceName, Class<BlockType> clz) throws IOException {
+        var typeFactory = objectMapper.getTypeFactory();
+        var type = typeFactory.constructCollectionType(List.class, typeFactory.constructParametricType(BlockInstanceDetails.class, clz));
+        return load(key("instances-for-provider", resourceName, clz.getName()), type, () -> delegate.getInstancesForProvider(resourceName, clz));
+    }
+
+    /**
+     * Returns the snapshot result right away - if any - and revalidates it in the background.
+     * Only for results which are applied again when they change - see {@link #setInstanceConfigListener}
+     */
+    private <T, E extends Exception> T get(String key, JavaType type, Loader<T, E> loader) throws E {
+        if (delegate == null) {
+            return fromSnapshot(key, type);
+        }
+
+        var snapshotNode = snapshot.get(key);
+        if (snapshotNode != null && !revalidated.contains(key)) {
+            revalidate(key, loader);
+            return convert(snapshotNode, type);
+        }
+        return load(key, type, loader);
+    }
+
+    /**
+     * Asks the wrapped provider - and only uses the recorded result if it fails
+     */
+    private <T, E extends Exception> T load(String key, JavaType type, Loader<T, E> loader) throws E {
+        if (delegate == null) {
+            return fromSnapshot(key, type);
+        }
+
+        try {
+            var value = loader.load();
+            record(key, value);
+            return value;
+        } catch (Exception e) {
+            var previous = recorded.get(key);
+            if (previous == null) {
+                throw e;
+            }
+            log.warn("Configuration provider failed for {} - using the recorded result", key, e);
+            return convert(previous, type);
+        }
+    }
+
+    private <T> T fromSnapshot(String key, JavaType type) {
+        var node = snapshot.get(key);
+        if (node == null) {
+            throw new IllegalStateException("No result for %s in configuration snapshot %s".formatted(key, file));
+        }
+        return convert(node, type);
+    }
+
+    private <T, E extends Exception> void revalidate(String key, Loader<T, E> loader) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                var value = loader.load();
+                if (record(key, value) && key.equals(KEY_INSTANCE_CONFIG)) {
+                    notifyInstanceConfigChanged(value);
+                }
+            } catch (Exception e) {
+                // Tried again on the next call
+                log.debug("Failed to revalidate {} - using the snapshot result", key, e);
+            } finally {
+                revalidating.remove(key);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notifyInstanceConfigChanged(Object instanceConfig) {
+        var listener = instanceConfigListener;
+        if (listener == null) {
+            // Passed on when the listener is set
+            return;
+        }
+        try {
+            listener.accept((Map<String, Object>) instanceConfig);
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply the changed instance configuration", e);
+        }
+    }
+
+    /**
+     * Records the result - returns true if it changed
+     */
+    private boolean record(String key, Object value) {
+        JsonNode node = value != null ? objectMapper.valueToTree(value) : NullNode.getInstance();
+        var previous = recorded.put(key, node);
+        revalidated.add(key);
+        if (previous != null && !Objects.equals(previous, node)) {
+            log.info("Configuration result for {} changed since the snapshot was recorded", key);
+            if (writeOnChange) {
+                executor.execute(this::writeSnapshot);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private <T> T convert(JsonNode node, JavaType type) {
+        try {
+            return objectMapper.treeToValue(node, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid result in configuration snapshot " + file, e);
+        }
+    }
+
+    private JavaType type(Class<?> clz) {
+        return objectMapper.getTypeFactory().constructType(clz);
+    }
+
+    private JavaType instanceConfigType() {
+        return objectMapper.getTypeFactory().constructMapType(Map.class, String.class, Object.class);
+    }
+
+    private static String key(String method, String... args) {
+        return args.length == 0 ? method : method + "|" + String.join("|", args);
+    }
+
+    private static Map<String, JsonNode> readIfExists(Path file, String blockRef) {
+        if (!exists(file)) {
+            return Map.of();
+        }
+        try {
+            var snapshot = read(file, blockRef);
+            if (snapshot == null) {
+                log.info("Ignoring configuration snapshot {} recorded for another block", file);
+                return Map.of();
+            }
+            log.info("Starting from {} configuration results in snapshot {}", snapshot.size(), file);
+            return snapshot;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable configuration snapshot {}", file, e);
+            return Map.of();
+        }
+    }
+
+    /**
+     * Returns the recorded results - or null if the snapshot was recorded for another block
+     */
+    private static Map<String, JsonNode> read(Path file, String blockRef) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            var snapshotFile = createDefaultSmileMapper().readValue(new ByteBufferBackedInputStream(buffer), SnapshotFile.class);
+            if (snapshotFile.version() != VERSION) {
+                throw new IOException("Unsupported configuration snapshot version: " + snapshotFile.version());
+            }
+            if (blockRef != null && !blockRef.equals(snapshotFile.blockRef())) {
+                return null;
+            }
+            return snapshotFile.results() != null ? Map.copyOf(snapshotFile.results()) : Map.of();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+
+    private record SnapshotFile(int version, String blockRef, long createdAt, Map<String, JsonNode> results) {
+    }
+}
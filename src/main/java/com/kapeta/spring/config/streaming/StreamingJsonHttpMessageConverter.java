@@ -0,0 +1,203 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.streaming;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.stream.BaseStream;
+
+/**
+ * Writes {@link java.util.stream.Stream}, {@link Iterator} and {@link Slice} return values item by item
+ * instead of materializing the full response first.
+ * <p>
+ * Supports plain JSON and newline delimited JSON (application/x-ndjson) where each item is written on its own line.
+ * As JSON, streams and iterators are written as a page object: the items in "content" followed by
+ * "numberOfElements" and "empty" - which are only known once every item has been written. E.g.:
+ * {"content": [...], "numberOfElements": 2, "empty": false}
+ * <p>
+ * Slices are only written when explicitly requested as application/x-ndjson - otherwise they're left to the
+ * regular jackson converter so the JSON page object is unchanged.
+ * <p>
+ * The generator is flushed every {@code flushInterval} items. Since the servlet output stream blocks
+ * when the client is not reading, a slow client will also slow down how fast items are pulled from the source.
+ * <p>
+ * Streams and closeable iterators are closed once written - so it is safe to return e.g. a database cursor stream.
+ */
+public class StreamingJsonHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    public static final int DEFAULT_FLUSH_INTERVAL = 100;
+
+    private final ObjectMapper objectMapper;
+
+    private final int flushInterval;
+
+    public StreamingJsonHttpMessageConverter(ObjectMapper objectMapper) {
+        this(objectMapper, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public StreamingJsonHttpMessageConverter(ObjectMapper objectMapper, int flushInterval) {
+        super(MediaType.APPLICATION_JSON, APPLICATION_NDJSON);
+        this.objectMapper = objectMapper;
+        this.flushInterval = Math.max(1, flushInterval);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return BaseStream.class.isAssignableFrom(clazz)
+                || Iterator.class.isAssignableFrom(clazz)
+                || Slice.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        // The media type is null while collecting what can be produced - so ndjson is still offered for slices
+        if (Slice.class.isAssignableFrom(clazz) && mediaType != null && !APPLICATION_NDJSON.isCompatibleWith(mediaType)) {
+            return false;
+        }
+        return super.canWrite(clazz, mediaType);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Streaming converter is write only", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Streaming converter is write only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        var contentType = outputMessage.getHeaders().getContentType();
+        var ndjson = contentType != null && APPLICATION_NDJSON.isCompatibleWith(contentType);
+        var itemWriter = getItemWriter(type);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(StreamUtils.nonClosing(outputMessage.getBody()), JsonEncoding.UTF8)) {
+            // If the items fail mid-stream the response must stay invalid JSON - otherwise closing the generator
+            // would end the array and the client would see a valid but truncated result
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            if (ndjson) {
+                // Items are separated by new lines instead of the default root value separator
+                generator.setRootValueSeparator(null);
+            }
+
+            if (value instanceof Slice<?> slice) {
+                writeItems(generator, itemWriter, slice.getContent().iterator(), true);
+            } else if (value instanceof BaseStream<?, ?> stream) {
+                try (stream) {
+                    writeItems(generator, itemWriter, stream.iterator(), ndjson);
+                }
+            } else if (value instanceof Iterator<?> iterator) {
+                try {
+                    writeItems(generator, itemWriter, iterator, ndjson);
+                } finally {
+                    if (iterator instanceof AutoCloseable closeable) {
+                        closeQuietly(closeable);
+                    }
+                }
+            }
+
+            generator.flush();
+        }
+    }
+
+    private void writeItems(JsonGenerator generator, ObjectWriter itemWriter, Iterator<?> items, boolean ndjson) throws IOException {
+        if (!ndjson) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("content");
+        }
+
+        int count = 0;
+        while (items.hasNext()) {
+            itemWriter.writeValue(generator, items.next());
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+            if (++count % flushInterval == 0) {
+                generator.flush();
+            }
+        }
+
+        if (!ndjson) {
+            generator.writeEndArray();
+            generator.writeNumberField("numberOfElements", count);
+            generator.writeBooleanField("empty", count == 0);
+            generator.writeEndObject();
+        }
+    }
+
+    private ObjectWriter getItemWriter(Type type) {
+        var writer = objectMapper.writer()
+                // We decide when to flush
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        JavaType itemType = getItemType(type);
+        if (itemType != null) {
+            return writer.forType(itemType);
+        }
+
+        return writer;
+    }
+
+    private JavaType getItemType(Type type) {
+        if (!(type instanceof ParameterizedType parameterizedType)) {
+            return null;
+        }
+
+        var typeArguments = parameterizedType.getActualTypeArguments();
+        if (typeArguments.length == 0) {
+            return null;
+        }
+
+        // Stream<T>, Iterator<T>, Slice<T> and Page<T> all carry the item type as the first argument
+        if (parameterizedType.getRawType() instanceof Class<?> rawClass && supports(rawClass)) {
+            var itemType = objectMapper.getTypeFactory().constructType(typeArguments[0]);
+            // Let jackson resolve the runtime type of each item if the declared type is too broad
+            if (itemType.isJavaLangObject() || itemType.isAbstract() || itemType.isInterface() || itemType.hasGenericTypes()) {
+                return null;
+            }
+            return itemType;
+        }
+
+        return null;
+    }
+
+    private void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            logger.warn("Failed to close streamed response source", e);
+        }
+    }
+}
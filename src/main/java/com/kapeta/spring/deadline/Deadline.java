@@ -0,0 +1,181 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.deadline;
+
+import com.kapeta.spring.config.SimpleHttpClient;
+import io.micrometer.context.ContextRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time after which nobody is waiting for the result of the current request anymore.
+ * <p>
+ * Set by {@link DeadlineFilter} from the {@value SimpleHttpClient#HEADER_KAPETA_DEADLINE} header of incoming requests and
+ * forwarded - as the remaining time - by the SDK clients. The header holds the remaining time in milliseconds
+ * rather than a timestamp so clock differences between hosts don't matter.
+ * <p>
+ * The deadline is only carried to other threads when explicitly wrapped - using {@link #wrap(Executor)} or the
+ * micrometer context propagation library (registered under {@link #CONTEXT_KEY}) - since background work
+ * started by a request often should outlive it.
+ */
+public final class Deadline {
+
+    public static final String CONTEXT_KEY = "kapeta.deadline";
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    static {
+        ContextRegistry.getInstance().registerThreadLocalAccessor(
+                CONTEXT_KEY,
+                Deadline::current,
+                Deadline::set,
+                Deadline::clear
+        );
+    }
+
+    // Timeouts are clamped to about 73 years so comparisons using the difference of nano times can't overflow
+    private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 4;
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        long nanos;
+        try {
+            nanos = timeout.toNanos();
+        } catch (ArithmeticException e) {
+            nanos = timeout.isNegative() ? -MAX_TIMEOUT_NANOS : MAX_TIMEOUT_NANOS;
+        }
+        return afterNanos(nanos);
+    }
+
+    private static Deadline afterNanos(long timeoutNanos) {
+        var clamped = Math.max(-MAX_TIMEOUT_NANOS, Math.min(MAX_TIMEOUT_NANOS, timeoutNanos));
+        return new Deadline(System.nanoTime() + clamped);
+    }
+
+    /**
+     * Parses the {@value SimpleHttpClient#HEADER_KAPETA_DEADLINE} header value - returns null if it is not a number
+     */
+    public static Deadline fromHeader(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            // Saturates instead of overflowing for huge values
+            return afterNanos(TimeUnit.MILLISECONDS.toNanos(Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * The remaining time in milliseconds - 0 if the deadline has passed
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Throws {@link DeadlineExceededException} if the deadline has passed
+     */
+    public void check() {
+        if (isExpired()) {
+            throw new DeadlineExceededException();
+        }
+    }
+
+    /**
+     * Returns the earliest of this deadline and the given one
+     */
+    public Deadline min(Deadline other) {
+        return other == null || deadlineNanos - other.deadlineNanos <= 0 ? this : other;
+    }
+
+    public String toHeaderValue() {
+        return String.valueOf(remainingMillis());
+    }
+
+    /**
+     * The deadline of the current request - or null if there is none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Throws {@link DeadlineExceededException} if the current request has a deadline and it has passed
+     */
+    public static void checkCurrent() {
+        var deadline = CURRENT.get();
+        if (deadline != null) {
+            deadline.check();
+        }
+    }
+
+    public static void set(Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static Runnable wrap(Runnable task) {
+        var captured = CURRENT.get();
+        return () -> {
+            var previous = CURRENT.get();
+            set(captured);
+            try {
+                task.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        var captured = CURRENT.get();
+        return () -> {
+            var previous = CURRENT.get();
+            set(captured);
+            try {
+                return task.call();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    /**
+     * Wraps an executor so all tasks run with the deadline that was current when they were submitted
+     */
+    public static Executor wrap(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[remaining=" + remainingMillis() + "ms]";
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.deadline;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Thrown when the deadline of the current request has passed. Results in a 504 response if not handled.
+ */
+public class DeadlineExceededException extends ResponseStatusException {
+
+    public DeadlineExceededException() {
+        super(HttpStatus.GATEWAY_TIMEOUT, "Deadline exceeded");
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.deadline;
+
+import com.kapeta.spring.config.SimpleHttpClient;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Reads the {@value SimpleHttpClient#HEADER_KAPETA_DEADLINE} header of incoming requests into {@link Deadline#current()}.
+ * <p>
+ * Requests that arrive with no time left are rejected with 504 right away. If a default timeout is given it is
+ * used for requests without the header - and as upper bound for the header value.
+ * <p>
+ * The kapeta routes are never given a deadline.
+ */
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    private static final String KAPETA_ROUTES_PREFIX = "/.kapeta/";
+
+    private final Duration defaultTimeout;
+
+    /**
+     * @param defaultTimeout deadline for requests without the header - or null for none
+     */
+    public DeadlineFilter(Duration defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith(KAPETA_ROUTES_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        var deadline = Deadline.fromHeader(request.getHeader(SimpleHttpClient.HEADER_KAPETA_DEADLINE));
+        if (defaultTimeout != null) {
+            deadline = Deadline.after(defaultTimeout).min(deadline);
+        }
+
+        if (deadline == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (deadline.isExpired()) {
+            response.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT, "Deadline exceeded");
+            return;
+        }
+
+        var previous = Deadline.current();
+        Deadline.set(deadline);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Deadline.set(previous);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.deadline;
+
+import com.kapeta.spring.config.SimpleHttpClient;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Forwards the remaining time of the current request's deadline to outgoing requests - and fails with
+ * {@link DeadlineExceededException} without sending the request if the deadline has already passed.
+ */
+public class DeadlineInterceptor implements ClientHttpRequestInterceptor {
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        var deadline = Deadline.current();
+        if (deadline != null) {
+            deadline.check();
+            request.getHeaders().set(SimpleHttpClient.HEADER_KAPETA_DEADLINE, deadline.toHeaderValue());
+        }
+        return execution.execute(request, body);
+    }
+}
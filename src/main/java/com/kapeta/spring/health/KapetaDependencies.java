@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.health;
+
+import com.kapeta.spring.client.KapetaConsumers;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import com.kapeta.spring.config.providers.types.InstanceOperatorPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the network addresses of the dependencies of this block - its consumers, resources and
+ * instance operators.
+ */
+public class KapetaDependencies {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaDependencies.class);
+
+    public enum Type {
+        /**
+         * A block instance consumed using the "rest" port type
+         */
+        SERVICE,
+        /**
+         * A resource - e.g. a database or message queue
+         */
+        RESOURCE,
+        /**
+         * A port of an instance operator
+         */
+        OPERATOR
+    }
+
+    /**
+     * A dependency to connect to
+     *
+     * @param name   the consumer name or instance operator id
+     * @param scheme the scheme of the service address - null for resources and operators
+     */
+    public record Dependency(String name, Type type, String scheme, String host, int port) {
+    }
+
+    /**
+     * Resolves the host and port of the given consumers and instance operators.
+     * <p>
+     * Consumers using the "rest" port type are resolved using {@link KapetaConfigurationProvider#getServiceAddress}
+     * - all others are resources (e.g. databases) resolved using {@link KapetaConfigurationProvider#getResourceInfo}.
+     * Dependencies that can't be resolved are skipped.
+     */
+    public static List<Dependency> find(KapetaConfigurationProvider provider, List<KapetaConsumers.Consumer> consumers, List<String> instanceOperators) {
+        var out = new ArrayList<Dependency>();
+        for (KapetaConsumers.Consumer consumer : consumers) {
+            try {
+                if (KapetaConfigurationProvider.DEFAULT_SERVER_PORT_TYPE.equals(consumer.portType())) {
+                    var uri = URI.create(provider.getServiceAddress(consumer.name(), consumer.portType()).trim());
+                    var scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase() : "http";
+                    var port = uri.getPort() > 0 ? uri.getPort() : ("https".equals(scheme) ? 443 : 80);
+                    out.add(new Dependency(consumer.name(), Type.SERVICE, scheme, uri.getHost(), port));
+                } else {
+                    // The kind includes the version - e.g. "kapeta/resource-type-postgresql:0.0.1"
+                    var resourceType = consumer.kind().split(":")[0];
+                    var resource = provider.getResourceInfo(resourceType, consumer.portType(), consumer.name());
+                    if (resource != null && StringUtils.hasText(resource.getHost()) && StringUtils.hasText(resource.getPort())) {
+                        out.add(new Dependency(consumer.name(), Type.RESOURCE, null, resource.getHost(), Integer.parseInt(resource.getPort().trim())));
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to resolve address of consumer {}", consumer.name(), e);
+            }
+        }
+
+        for (String instanceId : instanceOperators) {
+            try {
+                var operator = provider.getInstanceOperator(instanceId);
+                for (InstanceOperatorPort port : operator.getPorts().values()) {
+                    out.add(new Dependency(instanceId, Type.OPERATOR, null, operator.getHostname(), port.getPort()));
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to resolve address of instance operator {}", instanceId, e);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.health;
+
+import com.kapeta.spring.config.KapetaApplicationInitializer;
+import com.kapeta.spring.util.Backoff;
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the block from reporting ready until its dependencies are available - so blocks started before their
+ * dependencies don't receive traffic they can only fail.
+ * <p>
+ * Keeps the "dependencies" readiness gate closed until all required dependencies have been seen up once.
+ * Consumed block instances are up when their kapeta health route responds with 200 - resources and instance
+ * operators when a TCP connection can be opened. All dependencies are probed in parallel with a bounded timeout
+ * per probe and an exponential backoff - with jitter - between failed probes.
+ * <p>
+ * Optional dependencies are probed and logged while waiting but never keep the gate closed. Probing stops once
+ * a dependency is up or the gate has been opened - a dependency going down later doesn't affect readiness. If a
+ * max wait is given the gate is opened once it has passed even if some required dependencies are still down.
+ */
+public class KapetaDependencyGate implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaDependencyGate.class);
+
+    public static final String READINESS_GATE = "dependencies";
+
+    public enum Policy {
+        REQUIRED, OPTIONAL
+    }
+
+    /**
+     * @param probeTimeout   max time a single probe may take
+     * @param initialBackoff time to wait after the first failed probe
+     * @param maxBackoff     max time to wait between probes
+     * @param maxWait        max time to keep the gate closed - or null to wait until all required dependencies are up
+     */
+    public record Settings(Duration probeTimeout, Duration initialBackoff, Duration maxBackoff, Duration maxWait) {
+        public static final Settings DEFAULT = new Settings(Duration.ofSeconds(2), Duration.ofMillis(250), Duration.ofSeconds(10), null);
+    }
+
+    private final KapetaHealthStatus healthStatus;
+
+    private final Settings settings;
+
+    // Jitter so blocks started together don't probe in lockstep
+    private final Backoff backoff;
+
+    private final HttpClient httpClient;
+
+    private final ScheduledExecutorService executor;
+
+    private final Map<String, Boolean> pendingRequired = new ConcurrentHashMap<>();
+
+    private final long start = System.nanoTime();
+
+    private volatile boolean open;
+
+    /**
+     * @param policies the policy of each dependency by name - dependencies not listed use the default policy
+     */
+    public KapetaDependencyGate(KapetaHealthStatus healthStatus,
+                                List<KapetaDependencies.Dependency> dependencies,
+                                Map<String, Policy> policies,
+                                Policy defaultPolicy,
+                                int threads,
+                                Settings settings) {
+        this.healthStatus = healthStatus;
+        this.settings = settings;
+        this.backoff = new Backoff(settings.initialBackoff(), settings.maxBackoff());
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(settings.probeTimeout())
+                .build();
+
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, threads), KapetaThreads.daemonFactory("kapeta-dependencies"));
+
+        for (KapetaDependencies.Dependency dependency : dependencies) {
+            if (policies.getOrDefault(dependency.name(), defaultPolicy) == Policy.REQUIRED) {
+                pendingRequired.put(key(dependency), true);
+            }
+        }
+
+        if (pendingRequired.isEmpty()) {
+            log.info("No required dependencies to wait for");
+            open = true;
+            executor.shutdown();
+            return;
+        }
+
+        // Close the gate right away so we don't report ready before the dependencies are up
+        healthStatus.setReady(READINESS_GATE, false);
+        log.info("Waiting for {} required dependencies", pendingRequired.size());
+        if (settings.maxWait() != null) {
+            executor.schedule(this::onMaxWait, settings.maxWait().toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        for (KapetaDependencies.Dependency dependency : dependencies) {
+            executor.execute(() -> probe(dependency, 0));
+        }
+    }
+
+    private void probe(KapetaDependencies.Dependency dependency, int attempt) {
+        if (open) {
+            return;
+        }
+
+        if (isUp(dependency)) {
+            log.info("Dependency {} is up at {}:{} after {} failed probes", dependency.name(), dependency.host(), dependency.port(), attempt);
+            onUp(dependency);
+            return;
+        }
+
+        var delay = backoff.delayMillis(attempt);
+        if (attempt % 10 == 0) {
+            log.info("Dependency {} is not up at {}:{} - retrying in {}ms", dependency.name(), dependency.host(), dependency.port(), delay);
+        }
+
+        try {
+            executor.schedule(() -> probe(dependency, attempt + 1), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The gate has been opened or the context is closing
+        }
+    }
+
+    private boolean isUp(KapetaDependencies.Dependency dependency) {
+        if (dependency.type() == KapetaDependencies.Type.SERVICE) {
+            var uri = URI.create("%s://%s:%s%s".formatted(dependency.scheme(), dependency.host(), dependency.port(),
+                    KapetaApplicationInitializer.HEALTH_CHECK_ENDPOINT));
+            var request = HttpRequest.newBuilder(uri)
+                    .timeout(settings.probeTimeout())
+                    .GET()
+                    .build();
+            try {
+                return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+            } catch (IOException e) {
+                log.debug("Health probe of {} failed", dependency.name(), e);
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        try (var socket = new Socket()) {
+            socket.connect(new InetSocketAddress(dependency.host(), dependency.port()), (int) settings.probeTimeout().toMillis());
+            return true;
+        } catch (IOException e) {
+            log.debug("Connection probe of {} failed", dependency.name(), e);
+            return false;
+        }
+    }
+
+    private void onUp(KapetaDependencies.Dependency dependency) {
+        if (pendingRequired.remove(key(dependency)) != null && pendingRequired.isEmpty()) {
+            log.info("All required dependencies are up after {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            openGate();
+        }
+    }
+
+    private void onMaxWait() {
+        if (!open) {
+            log.warn("Required dependencies {} are still down after {}ms - reporting ready anyway", pendingRequired.keySet(), settings.maxWait().toMillis());
+            openGate();
+        }
+    }
+
+    private synchronized void openGate() {
+        if (!open) {
+            open = true;
+            healthStatus.setReady(READINESS_GATE, true);
+            executor.shutdown();
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    private static String key(KapetaDependencies.Dependency dependency) {
+        return dependency.name() + "@" + dependency.host() + ":" + dependency.port();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.health;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapeta.spring.rest.KapetaController;
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.CompositeHealthContributor;
+import org.springframework.boot.actuate.health.HealthContributor;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the current health of the block as a pre-encoded response.
+ * <p>
+ * The status is composed from the actuator health contributors, which are checked on a
+ * background thread at a fixed interval. Health probes only ever read the cached response
+ * so they never block on slow dependency checks - and don't allocate or serialize anything.
+ * <p>
+ * A contributor that is down makes the readiness response fail, but is only reported in the body of the health
+ * (liveness) response - unless indicatorsAffectLiveness is set. Otherwise a failing database would get the
+ * block restarted rather than just taken out of rotation.
+ * <p>
+ * Readiness is tracked separately from liveness using named gates - e.g. "warmup".
+ * The block is ready once all gates are open. Closing a gate never affects liveness.
+ */
+public class KapetaHealthStatus implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaHealthStatus.class);
+
+    private final ObjectMapper objectMapper;
+
+    private final Iterable<HealthContributor> contributors;
+
+    private final Duration refreshInterval;
+
+    private final boolean indicatorsAffectLiveness;
+
+    private final Map<String, Boolean> readinessGates = new ConcurrentHashMap<>();
+
+    private volatile HealthResponse response;
+
+    private volatile HealthResponse readinessResponse;
+
+    private volatile boolean ok = true;
+
+    private volatile boolean ready = true;
+
+    private ScheduledExecutorService executor;
+
+    public KapetaHealthStatus(ObjectMapper objectMapper, Iterable<HealthContributor> contributors, Duration refreshInterval) {
+        this(objectMapper, contributors, refreshInterval, false);
+    }
+
+    /**
+     * @param indicatorsAffectLiveness fail the health response - not just the readiness response - if a
+     *                                 contributor is down
+     */
+    public KapetaHealthStatus(ObjectMapper objectMapper, Iterable<HealthContributor> contributors, Duration refreshInterval,
+                              boolean indicatorsAffectLiveness) {
+        this.objectMapper = objectMapper;
+        this.contributors = contributors;
+        this.refreshInterval = refreshInterval;
+        this.indicatorsAffectLiveness = indicatorsAffectLiveness;
+        this.response = encode(true, true, false);
+        this.readinessResponse = encode(true, true, true);
+    }
+
+    /**
+     * The current health (liveness) response. Never blocks.
+     * <p>
+     * Always successful while the process is running - unless indicatorsAffectLiveness is set
+     */
+    public HealthResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * The current readiness response - which is only successful if the block is both
+     * healthy and ready. Never blocks.
+     */
+    public HealthResponse getReadinessResponse() {
+        return readinessResponse;
+    }
+
+    public boolean isOk() {
+        return ok;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Opens or closes a named readiness gate.
+     * <p>
+     * Components that need to hold back traffic (e.g. while warming up) should close their gate
+     * as early as possible and open it again once done.
+     */
+    public synchronized void setReady(String gate, boolean gateReady) {
+        var previous = readinessGates.put(gate, gateReady);
+        if (previous != null && previous == gateReady) {
+            return;
+        }
+
+        var allReady = !readinessGates.containsValue(false);
+        if (allReady != ready) {
+            log.info("Block readiness changed to: {} (gate: {})", allReady ? "ready" : "not ready", gate);
+            ready = allReady;
+            updateResponses();
+        }
+    }
+
+    /**
+     * Checks all health contributors and updates the cached response
+     */
+    public void refresh() {
+        var allUp = true;
+        for (HealthContributor contributor : contributors) {
+            if (!isUp("", contributor)) {
+                allUp = false;
+            }
+        }
+
+        synchronized (this) {
+            if (allUp != ok) {
+                log.info("Block health changed to: {}", allUp ? "ok" : "not ok");
+                ok = allUp;
+                updateResponses();
+            }
+        }
+    }
+
+    private void updateResponses() {
+        response = encode(ok, ready, false);
+        readinessResponse = encode(ok, ready, true);
+    }
+
+    private boolean isUp(String name, HealthContributor contributor) {
+        if (contributor instanceof CompositeHealthContributor composite) {
+            var up = true;
+            for (var child : composite) {
+                up &= isUp(name + "/" + child.getName(), child.getContributor());
+            }
+            return up;
+        }
+
+        if (contributor instanceof HealthIndicator indicator) {
+            try {
+                var status = indicator.health().getStatus();
+                if (Status.DOWN.equals(status) || Status.OUT_OF_SERVICE.equals(status)) {
+                    log.warn("Health indicator {} reported {}", indicator.getClass().getSimpleName() + name, status);
+                    return false;
+                }
+            } catch (Exception e) {
+                log.warn("Health indicator {} failed", indicator.getClass().getSimpleName() + name, e);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private HealthResponse encode(boolean ok, boolean ready, boolean readiness) {
+        var health = new KapetaController.Health();
+        health.setOk(ok);
+        health.setReady(ready);
+        var success = readiness ? ok && ready : ok || !indicatorsAffectLiveness;
+        try {
+            return new HealthResponse(success ? 200 : 503, objectMapper.writeValueAsBytes(health));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode health response", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(KapetaThreads.singleDaemonFactory("kapeta-health"));
+        executor.scheduleWithFixedDelay(this::safeRefresh, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void safeRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Failed to refresh health status", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Pre-encoded health response
+     */
+    public record HealthResponse(int status, byte[] body) {
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.health;
+
+import com.kapeta.spring.client.KapetaRestClients;
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.http.HttpMethod;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Establishes connections to the dependencies of the block before it reports ready - so the first requests
+ * after a deploy don't pay for DNS lookups, TCP handshakes and filling connection pools.
+ * <p>
+ * Keeps the "prewarm" readiness gate closed while:
+ * <ul>
+ *     <li>a TCP connection is opened - and closed again right away - to every consumer, resource and instance
+ *     operator port resolved by the configuration provider, starting as soon as this bean is created. These
+ *     connections aren't reused: this only resolves the host names - filling the JVM address cache - and checks
+ *     the dependencies can be reached, so unreachable ones are logged early</li>
+ *     <li>once the context has been refreshed: the configured number of connections is opened in each pooled
+ *     REST client (see {@link KapetaRestClients}) by requesting the kapeta health route of the consumer, and a
+ *     connection is taken from every {@link DataSource} - which makes pooled data sources fill their pool</li>
+ * </ul>
+ * Failures are logged and otherwise ignored. The gate is opened once everything is done or the max duration
+ * has passed. Liveness is never affected.
+ */
+public class KapetaPrewarm implements ApplicationListener<ContextRefreshedEvent>, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaPrewarm.class);
+
+    public static final String READINESS_GATE = "prewarm";
+
+    private static final String HEALTH_PATH = "/.kapeta/health";
+
+    private final KapetaHealthStatus healthStatus;
+
+    private final ObjectProvider<KapetaRestClients> restClients;
+
+    private final ObjectProvider<DataSource> dataSources;
+
+    private final int connectionsPerClient;
+
+    private final Duration connectTimeout;
+
+    private final Duration maxDuration;
+
+    private final ExecutorService executor;
+
+    private final CompletableFuture<Void> tcp;
+
+    private volatile boolean started;
+
+    /**
+     * @param targets              the host and port of every dependency - see {@link KapetaDependencies#find}
+     * @param restClients          the pooled REST clients to fill - if any
+     * @param dataSources          the data sources to initialise - or null to leave them alone
+     * @param connectionsPerClient connections to open in each pooled REST client
+     */
+    public KapetaPrewarm(KapetaHealthStatus healthStatus,
+                         List<KapetaDependencies.Dependency> targets,
+                         ObjectProvider<KapetaRestClients> restClients,
+                         ObjectProvider<DataSource> dataSources,
+                         int threads,
+                         int connectionsPerClient,
+                         Duration connectTimeout,
+                         Duration maxDuration) {
+        this.healthStatus = healthStatus;
+        this.restClients = restClients;
+        this.dataSources = dataSources;
+        this.connectionsPerClient = connectionsPerClient;
+        this.connectTimeout = connectTimeout;
+        this.maxDuration = maxDuration;
+
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), KapetaThreads.daemonFactory("kapeta-prewarm"));
+
+        // Close the gate right away so we don't report ready before we're done
+        healthStatus.setReady(READINESS_GATE, false);
+
+        log.info("Pre-warming connections to {} dependencies", targets.size());
+        this.tcp = CompletableFuture.allOf(targets.stream()
+                .map(target -> CompletableFuture.runAsync(() -> connect(target), executor))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        // Ignore child contexts - e.g. a separate actuator management context
+        if (started || event.getApplicationContext().getParent() != null) {
+            return;
+        }
+        started = true;
+
+        var tasks = new ArrayList<CompletableFuture<?>>();
+        tasks.add(tcp);
+
+        var clients = restClients.getIfAvailable();
+        if (clients != null) {
+            for (String consumerName : clients.getConsumerNames()) {
+                for (int i = 0; i < connectionsPerClient; i++) {
+                    tasks.add(CompletableFuture.runAsync(() -> request(clients, consumerName), executor));
+                }
+            }
+        }
+
+        if (dataSources != null) {
+            dataSources.orderedStream().forEach(dataSource ->
+                    tasks.add(CompletableFuture.runAsync(() -> initialise(dataSource), executor)));
+        }
+
+        var start = System.nanoTime();
+        CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new))
+                .orTimeout(maxDuration.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    if (error instanceof TimeoutException) {
+                        log.warn("Pre-warming did not complete within {}ms - continuing without it", maxDuration.toMillis());
+                    } else {
+                        log.info("Pre-warming completed in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                    healthStatus.setReady(READINESS_GATE, true);
+                    executor.shutdown();
+                });
+    }
+
+    private void connect(KapetaDependencies.Dependency target) {
+        try (var socket = new Socket()) {
+            socket.connect(new InetSocketAddress(target.host(), target.port()), (int) connectTimeout.toMillis());
+        } catch (IOException e) {
+            log.warn("Failed to pre-warm connection to {} at {}:{}", target.name(), target.host(), target.port(), e);
+        }
+    }
+
+    private void request(KapetaRestClients clients, String consumerName) {
+        try {
+            // Any response - even an error - leaves a connection in the pool
+            clients.get(consumerName).execute(HEALTH_PATH, HttpMethod.GET, null, response -> null);
+        } catch (RuntimeException e) {
+            log.debug("Failed to pre-warm REST client for {}", consumerName, e);
+        }
+    }
+
+    private void initialise(DataSource dataSource) {
+        try (var connection = dataSource.getConnection()) {
+            if (connection.isValid((int) Math.max(1, connectTimeout.toSeconds()))) {
+                log.debug("Initialised data source {}", dataSource);
+            } else {
+                log.warn("Initialised data source {} but its connection is not valid", dataSource);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to initialise data source {}", dataSource, e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
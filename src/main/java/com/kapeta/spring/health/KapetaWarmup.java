@@ -0,0 +1,214 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.health;
+
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.event.SmartApplicationListener;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives requests through the block's own endpoints before it reports ready.
+ * <p>
+ * Keeps the "warmup" readiness gate closed while the configured requests are sent to the local web server
+ * in rounds. Warm-up ends when the JIT compiler has settled (less than the configured compilation time
+ * was spent during the last check interval), the maximum number of rounds has been sent or the maximum duration
+ * has passed - whichever comes first.
+ * <p>
+ * Requests are given as "METHOD /path [body]" - e.g. "GET /users?size=10" or "POST /users/search {"name":"test"}".
+ * All requests have the {@value #HEADER_KAPETA_WARMUP} header set so endpoints can skip side effects.
+ * Liveness is never affected.
+ * <p>
+ * Without a web server (e.g. a mock web environment in tests) there is nothing to warm up - the gate is opened
+ * once the application is ready.
+ */
+public class KapetaWarmup implements SmartApplicationListener {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaWarmup.class);
+
+    public static final String READINESS_GATE = "warmup";
+
+    public static final String HEADER_KAPETA_WARMUP = "X-Kapeta-Warmup";
+
+    private static final int CHECK_INTERVAL_ROUNDS = 20;
+
+    private final KapetaHealthStatus healthStatus;
+
+    private final List<WarmupRequest> requests;
+
+    private final int maxRounds;
+
+    private final Duration maxDuration;
+
+    private final Duration compilationThreshold;
+
+    private volatile boolean started;
+
+    public KapetaWarmup(KapetaHealthStatus healthStatus, List<String> requests, int maxRounds, Duration maxDuration, Duration compilationThreshold) {
+        this.healthStatus = healthStatus;
+        this.requests = requests.stream()
+                .filter(StringUtils::hasText)
+                .map(WarmupRequest::parse)
+                .toList();
+        this.maxRounds = maxRounds;
+        this.maxDuration = maxDuration;
+        this.compilationThreshold = compilationThreshold;
+
+        // Close the gate right away so we don't report ready before the web server is up
+        healthStatus.setReady(READINESS_GATE, false);
+    }
+
+    /**
+     * Reads recorded requests from a file - one request per line in the same format as the configured requests.
+     * Empty lines and lines starting with # are ignored.
+     */
+    public static List<String> readRequests(Path file) {
+        try {
+            var out = new ArrayList<String>();
+            for (String line : Files.readAllLines(file)) {
+                if (StringUtils.hasText(line) && !line.trim().startsWith("#")) {
+                    out.add(line.trim());
+                }
+            }
+            return out;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read warm-up requests from: " + file, e);
+        }
+    }
+
+    @Override
+    public boolean supportsEventType(Class<? extends ApplicationEvent> eventType) {
+        return WebServerInitializedEvent.class.isAssignableFrom(eventType)
+                || ApplicationReadyEvent.class.isAssignableFrom(eventType);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof WebServerInitializedEvent webServerEvent) {
+            onWebServerInitialized(webServerEvent);
+        } else if (event instanceof ApplicationReadyEvent && !started) {
+            started = true;
+            log.info("No web server started - skipping warm-up");
+            healthStatus.setReady(READINESS_GATE, true);
+        }
+    }
+
+    private void onWebServerInitialized(WebServerInitializedEvent event) {
+        // Ignore e.g. a separate actuator management server
+        if (started || event.getApplicationContext().getServerNamespace() != null || event.getWebServer().getPort() < 1) {
+            return;
+        }
+        started = true;
+
+        var port = event.getWebServer().getPort();
+        KapetaThreads.startDaemon("kapeta-warmup", () -> run(port));
+    }
+
+    private void run(int port) {
+        try {
+            if (requests.isEmpty()) {
+                log.info("No warm-up requests configured");
+                return;
+            }
+
+            var client = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+            var baseUrl = "http://127.0.0.1:" + port;
+            var compilation = ManagementFactory.getCompilationMXBean();
+            var deadline = System.nanoTime() + maxDuration.toNanos();
+            var lastCompilationTime = getCompilationTime(compilation);
+            var rounds = 0;
+            var failures = 0;
+
+            log.info("Warming up using {} requests", requests.size());
+
+            while (rounds < maxRounds && System.nanoTime() < deadline) {
+                for (WarmupRequest request : requests) {
+                    if (!send(client, baseUrl, request)) {
+                        failures++;
+                    }
+                }
+                rounds++;
+
+                if (rounds % CHECK_INTERVAL_ROUNDS == 0 && lastCompilationTime >= 0) {
+                    var compilationTime = getCompilationTime(compilation);
+                    if (compilationTime - lastCompilationTime < compilationThreshold.toMillis()) {
+                        log.info("JIT compilation settled after {} warm-up rounds", rounds);
+                        break;
+                    }
+                    lastCompilationTime = compilationTime;
+                }
+            }
+
+            log.info("Warm-up completed after {} rounds with {} failed requests", rounds, failures);
+        } catch (Exception e) {
+            log.warn("Warm-up failed - continuing without it", e);
+        } finally {
+            healthStatus.setReady(READINESS_GATE, true);
+        }
+    }
+
+    private boolean send(HttpClient client, String baseUrl, WarmupRequest request) throws InterruptedException {
+        var body = request.body() != null
+                ? HttpRequest.BodyPublishers.ofString(request.body())
+                : HttpRequest.BodyPublishers.noBody();
+
+        var builder = HttpRequest.newBuilder(URI.create(baseUrl + request.path()))
+                .timeout(Duration.ofSeconds(10))
+                .header(HEADER_KAPETA_WARMUP, "true")
+                .method(request.method(), body);
+
+        if (request.body() != null) {
+            builder.header("Content-Type", "application/json");
+        }
+
+        try {
+            var response = client.send(builder.build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 500) {
+                log.debug("Warm-up request {} {} failed with status {}", request.method(), request.path(), response.statusCode());
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            log.debug("Warm-up request {} {} failed", request.method(), request.path(), e);
+            return false;
+        }
+    }
+
+    private static long getCompilationTime(CompilationMXBean compilation) {
+        if (compilation == null || !compilation.isCompilationTimeMonitoringSupported()) {
+            return -1;
+        }
+        return compilation.getTotalCompilationTime();
+    }
+
+    record WarmupRequest(String method, String path, String body) {
+        static WarmupRequest parse(String value) {
+            var parts = value.trim().split("\\s+", 3);
+            if (parts.length == 1) {
+                return new WarmupRequest("GET", parts[0], null);
+            }
+            return new WarmupRequest(parts[0].toUpperCase(), parts[1], parts.length > 2 ? parts[2] : null);
+        }
+    }
+}
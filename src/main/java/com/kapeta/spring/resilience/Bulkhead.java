@@ -0,0 +1,65 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent calls to a downstream service so a hung dependency can only tie up
+ * a bounded number of the calling block's threads.
+ */
+public class Bulkhead {
+
+    private final String name;
+
+    private final int maxConcurrentCalls;
+
+    private final Duration maxWait;
+
+    private final Semaphore permits;
+
+    /**
+     * @param maxWait how long to wait for a permit - zero to fail right away
+     */
+    public Bulkhead(String name, int maxConcurrentCalls, Duration maxWait) {
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Returns true if a permit was acquired - which must then be released using {@link #release()}
+     */
+    public boolean tryAcquire() {
+        if (maxWait.isZero()) {
+            return permits.tryAcquire();
+        }
+        try {
+            return permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+}
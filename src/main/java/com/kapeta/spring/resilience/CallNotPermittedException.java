@@ -0,0 +1,26 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.resilience;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Thrown when a call to a downstream service is rejected because its bulkhead is full or its circuit breaker is
+ * open. Results in a 503 response if not handled.
+ */
+public class CallNotPermittedException extends ResponseStatusException {
+
+    private final String downstream;
+
+    public CallNotPermittedException(String downstream, String reason) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Call to %s not permitted: %s".formatted(downstream, reason));
+        this.downstream = downstream;
+    }
+
+    public String getDownstream() {
+        return downstream;
+    }
+}
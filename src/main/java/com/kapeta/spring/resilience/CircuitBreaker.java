@@ -0,0 +1,198 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Circuit breaker using a time based sliding window of call outcomes.
+ * <p>
+ * The window is split into buckets that are reused as time passes. Once at least minimumCalls have been made
+ * within the window and the failure rate reaches the threshold the breaker opens and rejects all calls for the
+ * open duration. It then lets a number of probe calls through (half-open) - closing again if they all succeed and
+ * re-opening if any of them fail.
+ * <p>
+ * All state is kept in atomics so recording outcomes never blocks the calling threads.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    // nanoTime - and so the bucket epoch - may be negative, so -1 can't mark an empty bucket
+    private static final long EMPTY_BUCKET = Long.MIN_VALUE;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * @param window               length of the sliding window
+     * @param buckets              number of buckets the window is split into
+     * @param failureRateThreshold failure percentage that opens the breaker
+     * @param minimumCalls         calls needed within the window before the failure rate is considered
+     * @param openDuration         how long the breaker stays open before probing
+     * @param halfOpenCalls        number of probe calls that must succeed to close the breaker again
+     */
+    public record Settings(Duration window, int buckets, int failureRateThreshold, int minimumCalls,
+                           Duration openDuration, int halfOpenCalls) {
+        public static final Settings DEFAULT = new Settings(Duration.ofSeconds(10), 10, 50, 20, Duration.ofSeconds(10), 3);
+    }
+
+    private final String name;
+
+    private final Settings settings;
+
+    private final long bucketNanos;
+
+    private final AtomicLongArray bucketEpochs;
+
+    private final AtomicLongArray bucketCalls;
+
+    private final AtomicLongArray bucketFailures;
+
+    private final AtomicInteger state = new AtomicInteger(State.CLOSED.ordinal());
+
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    private volatile long openedAt;
+
+    public CircuitBreaker(String name, Settings settings) {
+        this.name = name;
+        this.settings = settings;
+        this.bucketNanos = Math.max(1, settings.window().toNanos() / settings.buckets());
+        this.bucketEpochs = new AtomicLongArray(settings.buckets());
+        this.bucketCalls = new AtomicLongArray(settings.buckets());
+        this.bucketFailures = new AtomicLongArray(settings.buckets());
+        for (int i = 0; i < settings.buckets(); i++) {
+            bucketEpochs.set(i, EMPTY_BUCKET);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return State.values()[state.get()];
+    }
+
+    /**
+     * Returns true if a call may be made. Every permitted call must be followed by {@link #onSuccess()},
+     * {@link #onFailure()} or - if it wasn't made - {@link #releasePermission()}.
+     */
+    public boolean tryAcquirePermission() {
+        while (true) {
+            var current = state.get();
+            if (current == State.CLOSED.ordinal()) {
+                return true;
+            }
+
+            if (current == State.OPEN.ordinal()) {
+                if (System.nanoTime() - openedAt < settings.openDuration().toNanos()) {
+                    return false;
+                }
+                if (state.compareAndSet(current, State.HALF_OPEN.ordinal())) {
+                    halfOpenPermits.set(settings.halfOpenCalls());
+                    halfOpenSuccesses.set(0);
+                    log.info("Circuit breaker for {} is half-open - probing", name);
+                }
+                continue;
+            }
+
+            // Half-open: only let a limited number of probe calls through
+            return halfOpenPermits.getAndDecrement() > 0;
+        }
+    }
+
+    /**
+     * Gives back the permission of a call that wasn't made - without recording an outcome
+     */
+    public void releasePermission() {
+        if (state.get() == State.HALF_OPEN.ordinal()) {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    public void onSuccess() {
+        if (state.get() == State.HALF_OPEN.ordinal()) {
+            if (halfOpenSuccesses.incrementAndGet() >= settings.halfOpenCalls()
+                    && state.compareAndSet(State.HALF_OPEN.ordinal(), State.CLOSED.ordinal())) {
+                resetWindow();
+                log.info("Circuit breaker for {} is closed", name);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN.ordinal()) {
+            open(State.HALF_OPEN);
+            return;
+        }
+
+        record(true);
+        if (state.get() != State.CLOSED.ordinal()) {
+            return;
+        }
+
+        var calls = 0L;
+        var failures = 0L;
+        var epoch = currentEpoch();
+        for (int i = 0; i < settings.buckets(); i++) {
+            var bucketEpoch = bucketEpochs.get(i);
+            if (bucketEpoch != EMPTY_BUCKET && epoch - bucketEpoch < settings.buckets()) {
+                calls += bucketCalls.get(i);
+                failures += bucketFailures.get(i);
+            }
+        }
+
+        if (calls >= settings.minimumCalls() && failures * 100 >= calls * settings.failureRateThreshold()) {
+            open(State.CLOSED);
+        }
+    }
+
+    private void open(State from) {
+        if (state.compareAndSet(from.ordinal(), State.OPEN.ordinal())) {
+            openedAt = System.nanoTime();
+            log.warn("Circuit breaker for {} is open - rejecting calls for {}ms", name, settings.openDuration().toMillis());
+        }
+    }
+
+    private void record(boolean failure) {
+        var epoch = currentEpoch();
+        var index = (int) Math.floorMod(epoch, (long) settings.buckets());
+        var bucketEpoch = bucketEpochs.get(index);
+        if (bucketEpoch != epoch && bucketEpochs.compareAndSet(index, bucketEpoch, epoch)) {
+            // Outcomes recorded by other threads between the CAS and the reset are lost - which is fine for a rate
+            bucketCalls.set(index, 0);
+            bucketFailures.set(index, 0);
+        }
+
+        bucketCalls.incrementAndGet(index);
+        if (failure) {
+            bucketFailures.incrementAndGet(index);
+        }
+    }
+
+    private long currentEpoch() {
+        return Math.floorDiv(System.nanoTime(), bucketNanos);
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < settings.buckets(); i++) {
+            bucketEpochs.set(i, EMPTY_BUCKET);
+            bucketCalls.set(i, 0);
+            bucketFailures.set(i, 0);
+        }
+    }
+}
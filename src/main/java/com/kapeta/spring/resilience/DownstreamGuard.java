@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+
+/**
+ * The {@link Bulkhead} and {@link CircuitBreaker} of a single downstream service.
+ * <p>
+ * Every call must acquire a permit using {@link #acquire()} and - if successful - release it using
+ * {@link #release(boolean)} once the outcome is known - or {@link #release()} if the call wasn't made.
+ */
+public class DownstreamGuard {
+
+    public static final String REASON_CIRCUIT_OPEN = "circuit-open";
+
+    public static final String REASON_BULKHEAD_FULL = "bulkhead-full";
+
+    /**
+     * @param maxConcurrentCalls max calls in flight to the downstream service
+     * @param maxWait            how long to wait for a bulkhead permit - zero to reject right away
+     */
+    public record Settings(int maxConcurrentCalls, Duration maxWait, CircuitBreaker.Settings circuitBreaker) {
+        public static final Settings DEFAULT = new Settings(25, Duration.ZERO, CircuitBreaker.Settings.DEFAULT);
+    }
+
+    private final String name;
+
+    private final Bulkhead bulkhead;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final Counter circuitOpenRejections;
+
+    private final Counter bulkheadFullRejections;
+
+    /**
+     * @param meterRegistry where to register the state and rejection metrics - or null to not record any
+     */
+    public DownstreamGuard(String name, Settings settings, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.bulkhead = new Bulkhead(name, settings.maxConcurrentCalls(), settings.maxWait());
+        this.circuitBreaker = new CircuitBreaker(name, settings.circuitBreaker());
+
+        if (meterRegistry != null) {
+            Gauge.builder("kapeta.client.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                    .description("Circuit breaker state - 0 closed, 1 open, 2 half-open")
+                    .tag("downstream", name)
+                    .register(meterRegistry);
+            Gauge.builder("kapeta.client.bulkhead.inflight", bulkhead, b -> b.getMaxConcurrentCalls() - b.getAvailablePermits())
+                    .description("Calls currently in flight to the downstream service")
+                    .tag("downstream", name)
+                    .register(meterRegistry);
+            circuitOpenRejections = rejectedCounter(meterRegistry, REASON_CIRCUIT_OPEN);
+            bulkheadFullRejections = rejectedCounter(meterRegistry, REASON_BULKHEAD_FULL);
+        } else {
+            circuitOpenRejections = null;
+            bulkheadFullRejections = null;
+        }
+    }
+
+    private Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("kapeta.client.calls.rejected")
+                .description("Calls to the downstream service rejected without being sent")
+                .tag("downstream", name)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Acquires a permit for a call - or throws if the bulkhead is full or the circuit breaker is open
+     */
+    public void acquire() throws CallNotPermittedException {
+        // Take the bulkhead permit first - a rejected call must not use up one of the half-open probes
+        if (!bulkhead.tryAcquire()) {
+            increment(bulkheadFullRejections);
+            throw new CallNotPermittedException(name, REASON_BULKHEAD_FULL);
+        }
+
+        if (!circuitBreaker.tryAcquirePermission()) {
+            bulkhead.release();
+            increment(circuitOpenRejections);
+            throw new CallNotPermittedException(name, REASON_CIRCUIT_OPEN);
+        }
+    }
+
+    public void release(boolean success) {
+        bulkhead.release();
+        if (success) {
+            circuitBreaker.onSuccess();
+        } else {
+            circuitBreaker.onFailure();
+        }
+    }
+
+    /**
+     * Releases the permit without recording an outcome - for calls that were rejected before reaching the
+     * downstream service
+     */
+    public void release() {
+        bulkhead.release();
+        circuitBreaker.releasePermission();
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
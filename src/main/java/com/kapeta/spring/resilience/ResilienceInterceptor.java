@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.resilience;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Guards requests for the address of a known consumer using its {@link DownstreamGuard}. Other requests are passed
+ * through unchanged.
+ * <p>
+ * Rejected requests fail with a {@link CallNotPermittedException} without being sent. Only connection errors and 5xx
+ * responses count as failures for the circuit breaker - requests rejected locally by a later interceptor, e.g. with
+ * a {@link com.kapeta.spring.deadline.DeadlineExceededException}, release their permit without an outcome.
+ * The request is considered complete once the response headers have been received.
+ * <p>
+ * Must be added before any interceptor that rewrites the request uri - e.g. the load balancer.
+ */
+public class ResilienceInterceptor implements ClientHttpRequestInterceptor {
+
+    private final ResilienceRegistry registry;
+
+    public ResilienceInterceptor(ResilienceRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        var guard = registry.find(request.getURI());
+        if (guard == null) {
+            return execution.execute(request, body);
+        }
+
+        guard.acquire();
+        ClientHttpResponse response;
+        boolean success;
+        try {
+            response = execution.execute(request, body);
+            success = !response.getStatusCode().is5xxServerError();
+        } catch (IOException e) {
+            guard.release(false);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            // Not a failure of the downstream service
+            guard.release();
+            throw e;
+        }
+        guard.release(success);
+        return response;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.resilience;
+
+import com.kapeta.spring.client.KapetaConsumers;
+import com.kapeta.spring.config.providers.KapetaConfigurationProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link DownstreamGuard}s of the consumers of this block - looked up by consumer name or by the address the
+ * configuration provider resolves the consumer to.
+ */
+public class ResilienceRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ResilienceRegistry.class);
+
+    private final Map<String, DownstreamGuard> byName = new ConcurrentHashMap<>();
+
+    private final Map<String, DownstreamGuard> byAddress = new ConcurrentHashMap<>();
+
+    private final DownstreamGuard.Settings settings;
+
+    private final MeterRegistry meterRegistry;
+
+    public ResilienceRegistry(DownstreamGuard.Settings settings, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Creates a guard for each of the given consumers
+     */
+    public static ResilienceRegistry create(KapetaConfigurationProvider provider, List<KapetaConsumers.Consumer> consumers,
+                                            DownstreamGuard.Settings settings, MeterRegistry meterRegistry) {
+        var registry = new ResilienceRegistry(settings, meterRegistry);
+        for (KapetaConsumers.Consumer consumer : consumers) {
+            try {
+                registry.register(consumer.name(), provider.getServiceAddress(consumer.name(), consumer.portType()));
+            } catch (RuntimeException e) {
+                log.warn("Failed to resolve address of consumer {} - calls will not be guarded", consumer.name(), e);
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Registers a guard for calls sent to the given address - e.g. "http://users:80/"
+     */
+    public DownstreamGuard register(String name, String address) {
+        var guard = byName.computeIfAbsent(name, n -> new DownstreamGuard(n, settings, meterRegistry));
+        byAddress.put(toKey(URI.create(address.trim())), guard);
+        return guard;
+    }
+
+    public DownstreamGuard get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Finds the guard for the address of the uri - or null if the uri is not for a known consumer
+     */
+    public DownstreamGuard find(URI uri) {
+        if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+            return null;
+        }
+        return byAddress.get(toKey(uri));
+    }
+
+    public Collection<DownstreamGuard> getAll() {
+        return byName.values();
+    }
+
+    private static String toKey(URI uri) {
+        return uri.getScheme().toLowerCase() + "://" + uri.getRawAuthority().toLowerCase();
+    }
+}
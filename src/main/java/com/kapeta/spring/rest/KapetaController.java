@@ -6,37 +6,63 @@
 package com.kapeta.spring.rest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapeta.spring.health.KapetaHealthStatus;
 import io.swagger.v3.oas.annotations.Hidden;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 
 @RequestMapping(".kapeta")
 @RestController
 @Hidden
 public class KapetaController {
 
-    private final ObjectMapper objectMapper;
+    private final KapetaHealthStatus healthStatus;
 
+    public KapetaController(KapetaHealthStatus healthStatus) {
+        this.healthStatus = healthStatus;
+    }
+
+    /**
+     * Always reports the application as healthy and ready - like before health contributors and readiness gates
+     * were supported.
+     *
+     * @deprecated use {@link #KapetaController(KapetaHealthStatus)}
+     */
+    @Deprecated
     public KapetaController(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+        this(new KapetaHealthStatus(objectMapper, List.of(), Duration.ofSeconds(5)));
     }
 
     @RequestMapping("health")
     public void health(HttpServletResponse response) throws IOException {
+        // The response is pre-encoded and refreshed in the background - see KapetaHealthStatus
+        write(response, healthStatus.getResponse());
+    }
+
+    @RequestMapping("ready")
+    public void ready(HttpServletResponse response) throws IOException {
+        write(response, healthStatus.getReadinessResponse());
+    }
 
+    private void write(HttpServletResponse response, KapetaHealthStatus.HealthResponse health) throws IOException {
         response.setHeader("Content-Type", "application/json");
-        response.setStatus(200);
+        response.setStatus(health.status());
+        response.setContentLength(health.body().length);
 
-        objectMapper.writeValue(response.getWriter(), new Health());
+        response.getOutputStream().write(health.body());
         response.flushBuffer();
     }
 
     public static class Health {
         boolean ok = true;
 
+        boolean ready = true;
+
         public boolean isOk() {
             return ok;
         }
@@ -44,5 +70,13 @@ public class KapetaController {
         public void setOk(boolean ok) {
             this.ok = ok;
         }
+
+        public boolean isReady() {
+            return ready;
+        }
+
+        public void setReady(boolean ready) {
+            this.ready = ready;
+        }
     }
 }
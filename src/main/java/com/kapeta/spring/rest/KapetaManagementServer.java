@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.rest;
+
+import com.kapeta.spring.config.KapetaApplicationInitializer;
+import com.kapeta.spring.health.KapetaHealthStatus;
+import com.kapeta.spring.util.KapetaThreads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the kapeta routes from a separate, lightweight listener.
+ * <p>
+ * Uses the JDK http server with its own small executor so health probes are answered
+ * even when all of the main web server's worker threads are busy with business traffic.
+ */
+public class KapetaManagementServer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(KapetaManagementServer.class);
+
+    public static final String MANAGEMENT_PORT_TYPE = "management";
+
+    private static final int BACKLOG = 16;
+
+    private final KapetaHealthStatus healthStatus;
+
+    private final String host;
+
+    private final int port;
+
+    private final int threads;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    public KapetaManagementServer(KapetaHealthStatus healthStatus, String host, int port, int threads) {
+        this.healthStatus = healthStatus;
+        this.host = host;
+        this.port = port;
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    public void start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), BACKLOG);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to start kapeta management server on %s:%s".formatted(host, port), e);
+        }
+
+        executor = Executors.newFixedThreadPool(threads, KapetaThreads.daemonFactory("kapeta-management"));
+
+        server.setExecutor(executor);
+        server.createContext(KapetaApplicationInitializer.HEALTH_CHECK_ENDPOINT, exchange -> respond(exchange, healthStatus.getResponse()));
+        server.createContext(KapetaApplicationInitializer.READINESS_CHECK_ENDPOINT, exchange -> respond(exchange, healthStatus.getReadinessResponse()));
+        server.start();
+
+        log.info("Kapeta management server listening on {}:{}", host, server.getAddress().getPort());
+    }
+
+    private void respond(HttpExchange exchange, KapetaHealthStatus.HealthResponse health) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if ("HEAD".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(health.status(), -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(health.status(), health.body().length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(health.body());
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * The port the server is bound to - or -1 if not running
+     */
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.rest.limiter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that adapts to the observed request latency.
+ * <p>
+ * Uses a gradient algorithm: a long term average of the latency is compared to the average of the latest window of
+ * samples (at least one sample per permit in the current limit). While latency
+ * stays within {@code tolerance} of the long term average the limit grows by roughly sqrt(limit). When latency
+ * increases - e.g. because a database is slowing down - the limit shrinks proportionally so requests fail fast
+ * instead of queueing up.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int LONG_WINDOW = 600;
+
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    private static final double SMOOTHING = 0.2;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private volatile double limit;
+
+    private double longRtt;
+
+    private double windowRttSum;
+
+    private int windowSamples;
+
+    private int windowMaxInflight;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits: min %s, max %s".formatted(minLimit, maxLimit));
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = Math.max(1.0, tolerance);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Tries to acquire a permit. Returns false if the limit has been reached - in which case
+     * {@link #release} must not be called.
+     */
+    public boolean tryAcquire() {
+        if (inflight.incrementAndGet() > (int) limit) {
+            inflight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a permit acquired using {@link #tryAcquire()} and records the latency of the request
+     */
+    public void release(long rttNanos) {
+        var current = inflight.getAndDecrement();
+        if (rttNanos > 0) {
+            onSample(rttNanos, current);
+        }
+    }
+
+    private synchronized void onSample(long rttNanos, int inflightAtRelease) {
+        windowRttSum += rttNanos;
+        windowSamples++;
+        windowMaxInflight = Math.max(windowMaxInflight, inflightAtRelease);
+
+        var currentLimit = limit;
+        if (windowSamples < Math.max(MIN_WINDOW_SAMPLES, (int) currentLimit)) {
+            return;
+        }
+
+        var shortRtt = windowRttSum / windowSamples;
+        var maxInflight = windowMaxInflight;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInflight = 0;
+
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) / LONG_WINDOW;
+        }
+
+        // Don't remember a slow period forever once latency has recovered
+        if (longRtt > shortRtt * 2) {
+            longRtt *= 0.95;
+        }
+
+        // When we're not using most of the limit the latency says nothing about whether the limit is too high
+        if (maxInflight < currentLimit / 2) {
+            return;
+        }
+
+        var gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        var newLimit = currentLimit * gradient + Math.sqrt(currentLimit);
+        newLimit = currentLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+}
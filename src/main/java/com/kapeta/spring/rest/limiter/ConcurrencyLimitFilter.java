@@ -0,0 +1,137 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.rest.limiter;
+
+import com.kapeta.spring.health.KapetaHealthStatus;
+import com.kapeta.spring.util.KapetaThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent requests using an {@link AdaptiveConcurrencyLimiter}.
+ * <p>
+ * Requests above the limit are rejected right away with 503 and a Retry-After header. While requests are
+ * being rejected the "overload" readiness gate is closed so the platform can route traffic to other instances.
+ * It is opened again once no requests have been rejected for the recovery period.
+ * <p>
+ * The kapeta routes are never limited.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    public static final String READINESS_GATE = "overload";
+
+    private static final String KAPETA_ROUTES_PREFIX = "/.kapeta/";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final KapetaHealthStatus healthStatus;
+
+    private final String retryAfterSeconds;
+
+    private final long recoveryPeriodNanos;
+
+    private final ScheduledExecutorService recoveryExecutor;
+
+    private final Counter rejected;
+
+    private volatile boolean saturated;
+
+    private volatile long lastRejection;
+
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimiter limiter, KapetaHealthStatus healthStatus, MeterRegistry meterRegistry, Duration retryAfter, Duration recoveryPeriod) {
+        this.limiter = limiter;
+        this.healthStatus = healthStatus;
+        this.retryAfterSeconds = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        this.recoveryPeriodNanos = recoveryPeriod.toNanos();
+
+        if (meterRegistry != null) {
+            Gauge.builder("kapeta.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("Current adaptive concurrency limit")
+                    .register(meterRegistry);
+            Gauge.builder("kapeta.limiter.inflight", limiter, AdaptiveConcurrencyLimiter::getInflight)
+                    .description("Requests currently being processed")
+                    .register(meterRegistry);
+            rejected = Counter.builder("kapeta.limiter.rejected")
+                    .description("Requests rejected because the concurrency limit was reached")
+                    .register(meterRegistry);
+        } else {
+            rejected = null;
+        }
+
+        // Traffic may stop completely while we're not ready - so recovery can't depend on requests coming in
+        recoveryExecutor = Executors.newSingleThreadScheduledExecutor(KapetaThreads.singleDaemonFactory("kapeta-limiter"));
+        recoveryExecutor.scheduleWithFixedDelay(this::checkRecovered, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith(KAPETA_ROUTES_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        if (!limiter.tryAcquire()) {
+            onRejected();
+            response.setHeader("Retry-After", retryAfterSeconds);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Service overloaded");
+            return;
+        }
+
+        var start = System.nanoTime();
+        var failed = false;
+        try {
+            filterChain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            failed = true;
+            throw e;
+        } finally {
+            // Failures are often fast and would make the latency look better than it is
+            limiter.release(failed ? 0 : System.nanoTime() - start);
+        }
+    }
+
+    private void onRejected() {
+        lastRejection = System.nanoTime();
+        if (rejected != null) {
+            rejected.increment();
+        }
+
+        if (!saturated) {
+            saturated = true;
+            log.warn("Concurrency limit of {} reached - rejecting requests", limiter.getLimit());
+            healthStatus.setReady(READINESS_GATE, false);
+        }
+    }
+
+    private void checkRecovered() {
+        if (saturated && System.nanoTime() - lastRejection > recoveryPeriodNanos) {
+            saturated = false;
+            log.info("No longer overloaded - current concurrency limit is {}", limiter.getLimit());
+            healthStatus.setReady(READINESS_GATE, true);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        recoveryExecutor.shutdownNow();
+        super.destroy();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security;
+
+import io.micrometer.context.ContextRegistry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Holds the authorization of the request currently being handled by this thread.
+ * <p>
+ * The value is captured once per request by {@link AuthorizationForwarderFilter} and carried to other threads
+ * by wrapping the work submitted to them - e.g. using {@link AuthorizationContextTaskDecorator} for @Async executors,
+ * {@link #wrap(Executor)} for CompletableFuture chains and virtual thread executors or the micrometer context
+ * propagation library (registered under {@link #CONTEXT_KEY}).
+ * <p>
+ * An InheritableThreadLocal is deliberately not used: pooled threads created while handling a request
+ * would keep that request's authorization and leak it into unrelated work.
+ */
+public final class AuthorizationContext {
+
+    public static final String CONTEXT_KEY = "kapeta.authorization";
+
+    private static final ThreadLocal<AuthorizationForwarder> CURRENT = new ThreadLocal<>();
+
+    static {
+        ContextRegistry.getInstance().registerThreadLocalAccessor(
+                CONTEXT_KEY,
+                AuthorizationContext::get,
+                AuthorizationContext::set,
+                AuthorizationContext::clear
+        );
+    }
+
+    private AuthorizationContext() {
+    }
+
+    /**
+     * The authorization of the current request - or null if there is none
+     */
+    public static AuthorizationForwarder get() {
+        return CURRENT.get();
+    }
+
+    public static void set(AuthorizationForwarder forwarder) {
+        if (forwarder == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(forwarder);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static Runnable wrap(Runnable task) {
+        var captured = CURRENT.get();
+        return () -> {
+            var previous = CURRENT.get();
+            set(captured);
+            try {
+                task.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        var captured = CURRENT.get();
+        return () -> {
+            var previous = CURRENT.get();
+            set(captured);
+            try {
+                return task.call();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    public static <T> Supplier<T> wrap(Supplier<T> task) {
+        var captured = CURRENT.get();
+        return () -> {
+            var previous = CURRENT.get();
+            set(captured);
+            try {
+                return task.get();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    /**
+     * Wraps an executor so all tasks run with the authorization that was current when they were submitted.
+     * <p>
+     * E.g.: CompletableFuture.supplyAsync(this::loadUser, AuthorizationContext.wrap(executor))
+     */
+    public static Executor wrap(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    /**
+     * Forwarder for a captured authorization header value
+     */
+    public static final class HeaderValue implements AuthorizationForwarder {
+        private final String header;
+        private final String value;
+
+        public HeaderValue(String header, String value) {
+            this.header = header;
+            this.value = value;
+        }
+
+        @Override
+        public String getAuthorizationHeader() {
+            return header;
+        }
+
+        @Override
+        public String getAuthorizationValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Propagates the {@link AuthorizationContext} to tasks run by spring managed executors - e.g. @Async methods
+ */
+public class AuthorizationContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return AuthorizationContext.wrap(runnable);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Captures the Authorization header of incoming requests into the {@link AuthorizationContext}
+ * so it can be forwarded to other services.
+ */
+public class AuthorizationForwarderFilter extends OncePerRequestFilter {
+
+    private final String headerName;
+
+    public AuthorizationForwarderFilter() {
+        this(HttpHeaders.AUTHORIZATION);
+    }
+
+    public AuthorizationForwarderFilter(String headerName) {
+        this.headerName = headerName;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        var value = request.getHeader(headerName);
+        if (!StringUtils.hasText(value)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        var previous = AuthorizationContext.get();
+        AuthorizationContext.set(new AuthorizationContext.HeaderValue(headerName, value));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            AuthorizationContext.set(previous);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security;
+
+/**
+ * Forwards the authorization of the request currently being handled.
+ * <p>
+ * Returns null when there is no authorization - e.g. outside a request or if the request had none.
+ */
+public class RequestAuthorizationForwarderSupplier implements AuthorizationForwarderSupplier {
+
+    @Override
+    public AuthorizationForwarder get() {
+        return AuthorizationContext.get();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security.jwt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapeta.spring.util.KapetaThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.kapeta.spring.config.KapetaDefaultConfig.createDefaultObjectMapper;
+
+/**
+ * Public keys loaded from a JWKS document (RFC 7517).
+ * <p>
+ * Supports RSA and EC (P-256, P-384 and P-521) keys. The document is loaded up front and - if a refresh interval
+ * is given - reloaded in the background. If loading fails the previously loaded keys are kept.
+ */
+public class JwksKeySource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JwksKeySource.class);
+
+    private static final Duration MIN_UNKNOWN_KEY_RELOAD_INTERVAL = Duration.ofSeconds(30);
+
+    private final ObjectMapper objectMapper = createDefaultObjectMapper();
+
+    private final Callable<String> loader;
+
+    private final ScheduledExecutorService executor;
+
+    private final long unknownKeyReloadInterval;
+
+    private volatile Map<String, Jwk> keys = Collections.emptyMap();
+
+    private volatile long lastLoad;
+
+    /**
+     * @param loader          loads the JWKS json document
+     * @param refreshInterval how often to reload the document - or null to only load it once
+     */
+    public JwksKeySource(Callable<String> loader, Duration refreshInterval) {
+        this(loader, refreshInterval, MIN_UNKNOWN_KEY_RELOAD_INTERVAL, null);
+    }
+
+    JwksKeySource(Callable<String> loader, Duration refreshInterval, Duration unknownKeyReloadInterval, Map<String, Jwk> initialKeys) {
+        this.loader = loader;
+        this.unknownKeyReloadInterval = unknownKeyReloadInterval.toNanos();
+        // Nano times can be negative - so start out as if the last load was long enough ago
+        this.lastLoad = System.nanoTime() - this.unknownKeyReloadInterval;
+        if (initialKeys != null) {
+            setKeys(initialKeys);
+        } else if (!reload()) {
+            throw new IllegalStateException("Failed to load initial JWKS document");
+        }
+
+        if (refreshInterval != null && !refreshInterval.isZero()) {
+            executor = Executors.newSingleThreadScheduledExecutor(KapetaThreads.singleDaemonFactory("kapeta-jwks"));
+            executor.scheduleWithFixedDelay(this::reload, refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    public static JwksKeySource fromFile(Path file, Duration refreshInterval) {
+        return new JwksKeySource(() -> Files.readString(file), refreshInterval);
+    }
+
+    public static JwksKeySource fromJson(String jwksJson) {
+        return new JwksKeySource(() -> jwksJson, null);
+    }
+
+    /**
+     * Creates a key source from already known keys - e.g. locally generated keys in tests
+     */
+    public static JwksKeySource fromKeys(Map<String, PublicKey> keys) {
+        var jwks = new HashMap<String, Jwk>();
+        keys.forEach((kid, key) -> jwks.put(kid, new Jwk(kid, null, key)));
+        return new JwksKeySource(() -> null, null, MIN_UNKNOWN_KEY_RELOAD_INTERVAL, jwks);
+    }
+
+    /**
+     * Gets the key with the given id. If the id is null and there is exactly one key that key is returned.
+     * <p>
+     * An unknown key id causes the document to be reloaded - rate limited - to pick up rotated keys.
+     */
+    public Jwk getKey(String kid) {
+        var key = findKey(kid);
+        if (key == null && System.nanoTime() - lastLoad >= unknownKeyReloadInterval) {
+            reload();
+            key = findKey(kid);
+        }
+        return key;
+    }
+
+    private Jwk findKey(String kid) {
+        var current = keys;
+        if (kid == null) {
+            return current.size() == 1 ? current.values().iterator().next() : null;
+        }
+        return current.get(kid);
+    }
+
+    /**
+     * Reloads the JWKS document. Returns false if it could not be loaded
+     */
+    public synchronized boolean reload() {
+        lastLoad = System.nanoTime();
+        try {
+            var json = loader.call();
+            if (json == null) {
+                return true;
+            }
+            setKeys(parse(objectMapper.readTree(json)));
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to load JWKS document - keeping {} previously loaded keys", keys.size(), e);
+            return false;
+        }
+    }
+
+    private void setKeys(Map<String, Jwk> keys) {
+        this.keys = Collections.unmodifiableMap(keys);
+    }
+
+    private static Map<String, Jwk> parse(JsonNode document) throws IOException {
+        var keysNode = document.get("keys");
+        if (keysNode == null || !keysNode.isArray()) {
+            throw new IOException("JWKS document has no keys");
+        }
+
+        var out = new HashMap<String, Jwk>();
+        var index = 0;
+        for (JsonNode node : keysNode) {
+            index++;
+            if (node.has("use") && !"sig".equals(node.get("use").asText())) {
+                continue;
+            }
+
+            var kid = node.has("kid") ? node.get("kid").asText() : "key-" + index;
+            var alg = node.has("alg") ? node.get("alg").asText() : null;
+            try {
+                var key = toPublicKey(node);
+                if (key != null) {
+                    out.put(kid, new Jwk(kid, alg, key));
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                log.warn("Ignoring invalid JWK: {}", kid, e);
+            }
+        }
+        return out;
+    }
+
+    private static PublicKey toPublicKey(JsonNode node) throws GeneralSecurityException {
+        var kty = node.path("kty").asText();
+        return switch (kty) {
+            case "RSA" -> KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                    decodeInteger(node, "n"),
+                    decodeInteger(node, "e")
+            ));
+            case "EC" -> {
+                var curve = switch (node.path("crv").asText()) {
+                    case "P-256" -> "secp256r1";
+                    case "P-384" -> "secp384r1";
+                    case "P-521" -> "secp521r1";
+                    default -> throw new IllegalArgumentException("Unsupported curve: " + node.path("crv").asText());
+                };
+                var parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(curve));
+                var point = new ECPoint(decodeInteger(node, "x"), decodeInteger(node, "y"));
+                yield KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+            }
+            default -> {
+                log.debug("Ignoring unsupported key type: {}", kty);
+                yield null;
+            }
+        };
+    }
+
+    private static BigInteger decodeInteger(JsonNode node, String field) {
+        if (!node.hasNonNull(field)) {
+            throw new IllegalArgumentException("Missing JWK field: " + field);
+        }
+        return new BigInteger(1, Base64.getUrlDecoder().decode(node.get(field).asText()));
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A single public key - alg is null if the JWK did not restrict the algorithm
+     */
+    public record Jwk(String kid, String alg, PublicKey key) {
+    }
+}
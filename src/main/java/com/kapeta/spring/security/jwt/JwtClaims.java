@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security.jwt;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The verified claims of a JWT
+ */
+public class JwtClaims {
+
+    private final Map<String, Object> claims;
+
+    public JwtClaims(Map<String, Object> claims) {
+        this.claims = Collections.unmodifiableMap(claims);
+    }
+
+    public Map<String, Object> asMap() {
+        return claims;
+    }
+
+    public Object get(String name) {
+        return claims.get(name);
+    }
+
+    public String getString(String name) {
+        var value = claims.get(name);
+        return value != null ? value.toString() : null;
+    }
+
+    public String getSubject() {
+        return getString("sub");
+    }
+
+    public String getIssuer() {
+        return getString("iss");
+    }
+
+    /**
+     * The "aud" claim - which can be either a single value or a list
+     */
+    public List<String> getAudience() {
+        var value = claims.get("aud");
+        if (value == null) {
+            return List.of();
+        }
+        if (value instanceof Collection<?> values) {
+            return values.stream().map(String::valueOf).toList();
+        }
+        return List.of(value.toString());
+    }
+
+    public Instant getExpiresAt() {
+        return getInstant("exp");
+    }
+
+    public Instant getNotBefore() {
+        return getInstant("nbf");
+    }
+
+    public Instant getIssuedAt() {
+        return getInstant("iat");
+    }
+
+    private Instant getInstant(String name) {
+        var value = claims.get(name);
+        if (value instanceof Number number) {
+            return Instant.ofEpochSecond(number.longValue());
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "JwtClaims" + claims;
+    }
+}
@@ -0,0 +1,16 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security.jwt;
+
+public class JwtVerificationException extends Exception {
+
+    public JwtVerificationException(String message) {
+        super(message);
+    }
+
+    public JwtVerificationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security.jwt;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.kapeta.spring.config.KapetaDefaultConfig.createDefaultObjectMapper;
+
+/**
+ * Verifies JWTs locally against the keys of a {@link JwksKeySource}.
+ * <p>
+ * Supports the RS256/384/512 and ES256/384/512 algorithms. Verified tokens are kept in a bounded cache - keyed by
+ * the SHA-256 hash of the token - until they expire so tokens forwarded on every request are only verified once.
+ */
+public class JwtVerifier {
+
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    public static final Duration DEFAULT_CLOCK_SKEW = Duration.ofSeconds(30);
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = createDefaultObjectMapper();
+
+    private final JwksKeySource keySource;
+
+    private final String issuer;
+
+    private final String audience;
+
+    private final Duration clockSkew;
+
+    private final Clock clock;
+
+    private final Map<String, CachedClaims> cache;
+
+    public JwtVerifier(JwksKeySource keySource, String issuer, String audience) {
+        this(keySource, issuer, audience, DEFAULT_CACHE_SIZE, DEFAULT_CLOCK_SKEW, Clock.systemUTC());
+    }
+
+    /**
+     * @param issuer    the required "iss" claim - or null to accept any issuer
+     * @param audience  a required entry in the "aud" claim - or null to accept any audience
+     * @param cacheSize max number of verified tokens to remember - 0 disables the cache
+     */
+    public JwtVerifier(JwksKeySource keySource, String issuer, String audience, int cacheSize, Duration clockSkew, Clock clock) {
+        this.keySource = keySource;
+        this.issuer = issuer;
+        this.audience = audience;
+        this.clockSkew = clockSkew;
+        this.clock = clock;
+        this.cache = cacheSize > 0 ? new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedClaims> eldest) {
+                return size() > cacheSize;
+            }
+        } : null;
+    }
+
+    /**
+     * Verifies the token of an Authorization header value - e.g. "Bearer eyJ..."
+     */
+    public JwtClaims verifyAuthorizationHeader(String authorization) throws JwtVerificationException {
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            throw new JwtVerificationException("Missing bearer token");
+        }
+        return verify(authorization.substring(BEARER_PREFIX.length()).trim());
+    }
+
+    /**
+     * Verifies the signature and the time, issuer and audience claims of the token
+     */
+    public JwtClaims verify(String token) throws JwtVerificationException {
+        if (token == null || token.isEmpty()) {
+            throw new JwtVerificationException("Missing token");
+        }
+
+        var now = clock.millis();
+        var cacheKey = cache != null ? hash(token) : null;
+        if (cacheKey != null) {
+            CachedClaims cached;
+            synchronized (cache) {
+                cached = cache.get(cacheKey);
+            }
+            if (cached != null) {
+                if (now < cached.expiresAt()) {
+                    return cached.claims();
+                }
+                synchronized (cache) {
+                    cache.remove(cacheKey);
+                }
+            }
+        }
+
+        var claims = verifyUncached(token, now);
+        if (cacheKey != null) {
+            var expiresAt = claims.getExpiresAt();
+            // Tokens without exp are valid forever - but we still want a rotated key to take effect
+            var cacheUntil = expiresAt != null
+                    ? expiresAt.toEpochMilli() + clockSkew.toMillis()
+                    : now + Duration.ofMinutes(5).toMillis();
+            synchronized (cache) {
+                cache.put(cacheKey, new CachedClaims(claims, cacheUntil));
+            }
+        }
+        return claims;
+    }
+
+    private JwtClaims verifyUncached(String token, long now) throws JwtVerificationException {
+        var firstDot = token.indexOf('.');
+        var lastDot = token.lastIndexOf('.');
+        if (firstDot < 0 || lastDot == firstDot) {
+            throw new JwtVerificationException("Malformed token");
+        }
+
+        Map<String, Object> header;
+        Map<String, Object> payload;
+        byte[] signature;
+        try {
+            var decoder = Base64.getUrlDecoder();
+            header = objectMapper.readValue(decoder.decode(token.substring(0, firstDot)), MAP_TYPE);
+            payload = objectMapper.readValue(decoder.decode(token.substring(firstDot + 1, lastDot)), MAP_TYPE);
+            signature = decoder.decode(token.substring(lastDot + 1));
+        } catch (Exception e) {
+            throw new JwtVerificationException("Malformed token", e);
+        }
+
+        var alg = String.valueOf(header.get("alg"));
+        var kid = header.get("kid") != null ? header.get("kid").toString() : null;
+        var key = keySource.getKey(kid);
+        if (key == null) {
+            throw new JwtVerificationException("Unknown key: " + kid);
+        }
+        if (key.alg() != null && !key.alg().equals(alg)) {
+            throw new JwtVerificationException("Algorithm %s not allowed for key %s".formatted(alg, kid));
+        }
+
+        try {
+            var verifier = Signature.getInstance(toJcaAlgorithm(alg));
+            verifier.initVerify(key.key());
+            verifier.update(token.substring(0, lastDot).getBytes(StandardCharsets.US_ASCII));
+            if (!verifier.verify(signature)) {
+                throw new JwtVerificationException("Invalid signature");
+            }
+        } catch (GeneralSecurityException e) {
+            throw new JwtVerificationException("Invalid signature", e);
+        }
+
+        var claims = new JwtClaims(payload);
+        var skew = clockSkew.toMillis();
+        if (claims.getExpiresAt() != null && now >= claims.getExpiresAt().toEpochMilli() + skew) {
+            throw new JwtVerificationException("Token expired");
+        }
+        if (claims.getNotBefore() != null && now < claims.getNotBefore().toEpochMilli() - skew) {
+            throw new JwtVerificationException("Token not yet valid");
+        }
+        if (issuer != null && !issuer.equals(claims.getIssuer())) {
+            throw new JwtVerificationException("Invalid issuer: " + claims.getIssuer());
+        }
+        if (audience != null && !claims.getAudience().contains(audience)) {
+            throw new JwtVerificationException("Invalid audience: " + claims.getAudience());
+        }
+        return claims;
+    }
+
+    private static String toJcaAlgorithm(String alg) throws JwtVerificationException {
+        return switch (alg) {
+            case "RS256" -> "SHA256withRSA";
+            case "RS384" -> "SHA384withRSA";
+            case "RS512" -> "SHA512withRSA";
+            // JWS uses the raw r|s concatenation rather than DER
+            case "ES256" -> "SHA256withECDSAinP1363Format";
+            case "ES384" -> "SHA384withECDSAinP1363Format";
+            case "ES512" -> "SHA512withECDSAinP1363Format";
+            default -> throw new JwtVerificationException("Unsupported algorithm: " + alg);
+        };
+    }
+
+    private static String hash(String token) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record CachedClaims(JwtClaims claims, long expiresAt) {
+    }
+}
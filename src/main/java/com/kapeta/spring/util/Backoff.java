@@ -0,0 +1,27 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.util;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff between retries - doubling from the initial delay up to the max delay - with jitter so
+ * instances started together don't retry in lockstep.
+ */
+public record Backoff(Duration initial, Duration max) {
+
+    private static final double MIN_JITTER = 0.8;
+
+    private static final double MAX_JITTER = 1.2;
+
+    /**
+     * The delay in milliseconds before the next attempt - given the number of consecutive failures before the last one
+     */
+    public long delayMillis(int attempt) {
+        var backoff = Math.min(max.toMillis(), initial.toMillis() << Math.min(Math.max(attempt, 0), 20));
+        return (long) (backoff * ThreadLocalRandom.current().nextDouble(MIN_JITTER, MAX_JITTER));
+    }
+}
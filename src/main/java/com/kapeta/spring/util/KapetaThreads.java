@@ -0,0 +1,48 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the background threads of the SDK - daemon threads named kapeta-* so they never keep the JVM alive
+ * and are easy to recognise in thread dumps.
+ */
+public final class KapetaThreads {
+
+    private KapetaThreads() {
+    }
+
+    /**
+     * Creates daemon threads named [prefix]-1, [prefix]-2 etc. - for thread pools
+     */
+    public static ThreadFactory daemonFactory(String prefix) {
+        var threadCount = new AtomicInteger();
+        return runnable -> daemon(runnable, prefix + "-" + threadCount.incrementAndGet());
+    }
+
+    /**
+     * Creates daemon threads all named [name] - for single thread executors
+     */
+    public static ThreadFactory singleDaemonFactory(String name) {
+        return runnable -> daemon(runnable, name);
+    }
+
+    /**
+     * Starts a daemon thread with the given name running the task
+     */
+    public static Thread startDaemon(String name, Runnable task) {
+        var thread = daemon(task, name);
+        thread.start();
+        return thread;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
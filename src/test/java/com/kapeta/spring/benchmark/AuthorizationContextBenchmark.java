@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.benchmark;
+
+import com.kapeta.spring.security.AuthorizationContext;
+import com.kapeta.spring.security.AuthorizationForwarder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead {@link AuthorizationContext} adds to every hop between threads - capturing the
+ * authorization when a task is wrapped and restoring it around the task - compared to running the task directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationContextBenchmark {
+
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        AuthorizationContext.set(new AuthorizationContext.HeaderValue("Authorization", "Bearer benchmark"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        AuthorizationContext.clear();
+    }
+
+    @Benchmark
+    public void directHop() {
+        Runnable task = this::readAuthorization;
+        task.run();
+    }
+
+    @Benchmark
+    public void wrappedHop() {
+        AuthorizationContext.wrap((Runnable) this::readAuthorization).run();
+    }
+
+    @Benchmark
+    public AuthorizationForwarder lookup() {
+        return AuthorizationContext.get();
+    }
+
+    private void readAuthorization() {
+        blackhole.consume(AuthorizationContext.get());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuthorizationContextBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.benchmark;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapeta.spring.config.KapetaDefaultConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the CPU cost of the JSON, Smile and CBOR mappers - see "Binary encodings" in the README.
+ * <p>
+ * The payload size of each encoding is printed when the benchmark is set up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryCodecsBenchmark {
+
+    public record Item(UUID id, String name, String description, Instant created, Instant updated,
+                       long count, double price, boolean active, List<String> tags) {
+    }
+
+    @Param({"json", "smile", "cbor"})
+    public String encoding;
+
+    @Param({"1000"})
+    public int items;
+
+    private ObjectMapper mapper;
+
+    private JavaType type;
+
+    private List<Item> payload;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        mapper = switch (encoding) {
+            case "json" -> KapetaDefaultConfig.createDefaultObjectMapper();
+            case "smile" -> KapetaDefaultConfig.createDefaultSmileMapper();
+            case "cbor" -> KapetaDefaultConfig.createDefaultCborMapper();
+            default -> throw new IllegalArgumentException("Unknown encoding: " + encoding);
+        };
+        type = mapper.getTypeFactory().constructCollectionType(List.class, Item.class);
+
+        payload = new ArrayList<>(items);
+        var now = Instant.parse("2023-11-01T12:00:00Z");
+        for (int i = 0; i < items; i++) {
+            payload.add(new Item(
+                    new UUID(i, i * 31L),
+                    "item-" + i,
+                    "Description of item number " + i,
+                    now.minusSeconds(i * 60L),
+                    now,
+                    i * 7L,
+                    i * 1.25,
+                    i % 2 == 0,
+                    List.of("tag-" + (i % 5), "tag-" + (i % 7))
+            ));
+        }
+        encoded = mapper.writeValueAsBytes(payload);
+        System.out.printf("%n%s payload: %d bytes for %d items%n", encoding, encoded.length, items);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return mapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public List<Item> deserialize() throws Exception {
+        return mapper.readValue(encoded, type);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BinaryCodecsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
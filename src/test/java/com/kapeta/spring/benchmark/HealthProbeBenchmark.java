@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapeta.spring.config.KapetaDefaultConfig;
+import com.kapeta.spring.health.KapetaHealthStatus;
+import com.kapeta.spring.rest.KapetaController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the health probe with many concurrent callers - writing the response pre-encoded by
+ * {@link KapetaHealthStatus} compared to encoding it with the object mapper on every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class HealthProbeBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private KapetaController controller;
+
+    @Setup
+    public void setup() {
+        objectMapper = KapetaDefaultConfig.createDefaultObjectMapper();
+        controller = new KapetaController(new KapetaHealthStatus(objectMapper, List.of(), Duration.ofSeconds(5)));
+    }
+
+    @Benchmark
+    public MockHttpServletResponse preEncoded() throws Exception {
+        var response = new MockHttpServletResponse();
+        controller.health(response);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse encodedPerRequest() throws Exception {
+        var response = new MockHttpServletResponse();
+        response.setHeader("Content-Type", "application/json");
+        response.setStatus(200);
+        objectMapper.writeValue(response.getWriter(), new KapetaController.Health());
+        response.flushBuffer();
+        return response;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HealthProbeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
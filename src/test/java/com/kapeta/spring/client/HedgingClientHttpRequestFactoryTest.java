@@ -0,0 +1,230 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hedges requests against a stub request factory where each request responds after a given delay
+ */
+class HedgingClientHttpRequestFactoryTest {
+
+    private static final URI TARGET = URI.create("http://provider/items");
+
+    private static final long SLOW = 5_000;
+
+    private final List<AutoCloseable> closeables = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void close() throws Exception {
+        for (var closeable : closeables) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void abortsTheLosingRequest() throws Exception {
+        var delegate = new StubRequestFactory(attempt -> attempt == 0 ? new StubRequest("primary", SLOW) : new StubRequest("hedge", 0));
+        var factory = createFactory(delegate, new HedgingPolicy(Duration.ofMillis(20), false, 100), null, 100);
+
+        assertEquals("hedge", execute(factory));
+        var primary = delegate.requests.get(0);
+        assertTrue(primary.done.await(5, TimeUnit.SECONDS), "Losing request wasn't aborted");
+        assertTrue(primary.cancelled);
+        assertFalse(delegate.requests.get(1).cancelled);
+    }
+
+    @Test
+    void closesTheLosingResponse() throws Exception {
+        var primary = new StubRequest("primary", SLOW);
+        primary.cancellable = false;
+        var delegate = new StubRequestFactory(attempt -> attempt == 0 ? primary : new StubRequest("hedge", 0));
+        var factory = createFactory(delegate, new HedgingPolicy(Duration.ofMillis(20), false, 100), null, 100);
+
+        assertEquals("hedge", execute(factory));
+        assertFalse(primary.response.closed.await(100, TimeUnit.MILLISECONDS), "Closed before it arrived");
+
+        // Responds after the hedged request won
+        primary.done.countDown();
+        assertTrue(primary.response.closed.await(5, TimeUnit.SECONDS), "Losing response wasn't closed");
+    }
+
+    @Test
+    void limitsHedgedRequestsToTheBudget() throws Exception {
+        var delegate = new StubRequestFactory(attempt -> new StubRequest("response", 50));
+        var meterRegistry = new SimpleMeterRegistry();
+        // No budget is added - so only the initial tokens can be spent
+        var factory = createFactory(delegate, new HedgingPolicy(Duration.ofMillis(5), false, 0), meterRegistry, 100);
+
+        for (int i = 0; i < 12; i++) {
+            assertEquals("response", execute(factory));
+        }
+
+        assertEquals(10.0, meterRegistry.get("kapeta.client.hedged.requests").tag("result", "sent").counter().count());
+        assertEquals(10 * 2 + 2, delegate.requests.size());
+    }
+
+    @Test
+    void sendsFromTheCallingThreadWhenAllThreadsAreBusy() throws Exception {
+        var delegate = new StubRequestFactory(attempt -> attempt == 0 ? new StubRequest("busy", SLOW) : new StubRequest("direct", 0));
+        var factory = createFactory(delegate, new HedgingPolicy(Duration.ofMillis(5), false, 100), null, 1);
+
+        var background = Executors.newSingleThreadExecutor();
+        closeables.add(background::shutdownNow);
+        var busy = background.submit(() -> execute(factory));
+        assertTrue(delegate.started.await(5, TimeUnit.SECONDS));
+        // Wait for the hedge of the busy request to be rejected as well
+        Thread.sleep(50);
+
+        assertEquals("direct", execute(factory));
+        assertSame(Thread.currentThread(), delegate.requests.get(1).executedBy);
+
+        delegate.requests.get(0).done.countDown();
+        assertEquals("busy", busy.get(5, TimeUnit.SECONDS));
+        // Neither request was hedged
+        assertEquals(2, delegate.requests.size());
+    }
+
+    @Test
+    void usesTheP95LatencyOnceEnoughRequestsWereSeen() throws Exception {
+        var delegate = new StubRequestFactory(attempt -> new StubRequest("response", 0));
+        var factory = createFactory(delegate, new HedgingPolicy(Duration.ofSeconds(1), true, 5), null, 100);
+
+        for (int i = 0; i < 99; i++) {
+            execute(factory);
+        }
+        assertEquals(Duration.ofSeconds(1).toNanos(), factory.getDelayNanos());
+
+        execute(factory);
+        assertTrue(factory.getDelayNanos() < Duration.ofSeconds(1).toNanos(), "Observed latencies weren't used");
+    }
+
+    private HedgingClientHttpRequestFactory createFactory(ClientHttpRequestFactory delegate, HedgingPolicy policy,
+                                                          SimpleMeterRegistry meterRegistry, int maxThreads) {
+        var factory = new HedgingClientHttpRequestFactory(delegate, policy, null, meterRegistry, "test", maxThreads);
+        closeables.add(factory);
+        return factory;
+    }
+
+    private static String execute(ClientHttpRequestFactory factory) throws IOException {
+        try (var response = factory.createRequest(TARGET, HttpMethod.GET).execute()) {
+            return StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class StubRequestFactory implements ClientHttpRequestFactory {
+
+        private final IntFunction<StubRequest> requestForAttempt;
+
+        private final List<StubRequest> requests = new CopyOnWriteArrayList<>();
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        StubRequestFactory(IntFunction<StubRequest> requestForAttempt) {
+            this.requestForAttempt = requestForAttempt;
+        }
+
+        @Override
+        public synchronized ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+            var request = requestForAttempt.apply(requests.size());
+            request.factory = this;
+            requests.add(request);
+            return request;
+        }
+    }
+
+    /**
+     * Responds after the delay - or once done is counted down. Fails if it was aborted
+     */
+    private static class StubRequest extends MockClientHttpRequest implements Cancellable {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private final StubResponse response;
+
+        private final long delayMillis;
+
+        private StubRequestFactory factory;
+
+        private volatile boolean cancellable = true;
+
+        private volatile boolean cancelled;
+
+        private volatile Thread executedBy;
+
+        StubRequest(String body, long delayMillis) {
+            this.response = new StubResponse(body);
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal() throws IOException {
+            executedBy = Thread.currentThread();
+            factory.started.countDown();
+            try {
+                done.await(delayMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            if (cancelled) {
+                throw new IOException("Aborted");
+            }
+            return response;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!cancellable) {
+                return false;
+            }
+            cancelled = true;
+            done.countDown();
+            return true;
+        }
+    }
+
+    private static class StubResponse extends MockClientHttpResponse {
+
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        StubResponse(String body) {
+            super(body.getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            closed.countDown();
+        }
+    }
+}
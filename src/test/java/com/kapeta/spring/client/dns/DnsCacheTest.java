@@ -0,0 +1,157 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client.dns;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Caches hosts resolved from a temporary hosts file - which is changed or removed while the cache is used
+ */
+class DnsCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private final Path file;
+
+    private DnsCache cache;
+
+    DnsCacheTest() throws Exception {
+        file = Files.createTempDirectory("kapeta-dns").resolve("hosts");
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        if (cache != null) {
+            cache.close();
+        }
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void refreshesAddressesOnceTheTtlHasPassed() throws Exception {
+        writeHosts("10.0.0.1 users");
+        cache = createCache(new DnsCache.Settings(Duration.ofMillis(200), Duration.ofMillis(200), Duration.ofSeconds(1)));
+        assertEquals("10.0.0.1", resolve("users"));
+
+        writeHosts("10.0.0.2 users");
+        // Within the TTL
+        assertEquals("10.0.0.1", resolve("users"));
+        assertEquals(1, lookups.get());
+
+        awaitTrue(() -> "10.0.0.2".equals(resolve("users")), "Addresses weren't refreshed");
+        assertEquals(1.0, meterRegistry.get("kapeta.client.dns.lookups").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void usesStaleAddressesWhileRefreshingFailsUpToMaxStale() throws Exception {
+        writeHosts("10.0.0.1 users");
+        cache = createCache(new DnsCache.Settings(Duration.ofMillis(200), Duration.ofMillis(200), Duration.ofMillis(1000)));
+        assertEquals("10.0.0.1", resolve("users"));
+
+        Files.delete(file);
+        awaitTrue(() -> meterRegistry.get("kapeta.client.dns.refreshes").tag("outcome", "error").counter().count() > 0,
+                "Refresh didn't fail");
+        assertEquals("10.0.0.1", resolve("users"));
+
+        // Once the addresses are older than the TTL plus max stale the failure is reported
+        awaitTrue(() -> failsToResolve("users"), "Stale addresses were used past max stale");
+    }
+
+    @Test
+    void cachesFailedLookupsForTheNegativeTtl() throws Exception {
+        writeHosts("10.0.0.1 users");
+        cache = createCache(new DnsCache.Settings(Duration.ofSeconds(10), Duration.ofMillis(300), Duration.ofSeconds(1)));
+
+        assertThrows(UnknownHostException.class, () -> cache.resolve("orders"));
+        writeHosts("10.0.0.1 users\n10.0.0.3 orders");
+        assertThrows(UnknownHostException.class, () -> cache.resolve("orders"));
+        assertEquals(1, lookups.get());
+        assertEquals(1.0, meterRegistry.get("kapeta.client.dns.lookups").tag("result", "negative").counter().count());
+
+        awaitTrue(() -> !failsToResolve("orders"), "Negative result wasn't refreshed");
+        assertEquals("10.0.0.3", resolve("orders"));
+    }
+
+    @Test
+    void dropsIdleHostsInsteadOfRefreshingThem() throws Exception {
+        writeHosts("10.0.0.1 users");
+        // Idle after 10 TTLs
+        cache = createCache(new DnsCache.Settings(Duration.ofMillis(100), Duration.ofMillis(100), Duration.ofSeconds(1)));
+        assertEquals("10.0.0.1", resolve("users"));
+
+        var size = meterRegistry.get("kapeta.client.dns.cache.size").gauge();
+        assertEquals(1.0, size.value());
+        awaitTrue(() -> size.value() == 0, "Idle host wasn't dropped");
+        // Refreshed a few times before it became idle - but not since
+        var refreshed = lookups.get();
+        Thread.sleep(300);
+        assertEquals(refreshed, lookups.get());
+
+        assertEquals("10.0.0.1", resolve("users"));
+        assertEquals(2.0, meterRegistry.get("kapeta.client.dns.lookups").tag("result", "miss").counter().count());
+    }
+
+    private DnsCache createCache(DnsCache.Settings settings) {
+        var hostsFile = new HostsFileResolver(file);
+        HostResolver counting = host -> {
+            lookups.incrementAndGet();
+            return hostsFile.resolve(host);
+        };
+        return new DnsCache(counting, settings, 1, meterRegistry);
+    }
+
+    private String resolve(String host) {
+        try {
+            InetAddress[] addresses = cache.resolve(host);
+            return addresses[0].getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean failsToResolve(String host) {
+        try {
+            cache.resolve(host);
+            return false;
+        } catch (UnknownHostException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Writes the hosts file - with a new modification time, so it's read again even within the timestamp resolution
+     */
+    private void writeHosts(String content) throws Exception {
+        var previous = Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Math.max(System.currentTimeMillis(), previous + 1000)));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, String message) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.client.dns;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Parses hosts files - only ever accepting IP literals
+ */
+class HostsFileResolverTest {
+
+    @Test
+    void parsesIpv4Literals() throws Exception {
+        assertLiteral("10.0.0.1");
+        assertLiteral("255.255.255.255");
+        assertLiteral("0.0.0.0");
+
+        for (var invalid : List.of("999.1.1.1", "256.0.0.1", "1.2.3", "1.2.3.4.5", "1..2.3", "01.2.3.4", "1.2.3.4 ", "a.b.c.d", "", "1.2.3.-4")) {
+            assertNull(HostsFileResolver.parseIpLiteral(invalid), invalid);
+        }
+    }
+
+    @Test
+    void parsesIpv6Literals() throws Exception {
+        assertLiteral("::1");
+        assertLiteral("::");
+        assertLiteral("fe80::1");
+        assertLiteral("2001:db8:0:0:0:0:2:1");
+        assertLiteral("2001:DB8::2:1");
+        assertLiteral("1:2:3:4:5:6:7::");
+        assertLiteral("::ffff:10.0.0.1");
+        assertLiteral("64:ff9b::192.0.2.33");
+
+        for (var invalid : List.of(":::", "1::2::3", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8::", "12345::1",
+                "::g", "fe80::1%eth0", "::1.2.3", "::999.1.1.1", "1.2.3.4::", ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:")) {
+            assertNull(HostsFileResolver.parseIpLiteral(invalid), invalid);
+        }
+    }
+
+    @Test
+    void rejectsHostNamesAsAddresses() {
+        assertThrows(UnknownHostException.class, () -> HostsFileResolver.parse(List.of("999.1.1.1 users")));
+        assertThrows(UnknownHostException.class, () -> HostsFileResolver.parse(List.of("localhost users")));
+    }
+
+    @Test
+    void parsesHostsWithAliasesAndComments() throws Exception {
+        var hosts = HostsFileResolver.parse(List.of(
+                "# Consumers",
+                "10.0.0.1 users users.local # The users service",
+                "10.0.0.2 Users",
+                "::1 ipv6",
+                "ignored"));
+
+        assertEquals(2, hosts.get("users").length);
+        assertEquals(InetAddress.getByName("10.0.0.1"), hosts.get("users")[0]);
+        assertEquals(InetAddress.getByName("10.0.0.2"), hosts.get("users")[1]);
+        assertEquals("users", hosts.get("users")[0].getHostName());
+        assertEquals(InetAddress.getByName("10.0.0.1"), hosts.get("users.local")[0]);
+        assertEquals(InetAddress.getByName("::1"), hosts.get("ipv6")[0]);
+        assertNull(hosts.get("ignored"));
+    }
+
+    private static void assertLiteral(String ip) throws Exception {
+        // Safe to compare with - the JDK doesn't look up literals either
+        assertEquals(InetAddress.getByName(ip), InetAddress.getByAddress(HostsFileResolver.parseIpLiteral(ip)), ip);
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import com.kapeta.spring.config.providers.LocalClusterServiceConfigProvider;
+import com.kapeta.spring.util.KapetaThreads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the watcher against a stub of the cluster service - over TCP and over a Unix domain socket - pushing
+ * configuration events as server-sent events.
+ */
+class KapetaConfigurationWatcherTest {
+
+    private static final String INITIAL_CONFIG = """
+            {"rateLimit": {"max": 10}, "flags": {"a": true, "b": false}}""";
+
+    private final ClusterServiceStub stub = new ClusterServiceStub();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(KapetaThreads.daemonFactory("cluster-service-stub"));
+
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    private final String userHome = System.getProperty("user.home");
+
+    @BeforeEach
+    void isolateUserHome() throws IOException {
+        // The provider reads ~/.kapeta/cluster-service.yml - which may point at a real cluster service
+        System.setProperty("user.home", Files.createTempDirectory("kapeta-home").toString());
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        for (var closeable : closeables) {
+            closeable.close();
+        }
+        executor.shutdownNow();
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    void appliesOnlyChangedKeysOverHttp() throws Exception {
+        assertAppliesOnlyChangedKeys(createProvider(Map.of(
+                "KAPETA_LOCAL_CLUSTER_HOST", "127.0.0.1",
+                "KAPETA_LOCAL_CLUSTER_PORT", String.valueOf(startHttpServer()))));
+    }
+
+    @Test
+    void reconnectsWhenTheEventStreamGoesQuiet() throws Exception {
+        var provider = createProvider(Map.of(
+                "KAPETA_LOCAL_CLUSTER_HOST", "127.0.0.1",
+                "KAPETA_LOCAL_CLUSTER_PORT", String.valueOf(startHttpServer())));
+        var source = new PropertiesConfigurationSource(provider);
+        // Like a connection that went away without being closed - no events and no heartbeats
+        stub.silent = true;
+
+        var watcher = new KapetaConfigurationWatcher(() -> provider.openEventStream(Duration.ofMillis(300)), provider, source,
+                event -> {}, Duration.ofMillis(50), Duration.ofMillis(200));
+        watcher.start();
+        try {
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (stub.subscriptions.get() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(stub.subscriptions.get() >= 2, "Didn't reconnect after the read timeout");
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    void appliesOnlyChangedKeysOverUnixSocket() throws Exception {
+        var socket = Files.createTempDirectory("kapeta").resolve("cluster.sock");
+        var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        closeables.add(server);
+        closeables.add(() -> Files.deleteIfExists(socket));
+        executor.execute(() -> accept(server));
+
+        // Nothing listens on the port - so requests only succeed over the socket
+        assertAppliesOnlyChangedKeys(createProvider(Map.of(
+                "KAPETA_LOCAL_CLUSTER_HOST", "127.0.0.1",
+                "KAPETA_LOCAL_CLUSTER_PORT", "1",
+                "KAPETA_LOCAL_CLUSTER_SOCKET", socket.toString())));
+    }
+
+    private void assertAppliesOnlyChangedKeys(LocalClusterServiceConfigProvider provider) throws Exception {
+        var source = new PropertiesConfigurationSource(provider);
+        assertEquals("10", String.valueOf(source.getProperty("rate-limit.max")));
+
+        // Changed after the configuration was read - but before subscribing
+        stub.config = """
+                {"rateLimit": {"max": 20}, "flags": {"a": true, "b": false}}""";
+
+        var events = new LinkedBlockingQueue<Object>();
+        var watcher = new KapetaConfigurationWatcher(() -> provider.openEventStream(Duration.ofSeconds(5)), provider, source, events::add,
+                Duration.ofMillis(50), Duration.ofMillis(200));
+        watcher.start();
+        try {
+            assertChangedKeys(events, Set.of("rate-limit.max"));
+            assertEquals("20", source.getProperty("rate-limit.max"));
+            assertEquals("identity", stub.eventsAcceptEncoding, "Event stream may be compressed");
+
+            stub.config = """
+                    {"rateLimit": {"max": 20}, "flags": {"a": false}}""";
+            stub.push(KapetaConfigurationWatcher.EVENT_CONFIG);
+            assertChangedKeys(events, Set.of("flags.a", "flags.b"));
+            assertEquals("20", source.getProperty("rate-limit.max"));
+            assertEquals("false", source.getProperty("flags.a"));
+            assertNull(source.getProperty("flags.b"));
+
+            stub.push(KapetaConfigurationWatcher.EVENT_CONFIG);
+            assertNull(events.poll(300, TimeUnit.MILLISECONDS), "Unchanged configuration published an event");
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    private static void assertChangedKeys(BlockingQueue<Object> events, Set<String> expected) throws InterruptedException {
+        var event = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event, "No configuration change published");
+        assertEquals(expected, assertInstanceOf(KapetaConfigurationChangedEvent.class, event).getChangedKeys());
+    }
+
+    private static LocalClusterServiceConfigProvider createProvider(Map<String, String> properties) throws IOException {
+        var environment = new StandardEnvironment();
+        var testProperties = new HashMap<String, Object>(properties);
+        testProperties.put("KAPETA_LOCAL_SERVER_PORT_REST", "8080");
+        environment.getPropertySources().addFirst(new MapPropertySource("test", testProperties));
+        return new LocalClusterServiceConfigProvider("kapeta/test:local", "system", "instance", environment);
+    }
+
+    /**
+     * Starts the stub on a local port - and returns the port
+     */
+    private int startHttpServer() throws IOException {
+        var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", stub::handle);
+        server.start();
+        closeables.add(() -> server.stop(0));
+        return server.getAddress().getPort();
+    }
+
+    private void accept(ServerSocketChannel server) {
+        while (server.isOpen()) {
+            try {
+                var channel = server.accept();
+                executor.execute(() -> stub.handle(channel));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of the watcher - and streams the pushed events to every subscriber
+     */
+    private static class ClusterServiceStub {
+
+        private final BlockingQueue<String> pushed = new LinkedBlockingQueue<>();
+
+        private final AtomicInteger subscriptions = new AtomicInteger();
+
+        private volatile boolean silent;
+
+        private volatile String config = INITIAL_CONFIG;
+
+        private volatile String eventsAcceptEncoding;
+
+        void push(String eventName) {
+            pushed.add(eventName);
+        }
+
+        private String respond(String path) {
+            return switch (path) {
+                case "/config/identity" -> """
+                        {"systemId": "system", "instanceId": "instance"}""";
+                case "/config/instance" -> config;
+                default -> "";
+            };
+        }
+
+        void handle(HttpExchange exchange) throws IOException {
+            try (exchange) {
+                var path = exchange.getRequestURI().getPath();
+                if (path.equals("/config/events")) {
+                    eventsAcceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                    exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                    exchange.sendResponseHeaders(200, 0);
+                    stream(exchange.getResponseBody(), false);
+                    return;
+                }
+                var body = respond(path).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+                exchange.getResponseBody().write(body);
+            }
+        }
+
+        void handle(SocketChannel channel) {
+            try (channel) {
+                var in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.ISO_8859_1));
+                var path = in.readLine().split(" ")[1];
+                String acceptEncoding = null;
+                String header;
+                // The watcher only sends GET requests - so there's no body after the headers
+                while (!(header = in.readLine()).isEmpty()) {
+                    if (header.toLowerCase(Locale.ROOT).startsWith("accept-encoding:")) {
+                        acceptEncoding = header.substring(header.indexOf(':') + 1).trim();
+                    }
+                }
+                var out = Channels.newOutputStream(channel);
+                if (path.equals("/config/events")) {
+                    eventsAcceptEncoding = acceptEncoding;
+                    out.write("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nTransfer-Encoding: chunked\r\n\r\n"
+                            .getBytes(StandardCharsets.ISO_8859_1));
+                    stream(out, true);
+                    return;
+                }
+                var body = respond(path).getBytes(StandardCharsets.UTF_8);
+                out.write("HTTP/1.1 200 OK\r\nContent-Length: %d\r\n\r\n".formatted(body.length).getBytes(StandardCharsets.ISO_8859_1));
+                out.write(body);
+            } catch (IOException e) {
+                // The watcher closed the connection
+            }
+        }
+
+        private void stream(OutputStream out, boolean chunked) throws IOException {
+            subscriptions.incrementAndGet();
+            try {
+                while (true) {
+                    var eventName = pushed.poll(100, TimeUnit.MILLISECONDS);
+                    if (silent) {
+                        continue;
+                    }
+                    // Heartbeats notice when the watcher has gone away
+                    var event = eventName != null ? "event: " + eventName + "\ndata: {}\n\n" : ": heartbeat\n\n";
+                    var bytes = event.getBytes(StandardCharsets.UTF_8);
+                    if (chunked) {
+                        out.write((Integer.toHexString(bytes.length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                        out.write(bytes);
+                        out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                    } else {
+                        out.write(bytes);
+                    }
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
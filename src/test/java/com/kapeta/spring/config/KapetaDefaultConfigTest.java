@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the binary converters Spring adds by default are only used when enabled - and then configured like the
+ * default object mapper.
+ */
+class KapetaDefaultConfigTest {
+
+    @Test
+    void removesDefaultBinaryConvertersUnlessEnabled() {
+        var converters = new RestTemplate().getMessageConverters();
+        // Spring adds these whenever the jars are on the classpath
+        assertEquals(1, count(converters, MappingJackson2SmileHttpMessageConverter.class));
+        assertEquals(1, count(converters, MappingJackson2CborHttpMessageConverter.class));
+
+        KapetaDefaultConfig.configureBinaryMessageConverters(converters, false);
+
+        assertEquals(0, count(converters, MappingJackson2SmileHttpMessageConverter.class));
+        assertEquals(0, count(converters, MappingJackson2CborHttpMessageConverter.class));
+        assertEquals(1, count(converters, MappingJackson2HttpMessageConverter.class));
+    }
+
+    @Test
+    void replacesDefaultBinaryConvertersInPlace() {
+        var converters = new RestTemplate().getMessageConverters();
+        var jsonIndex = indexOf(converters, MappingJackson2HttpMessageConverter.class);
+        var smileIndex = indexOf(converters, MappingJackson2SmileHttpMessageConverter.class);
+        var cborIndex = indexOf(converters, MappingJackson2CborHttpMessageConverter.class);
+        var size = converters.size();
+
+        KapetaDefaultConfig.configureBinaryMessageConverters(converters, true);
+
+        assertEquals(size, converters.size());
+        assertEquals(smileIndex, indexOf(converters, MappingJackson2SmileHttpMessageConverter.class));
+        assertEquals(cborIndex, indexOf(converters, MappingJackson2CborHttpMessageConverter.class));
+        // JSON stays the default
+        assertTrue(jsonIndex < smileIndex && jsonIndex < cborIndex);
+        for (var index : List.of(smileIndex, cborIndex)) {
+            var mapper = ((AbstractJackson2HttpMessageConverter) converters.get(index)).getObjectMapper();
+            assertTrue(mapper.isEnabled(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS), "Not configured like the default object mapper");
+        }
+    }
+
+    private static long count(List<HttpMessageConverter<?>> converters, Class<?> type) {
+        return converters.stream().filter(type::isInstance).count();
+    }
+
+    private static int indexOf(List<HttpMessageConverter<?>> converters, Class<?> type) {
+        for (int i = 0; i < converters.size(); i++) {
+            if (type.isInstance(converters.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config;
+
+import com.kapeta.spring.util.KapetaThreads;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.URL;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the transport against a Unix domain socket server which stops answering part way through the response
+ */
+class UnixSocketHttpTransportTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(KapetaThreads.daemonFactory("unix-socket-stub"));
+
+    private Path socket;
+
+    private ServerSocketChannel server;
+
+    @AfterEach
+    void close() throws IOException {
+        executor.shutdownNow();
+        if (server != null) {
+            server.close();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    @Test
+    void timesOutWaitingForTheResponseHead() throws Exception {
+        var transport = startServer("");
+
+        var start = System.nanoTime();
+        var channel = transport.connect(200);
+        assertThrows(SocketTimeoutException.class, () -> transport.send(channel, "GET", url(), Map.of(), null, 200));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000, "Waited for the default timeout");
+        assertFalse(channel.isOpen(), "Connection wasn't closed");
+    }
+
+    @Test
+    void timesOutReadingTheBody() throws Exception {
+        var transport = startServer("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nhello");
+
+        var response = transport.send(transport.connect(200), "GET", url(), Map.of(), null, 200);
+        try (var body = response.body()) {
+            assertEquals(200, response.status());
+            assertEquals('h', body.read());
+            body.readNBytes(4);
+            assertThrows(SocketTimeoutException.class, body::read);
+        }
+    }
+
+    @Test
+    void waitsForTheBodyWithoutTimeout() throws Exception {
+        var transport = startServer("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n\r\n: heartbeat\n");
+
+        var response = transport.send(transport.connect(0), "GET", url(), Map.of(), null, 0);
+        try (var body = response.body()) {
+            body.readNBytes(": heartbeat\n".length());
+            var read = executor.submit(() -> body.read());
+            Thread.sleep(300);
+            assertFalse(read.isDone(), "Event stream was closed");
+        }
+    }
+
+    /**
+     * Starts a server which sends the given response to every request - and then stops answering
+     */
+    private UnixSocketHttpTransport startServer(String response) throws IOException {
+        socket = Files.createTempDirectory("kapeta").resolve("cluster.sock");
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        executor.execute(() -> {
+            while (server.isOpen()) {
+                try {
+                    var channel = server.accept();
+                    executor.execute(() -> respond(channel, response));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        return new UnixSocketHttpTransport(socket);
+    }
+
+    private static void respond(SocketChannel channel, String response) {
+        try (channel) {
+            channel.write(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+            // Keep the connection open without answering - until the client closes it
+            while (channel.read(ByteBuffer.allocate(1024)) >= 0) {
+            }
+        } catch (IOException e) {
+            // The client closed the connection
+        }
+    }
+
+    private static URL url() throws IOException {
+        return new URL("http://localhost/config/instance");
+    }
+}
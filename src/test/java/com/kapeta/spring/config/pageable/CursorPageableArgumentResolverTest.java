@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Resolves cursor pageables from query strings - rejecting invalid parameters with 400 Bad Request
+ */
+class CursorPageableArgumentResolverTest {
+
+    private final CursorPageableArgumentResolver resolver = new CursorPageableArgumentResolver(100);
+
+    @Test
+    void resolvesTheFirstPageByDefault() {
+        var pageable = resolve(Map.of());
+
+        assertTrue(pageable.isFirst());
+        assertNull(pageable.getCursor());
+        assertEquals(CursorPageable.DEFAULT_SIZE, pageable.getSize());
+        assertEquals(Sort.unsorted(), pageable.getSort());
+    }
+
+    @Test
+    void resolvesCursorSizeAndSort() {
+        var cursor = Cursor.of("2023-11-02T10:15:30Z", 123);
+        var pageable = resolve(Map.of(
+                "cursor", new String[]{cursor.encode()},
+                "size", new String[]{" 50 "},
+                "sort", new String[]{"createdAt,desc", "id", "name,ASC", ""}));
+
+        assertEquals(cursor, pageable.getCursor());
+        assertEquals(50, pageable.getSize());
+        assertEquals(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.asc("id"), Sort.Order.asc("name")), pageable.getSort());
+    }
+
+    @Test
+    void limitsTheSize() {
+        assertEquals(100, resolve(Map.of("size", new String[]{"5000"})).getSize());
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        assertBadRequest(Map.of("size", new String[]{"0"}));
+        assertBadRequest(Map.of("size", new String[]{"-1"}));
+        assertBadRequest(Map.of("size", new String[]{"ten"}));
+        assertBadRequest(Map.of("sort", new String[]{"createdAt,sideways"}));
+        assertBadRequest(Map.of("cursor", new String[]{"not a cursor"}));
+    }
+
+    private CursorPageable resolve(Map<String, String[]> parameters) {
+        var request = new MockHttpServletRequest("GET", "/users");
+        request.setParameters(parameters);
+        return resolver.resolveArgument(null, null, new ServletWebRequest(request), null);
+    }
+
+    private void assertBadRequest(Map<String, String[]> parameters) {
+        var e = assertThrows(ResponseStatusException.class, () -> resolve(parameters));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.pageable;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Encodes cursors and decodes them again - as clients pass them back
+ */
+class CursorTest {
+
+    @Test
+    void decodesEncodedKeys() {
+        var createdAt = Instant.parse("2023-11-02T10:15:30.123456789Z");
+        var encoded = Cursor.of(createdAt, 123, "user-1").encode();
+        assertFalse(encoded.contains("=") || encoded.contains("+") || encoded.contains("/"), "Not url-safe: " + encoded);
+
+        var decoded = Cursor.decode(encoded);
+        assertEquals(3, decoded.size());
+        assertEquals(createdAt, decoded.get(0, Instant.class));
+        assertEquals(Integer.valueOf(123), decoded.get(1, Integer.class));
+        assertEquals("user-1", decoded.get(2));
+        // Encoding a decoded cursor gives the same token
+        assertEquals(encoded, decoded.encode());
+        assertEquals(decoded, Cursor.decode(encoded));
+    }
+
+    @Test
+    void keepsDecimalKeysExact() {
+        var encoded = Cursor.of(new BigDecimal("1698920130.123456789")).encode();
+
+        assertEquals(new BigDecimal("1698920130.123456789"), Cursor.decode(encoded).get(0));
+        assertEquals(encoded, Cursor.decode(encoded).encode());
+    }
+
+    @Test
+    void rejectsInvalidCursors() {
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode(""));
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode("not a cursor"));
+        // Valid base64 - but not a JSON array of keys
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode("eyJhIjoxfQ"));
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode("W10"));
+        assertThrows(IllegalArgumentException.class, Cursor::of);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.providers;
+
+import com.kapeta.spring.config.providers.types.BlockInstanceDetails;
+import com.kapeta.spring.config.providers.types.InstanceOperator;
+import com.kapeta.spring.config.providers.types.ResourceInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Records the results of a stub provider - and boots from them while the stub answers differently or fails
+ */
+class SnapshotConfigurationProviderTest {
+
+    private static final String BLOCK_REF = "kapeta/test:local";
+
+    private final List<SnapshotConfigurationProvider> providers = new ArrayList<>();
+
+    private final Path file;
+
+    SnapshotConfigurationProviderTest() throws Exception {
+        file = Files.createTempDirectory("kapeta").resolve("config-snapshot.smile");
+    }
+
+    @AfterEach
+    void close() {
+        providers.forEach(SnapshotConfigurationProvider::close);
+    }
+
+    @Test
+    void asksTheProviderBeforeUsingTheSnapshot() throws Exception {
+        var stub = new StubProvider();
+        recordSnapshot(stub);
+
+        stub.serviceAddress = "http://users:8081";
+        var provider = create(stub);
+        assertEquals("http://users:8081", provider.getServiceAddress("users", "rest"));
+
+        stub.fail = true;
+        assertEquals("http://users:8081", provider.getServiceAddress("users", "rest"));
+        assertEquals("http://users:8080", create(stub).getServiceAddress("users", "rest"));
+    }
+
+    @Test
+    void revalidatesTheInstanceConfigInTheBackground() throws Exception {
+        var stub = new StubProvider();
+        recordSnapshot(stub);
+
+        stub.instanceConfig = Map.of("rateLimit", 20);
+        var provider = create(stub);
+        assertEquals(Map.of("rateLimit", 10), provider.getInstanceConfig());
+
+        var changes = new LinkedBlockingQueue<Map<String, Object>>();
+        provider.setInstanceConfigListener(changes::add);
+        assertEquals(Map.of("rateLimit", 20), changes.poll(5, TimeUnit.SECONDS));
+        assertEquals(Map.of("rateLimit", 20), provider.getInstanceConfig());
+    }
+
+    private void recordSnapshot(StubProvider stub) throws Exception {
+        var provider = create(stub);
+        provider.getServiceAddress("users", "rest");
+        provider.getInstanceConfig();
+        provider.writeSnapshot();
+    }
+
+    private SnapshotConfigurationProvider create(StubProvider stub) {
+        var provider = new SnapshotConfigurationProvider(stub, file, BLOCK_REF);
+        providers.add(provider);
+        return provider;
+    }
+
+    private static class StubProvider implements KapetaConfigurationProvider {
+
+        private final Environment environment = new StandardEnvironment();
+
+        private volatile String serviceAddress = "http://users:8080";
+
+        private volatile Map<String, Object> instanceConfig = Map.of("rateLimit", 10);
+
+        private volatile boolean fail;
+
+        private void failIfUnavailable() {
+            if (fail) {
+                throw new IllegalStateException("Unavailable");
+            }
+        }
+
+        @Override
+        public int getServerPort(String portType) {
+            return 8080;
+        }
+
+        @Override
+        public String getServerHost() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getSystemId() {
+            return "system";
+        }
+
+        @Override
+        public Environment getEnvironment() {
+            return environment;
+        }
+
+        @Override
+        public String getServiceAddress(String serviceName, String portType) {
+            failIfUnavailable();
+            return serviceAddress;
+        }
+
+        @Override
+        public ResourceInfo getResourceInfo(String resourceType, String portType, String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getInstanceHost(String instanceId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, Object> getInstanceConfig() {
+            failIfUnavailable();
+            return instanceConfig;
+        }
+
+        @Override
+        public String getProviderId() {
+            return "stub";
+        }
+
+        @Override
+        public <BlockType> BlockInstanceDetails<BlockType> getInstanceForConsumer(String resourceName, Class<BlockType> clz) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <Options, Credentials> InstanceOperator<Options, Credentials> getInstanceOperator(String instanceId, Class<Options> optionsClass, Class<Credentials> credentialsClass) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <BlockType> List<BlockInstanceDetails<BlockType>> getInstancesForProvider(String resourceName, Class<BlockType> clz) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
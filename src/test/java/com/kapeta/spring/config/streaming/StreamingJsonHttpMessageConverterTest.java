@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.config.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes streams, iterators and slices as JSON and newline delimited JSON
+ */
+class StreamingJsonHttpMessageConverterTest {
+
+    private final StreamingJsonHttpMessageConverter converter = new StreamingJsonHttpMessageConverter(new ObjectMapper(), 1);
+
+    @Test
+    void writesStreamsAsPageObject() throws Exception {
+        var closed = new boolean[1];
+        var stream = Stream.of(Map.of("id", 1), Map.of("id", 2)).onClose(() -> closed[0] = true);
+
+        assertEquals("""
+                {"content":[{"id":1},{"id":2}],"numberOfElements":2,"empty":false}""", write(stream, MediaType.APPLICATION_JSON));
+        assertTrue(closed[0], "Stream wasn't closed");
+        assertEquals("""
+                {"content":[],"numberOfElements":0,"empty":true}""", write(List.of().iterator(), MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void writesItemsAsNdjson() throws Exception {
+        var ndjson = StreamingJsonHttpMessageConverter.APPLICATION_NDJSON;
+        assertEquals("{\"id\":1}\n{\"id\":2}\n", write(List.of(Map.of("id", 1), Map.of("id", 2)).iterator(), ndjson));
+        assertEquals("{\"id\":1}\n", write(new PageImpl<>(List.of(Map.of("id", 1))), ndjson));
+    }
+
+    @Test
+    void leavesJsonSlicesToJackson() {
+        assertFalse(converter.canWrite(Slice.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(PageImpl.class, MediaType.APPLICATION_JSON));
+        assertTrue(converter.canWrite(PageImpl.class, StreamingJsonHttpMessageConverter.APPLICATION_NDJSON));
+        // Still offered when collecting the producible media types
+        assertTrue(converter.canWrite(PageImpl.class, null));
+        assertTrue(converter.canWrite(Stream.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(List.class, MediaType.APPLICATION_JSON));
+    }
+
+    private String write(Object value, MediaType contentType) throws Exception {
+        var message = new MockHttpOutputMessage();
+        converter.write(value, value.getClass(), contentType, message);
+        return message.getBodyAsString();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.health;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthContributor;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Composes the health and readiness responses from a health indicator that goes down
+ */
+class KapetaHealthStatusTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Health health = Health.up().build();
+
+    private final List<HealthContributor> contributors = List.of((HealthIndicator) () -> health);
+
+    @Test
+    void reportsDownIndicatorsOnlyInTheHealthBody() {
+        var status = new KapetaHealthStatus(objectMapper, contributors, Duration.ofSeconds(10));
+        status.refresh();
+        assertResponse(200, true, status.getResponse());
+        assertResponse(200, true, status.getReadinessResponse());
+
+        health = Health.down().build();
+        status.refresh();
+        assertResponse(200, false, status.getResponse());
+        assertResponse(503, false, status.getReadinessResponse());
+
+        health = Health.up().build();
+        status.refresh();
+        assertResponse(200, true, status.getResponse());
+        assertResponse(200, true, status.getReadinessResponse());
+    }
+
+    @Test
+    void failsHealthForDownIndicatorsIfEnabled() {
+        var status = new KapetaHealthStatus(objectMapper, contributors, Duration.ofSeconds(10), true);
+
+        health = Health.outOfService().build();
+        status.refresh();
+        assertResponse(503, false, status.getResponse());
+        assertResponse(503, false, status.getReadinessResponse());
+    }
+
+    @Test
+    void closedGatesOnlyFailReadiness() {
+        var status = new KapetaHealthStatus(objectMapper, contributors, Duration.ofSeconds(10), true);
+
+        status.setReady("warmup", false);
+        assertEquals(200, status.getResponse().status());
+        assertEquals(503, status.getReadinessResponse().status());
+
+        status.setReady("warmup", true);
+        assertEquals(200, status.getReadinessResponse().status());
+    }
+
+    private void assertResponse(int expectedStatus, boolean expectedOk, KapetaHealthStatus.HealthResponse response) {
+        assertEquals(expectedStatus, response.status());
+        var body = new String(response.body(), StandardCharsets.UTF_8);
+        assertEquals(expectedOk, body.contains("\"ok\":true"), body);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.health;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Keeps the warm-up gate closed until warm-up has run - or until the application is ready without a web server
+ */
+class KapetaWarmupTest {
+
+    private final KapetaHealthStatus healthStatus = new KapetaHealthStatus(new ObjectMapper(), List.of(), Duration.ofSeconds(10));
+
+    @Test
+    void opensTheGateWhenReadyWithoutWebServer() {
+        var warmup = new KapetaWarmup(healthStatus, List.of("GET /users"), 10, Duration.ofSeconds(1), Duration.ofMillis(20));
+        healthStatus.refresh();
+        assertFalse(healthStatus.isReady(), "Ready before warm-up");
+
+        warmup.onApplicationEvent(new ApplicationReadyEvent(new SpringApplication(), new String[0],
+                new GenericApplicationContext(), Duration.ZERO));
+
+        assertTrue(healthStatus.isReady(), "Gate stayed closed without a web server");
+    }
+
+    @Test
+    void listensForTheWebServerAndReadiness() {
+        var warmup = new KapetaWarmup(healthStatus, List.of(), 10, Duration.ofSeconds(1), Duration.ofMillis(20));
+
+        assertTrue(warmup.supportsEventType(WebServerInitializedEvent.class));
+        assertTrue(warmup.supportsEventType(ApplicationReadyEvent.class));
+        assertFalse(warmup.supportsEventType(ContextRefreshedEvent.class));
+    }
+}
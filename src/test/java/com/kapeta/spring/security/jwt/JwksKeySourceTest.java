@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.kapeta.spring.security.jwt.JwtVerifierTest.encodeInteger;
+import static com.kapeta.spring.security.jwt.JwtVerifierTest.generateKeyPair;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Loads JWKS documents of locally generated RSA and EC keys - and reloads them for unknown key ids
+ */
+class JwksKeySourceTest {
+
+    private static final KeyPair RSA_KEYS = generateKeyPair("RSA", null);
+
+    private static final KeyPair EC_KEYS = generateKeyPair("EC", "secp384r1");
+
+    private static final Duration RELOAD_INTERVAL = Duration.ofMillis(200);
+
+    @Test
+    void parsesRsaAndEcKeys() throws Exception {
+        var keySource = JwksKeySource.fromJson(jwks(
+                rsaJwk("rsa"),
+                ecJwk("ec"),
+                Map.of("kid", "enc", "kty", "RSA", "use", "enc", "n", "AQAB", "e", "AQAB"),
+                Map.of("kid", "oct", "kty", "oct", "k", "c2VjcmV0")));
+
+        assertEquals(RSA_KEYS.getPublic(), keySource.getKey("rsa").key());
+        assertEquals("RS256", keySource.getKey("rsa").alg());
+        assertEquals(EC_KEYS.getPublic(), keySource.getKey("ec").key());
+        assertNull(keySource.getKey("ec").alg());
+        // Encryption and symmetric keys are ignored
+        assertNull(keySource.getKey("enc"));
+        assertNull(keySource.getKey("oct"));
+        // No kid is only allowed when there's a single key
+        assertNull(keySource.getKey(null));
+    }
+
+    @Test
+    void reloadsUnknownKeysRateLimited() throws Exception {
+        var documents = new ArrayList<>(List.of(jwks(rsaJwk("old")), jwks(rsaJwk("old"), ecJwk("new"))));
+        var loads = new AtomicInteger();
+        var keySource = new JwksKeySource(() -> {
+            loads.incrementAndGet();
+            return documents.size() > 1 ? documents.remove(0) : documents.get(0);
+        }, null, RELOAD_INTERVAL, null);
+        assertEquals(1, loads.get());
+
+        // Just loaded - so the rotated key isn't picked up yet
+        assertNull(keySource.getKey("new"));
+        assertNull(keySource.getKey("new"));
+        assertEquals(1, loads.get());
+
+        Thread.sleep(RELOAD_INTERVAL.toMillis() + 50);
+        assertNotNull(keySource.getKey("new"));
+        assertEquals(2, loads.get());
+
+        assertNull(keySource.getKey("unknown"));
+        assertNotNull(keySource.getKey("old"));
+        assertEquals(2, loads.get());
+
+        Thread.sleep(RELOAD_INTERVAL.toMillis() + 50);
+        assertNull(keySource.getKey("unknown"));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void reloadsUnknownKeysRightAwayWithoutInitialLoad() {
+        var loads = new AtomicInteger();
+        var keySource = new JwksKeySource(() -> {
+            loads.incrementAndGet();
+            return jwks(rsaJwk("rsa"), ecJwk("rotated"));
+        }, null, Duration.ofHours(1), Map.of("rsa", new JwksKeySource.Jwk("rsa", null, RSA_KEYS.getPublic())));
+
+        assertEquals(0, loads.get());
+        assertNotNull(keySource.getKey("rotated"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void keepsKeysWhenReloadingFails() throws Exception {
+        var fail = new boolean[1];
+        var keySource = new JwksKeySource(() -> {
+            if (fail[0]) {
+                throw new IllegalStateException("Unavailable");
+            }
+            return jwks(rsaJwk("rsa"));
+        }, null, Duration.ZERO, null);
+
+        fail[0] = true;
+        assertFalse(keySource.reload());
+        assertNotNull(keySource.getKey("rsa"));
+        assertNull(keySource.getKey("unknown"));
+    }
+
+    private static Map<String, Object> rsaJwk(String kid) {
+        var key = (RSAPublicKey) RSA_KEYS.getPublic();
+        return Map.of("kid", kid, "kty", "RSA", "use", "sig", "alg", "RS256",
+                "n", encodeInteger(key.getModulus()),
+                "e", encodeInteger(key.getPublicExponent()));
+    }
+
+    private static Map<String, Object> ecJwk(String kid) {
+        var key = (ECPublicKey) EC_KEYS.getPublic();
+        return Map.of("kid", kid, "kty", "EC", "crv", "P-384",
+                "x", encodeInteger(key.getW().getAffineX()),
+                "y", encodeInteger(key.getW().getAffineY()));
+    }
+
+    @SafeVarargs
+    private static String jwks(Map<String, Object>... keys) {
+        try {
+            return new ObjectMapper().writeValueAsString(Map.of("keys", List.of(keys)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
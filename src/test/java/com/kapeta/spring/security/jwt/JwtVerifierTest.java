@@ -0,0 +1,242 @@
+/*
+ * Copyright 2023 Kapeta Inc.
+ * SPDX-License-Identifier: MIT
+ */
+package com.kapeta.spring.security.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Verifies tokens signed with locally generated RSA and EC keys
+ */
+class JwtVerifierTest {
+
+    private static final String ISSUER = "https://issuer.example";
+
+    private static final String AUDIENCE = "kapeta";
+
+    private static final Duration SKEW = Duration.ofSeconds(30);
+
+    private static final KeyPair RSA_KEYS = generateKeyPair("RSA", null);
+
+    private static final KeyPair EC_KEYS = generateKeyPair("EC", "secp256r1");
+
+    private final TestClock clock = new TestClock(Instant.parse("2023-10-01T12:00:00Z"));
+
+    private final JwksKeySource keySource = JwksKeySource.fromKeys(Map.of(
+            "rsa", RSA_KEYS.getPublic(),
+            "ec", EC_KEYS.getPublic()));
+
+    private final JwtVerifier verifier = new JwtVerifier(keySource, ISSUER, AUDIENCE, 100, SKEW, clock);
+
+    @Test
+    void acceptsValidTokens() throws Exception {
+        var rsaClaims = verifier.verify(sign("RS256", "rsa", RSA_KEYS, claims()));
+        assertEquals("user", rsaClaims.getSubject());
+        assertEquals(List.of(AUDIENCE), rsaClaims.getAudience());
+
+        var ecClaims = verifier.verifyAuthorizationHeader("Bearer " + sign("ES256", "ec", EC_KEYS, claims()));
+        assertEquals("user", ecClaims.getSubject());
+    }
+
+    @Test
+    void rejectsExpiredTokens() throws Exception {
+        var claims = claims();
+        claims.put("exp", epochSeconds(clock.instant().minus(SKEW).minusSeconds(1)));
+        assertInvalid("Token expired", sign("RS256", "rsa", RSA_KEYS, claims));
+
+        // Within the allowed clock skew
+        claims.put("exp", epochSeconds(clock.instant().minus(SKEW).plusSeconds(1)));
+        verifier.verify(sign("RS256", "rsa", RSA_KEYS, claims));
+    }
+
+    @Test
+    void allowsClockSkewForNotBefore() throws Exception {
+        var claims = claims();
+        claims.put("nbf", epochSeconds(clock.instant().plus(SKEW).minusSeconds(1)));
+        verifier.verify(sign("ES256", "ec", EC_KEYS, claims));
+
+        claims.put("nbf", epochSeconds(clock.instant().plus(SKEW).plusSeconds(1)));
+        assertInvalid("Token not yet valid", sign("ES256", "ec", EC_KEYS, claims));
+    }
+
+    @Test
+    void rejectsWrongIssuerAndAudience() throws Exception {
+        var claims = claims();
+        claims.put("iss", "https://other.example");
+        assertInvalid("Invalid issuer: https://other.example", sign("RS256", "rsa", RSA_KEYS, claims));
+
+        claims = claims();
+        claims.put("aud", List.of("other", "another"));
+        assertInvalid("Invalid audience: [other, another]", sign("RS256", "rsa", RSA_KEYS, claims));
+    }
+
+    @Test
+    void rejectsWrongAndMissingAlgorithms() throws Exception {
+        var token = sign("RS256", "rsa", RSA_KEYS, claims());
+        var unsigned = encode(Map.of("alg", "none", "kid", "rsa")) + "." + token.split("\\.")[1] + ".";
+        assertInvalid("Unsupported algorithm: none", unsigned);
+
+        // An RSA signature claiming to be ECDSA - and an EC signature verified with the RSA key
+        assertInvalid("Invalid signature", resign(token, Map.of("alg", "ES256", "kid", "rsa")));
+        assertInvalid("Invalid signature", sign("ES256", "rsa", EC_KEYS, claims()));
+    }
+
+    @Test
+    void rejectsAlgorithmsNotAllowedForTheKey() throws Exception {
+        var jwk = Map.of("kid", "rsa", "kty", "RSA", "alg", "RS512",
+                "n", encodeInteger(((RSAPublicKey) RSA_KEYS.getPublic()).getModulus()),
+                "e", encodeInteger(((RSAPublicKey) RSA_KEYS.getPublic()).getPublicExponent()));
+        var restricted = new JwtVerifier(JwksKeySource.fromJson(new ObjectMapper().writeValueAsString(Map.of("keys", List.of(jwk)))),
+                ISSUER, AUDIENCE, 100, SKEW, clock);
+
+        var token = sign("RS256", "rsa", RSA_KEYS, claims());
+        assertEquals("Algorithm RS256 not allowed for key rsa",
+                assertThrows(JwtVerificationException.class, () -> restricted.verify(token)).getMessage());
+        restricted.verify(sign("RS512", "rsa", RSA_KEYS, claims()));
+    }
+
+    @Test
+    void rejectsTamperedTokens() throws Exception {
+        var token = sign("RS256", "rsa", RSA_KEYS, claims());
+        var parts = token.split("\\.");
+
+        var claims = claims();
+        claims.put("sub", "admin");
+        assertInvalid("Invalid signature", parts[0] + "." + encode(claims) + "." + parts[2]);
+
+        var signature = Base64.getUrlDecoder().decode(parts[2]);
+        signature[0] ^= 1;
+        assertInvalid("Invalid signature", parts[0] + "." + parts[1] + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature));
+
+        assertInvalid("Unknown key: other", resign(token, Map.of("alg", "RS256", "kid", "other")));
+        assertInvalid("Malformed token", "not-a-token");
+    }
+
+    @Test
+    void cachesVerifiedTokensUntilTheyExpire() throws Exception {
+        var claims = claims();
+        var expiresAt = clock.instant().plusSeconds(60);
+        claims.put("exp", epochSeconds(expiresAt));
+        var token = sign("ES256", "ec", EC_KEYS, claims);
+
+        var verified = verifier.verify(token);
+        assertSame(verified, verifier.verify(token), "Token wasn't cached");
+
+        clock.set(expiresAt.plus(SKEW).minusMillis(1));
+        assertSame(verified, verifier.verify(token), "Token wasn't cached");
+
+        clock.set(expiresAt.plus(SKEW));
+        assertInvalid("Token expired", token);
+    }
+
+    private void assertInvalid(String message, String token) {
+        assertEquals(message, assertThrows(JwtVerificationException.class, () -> verifier.verify(token)).getMessage());
+    }
+
+    private Map<String, Object> claims() {
+        var claims = new HashMap<String, Object>();
+        claims.put("sub", "user");
+        claims.put("iss", ISSUER);
+        claims.put("aud", AUDIENCE);
+        claims.put("iat", epochSeconds(clock.instant()));
+        claims.put("exp", epochSeconds(clock.instant().plusSeconds(300)));
+        return claims;
+    }
+
+    private static long epochSeconds(Instant instant) {
+        return instant.getEpochSecond();
+    }
+
+    static String sign(String alg, String kid, KeyPair keys, Map<String, Object> claims) throws Exception {
+        var signingInput = encode(Map.of("alg", alg, "kid", kid, "typ", "JWT")) + "." + encode(claims);
+        var signer = Signature.getInstance(alg.startsWith("ES") ? "SHA256withECDSAinP1363Format" : "SHA" + alg.substring(2) + "withRSA");
+        signer.initSign(keys.getPrivate());
+        signer.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signer.sign());
+    }
+
+    /**
+     * Replaces the header of the token - keeping the original signature
+     */
+    private static String resign(String token, Map<String, Object> header) throws Exception {
+        return encode(header) + token.substring(token.indexOf('.'));
+    }
+
+    static String encode(Map<String, ?> json) throws Exception {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(new ObjectMapper().writeValueAsBytes(json));
+    }
+
+    static String encodeInteger(BigInteger value) {
+        var bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    static KeyPair generateKeyPair(String algorithm, String curve) {
+        try {
+            var generator = KeyPairGenerator.getInstance(algorithm);
+            if (curve != null) {
+                generator.initialize(new ECGenParameterSpec(curve));
+            } else {
+                generator.initialize(2048);
+            }
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class TestClock extends Clock {
+
+        private volatile Instant now;
+
+        TestClock(Instant now) {
+            this.now = now;
+        }
+
+        void set(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}